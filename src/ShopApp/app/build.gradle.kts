@@ -49,6 +49,10 @@ android {
     buildFeatures {
         compose = true
     }
+    testOptions {
+        // android.util.Log is a stub in local unit tests
+        unitTests.isReturnDefaultValues = true
+    }
 
 
 }
@@ -160,6 +164,9 @@ dependencies {
     kapt("androidx.room:room-compiler:$room_version") // Add this line for annotation processing
     implementation("androidx.room:room-ktx:$room_version") // Add this for Kotlin extensions and coroutines support
 
+    // WorkManager - drains the notification outbox in the background
+    implementation("androidx.work:work-runtime-ktx:2.10.0")
+
     // Cloudinary dependencies
     implementation("com.cloudinary:cloudinary-android:2.3.1")
     implementation("com.cloudinary:cloudinary-core:1.33.0")
@@ -0,0 +1,37 @@
+package com.example.shopapp.data
+
+import android.content.Context
+import androidx.room.Database
+import androidx.room.Room
+import androidx.room.RoomDatabase
+import androidx.room.migration.Migration
+import com.example.shopapp.data.dao.OutboxDao
+import com.example.shopapp.data.model.OutboxEntry
+
+// Pending side effects are not a cache: unlike ProductDatabase this one must never be rebuilt from
+// scratch, so there is no destructive fallback and every version bump needs a Migration below.
+@Database(entities = [OutboxEntry::class], version = 1)
+abstract class OutboxDatabase : RoomDatabase() {
+    abstract fun outboxDao(): OutboxDao
+
+    companion object {
+        @Volatile
+        private var INSTANCE: OutboxDatabase? = null
+
+        private val MIGRATIONS = arrayOf<Migration>()
+
+        fun getDatabase(context: Context): OutboxDatabase {
+            return INSTANCE ?: synchronized(this) {
+                val instance = Room.databaseBuilder(
+                    context.applicationContext,
+                    OutboxDatabase::class.java,
+                    "outbox_database"
+                )
+                    .addMigrations(*MIGRATIONS)
+                    .build()
+                INSTANCE = instance
+                instance
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.shopapp.data
+
+import android.content.Context
+import androidx.room.Database
+import androidx.room.Room
+import androidx.room.RoomDatabase
+import com.example.shopapp.data.dao.ProductCatalogDao
+import com.example.shopapp.data.dao.ProductSearchDao
+import com.example.shopapp.data.dao.PurchasedProductDao
+import com.example.shopapp.data.model.CatalogSyncState
+import com.example.shopapp.data.model.ProductEntity
+import com.example.shopapp.data.model.ProductSearchDoc
+import com.example.shopapp.data.model.ProductSearchToken
+import com.example.shopapp.data.model.PurchaseSyncState
+import com.example.shopapp.data.model.PurchasedProduct
+
+@Database(
+    entities = [ProductSearchToken::class, ProductSearchDoc::class, ProductEntity::class,
+        PurchasedProduct::class, PurchaseSyncState::class, CatalogSyncState::class],
+    version = 6
+)
+abstract class ProductDatabase : RoomDatabase() {
+    abstract fun productSearchDao(): ProductSearchDao
+    abstract fun productCatalogDao(): ProductCatalogDao
+    abstract fun purchasedProductDao(): PurchasedProductDao
+
+    companion object {
+        @Volatile
+        private var INSTANCE: ProductDatabase? = null
+
+        fun getDatabase(context: Context): ProductDatabase {
+            return INSTANCE ?: synchronized(this) {
+                val instance = Room.databaseBuilder(
+                    context.applicationContext,
+                    ProductDatabase::class.java,
+                    "product_catalog_database"
+                )
+                    .fallbackToDestructiveMigration()
+                    .build()
+                INSTANCE = instance
+                instance
+            }
+        }
+    }
+}
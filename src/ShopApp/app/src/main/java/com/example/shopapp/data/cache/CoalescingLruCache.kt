@@ -0,0 +1,123 @@
+package com.example.shopapp.data.cache
+
+import android.util.Log
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+
+// Size-bounded LRU of documents by ID with a TTL. Concurrent misses for the same ID share one in-flight
+// read, and batch lookups only hand the IDs that are neither cached nor in flight to the loader.
+class CoalescingLruCache<T : Any>(
+    private val tag: String,
+    private val maxEntries: Int,
+    private val ttlMs: Long,
+    private val idOf: (T) -> String
+) {
+    private data class Entry<T>(val value: T, val fetchedAt: Long)
+
+    private val lock = Any()
+    private val entries = object : LinkedHashMap<String, Entry<T>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry<T>>): Boolean {
+            return size > maxEntries
+        }
+    }
+    private val inFlight = HashMap<String, Deferred<T?>>()
+
+    // Bumped on every invalidation so a read that started before it is not stored afterwards
+    private var generation = 0L
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    suspend fun get(id: String, loader: suspend (String) -> T?): T? {
+        val deferred = synchronized(lock) {
+            fresh(id)?.let { return it }
+            inFlight[id] ?: load(id, loader).also { inFlight[id] = it }
+        }
+        return deferred.await()
+    }
+
+    suspend fun getAll(ids: List<String>, loader: suspend (List<String>) -> List<T>): List<T> {
+        val wanted = ids.filter { it.isNotBlank() }.distinct()
+        val found = HashMap<String, T>()
+        val pending = mutableListOf<Deferred<T?>>()
+        val missing = mutableListOf<String>()
+        val startGeneration: Long
+
+        synchronized(lock) {
+            startGeneration = generation
+            wanted.forEach { id ->
+                val cached = fresh(id)
+                val running = inFlight[id]
+                when {
+                    cached != null -> found[id] = cached
+                    running != null -> pending += running
+                    else -> missing += id
+                }
+            }
+        }
+
+        pending.forEach { it.await()?.let { value -> found[idOf(value)] = value } }
+        if (missing.isNotEmpty()) {
+            val loaded = loader(missing)
+            loaded.forEach { found[idOf(it)] = it }
+            synchronized(lock) {
+                if (generation == startGeneration) {
+                    val now = System.currentTimeMillis()
+                    loaded.forEach { entries[idOf(it)] = Entry(it, now) }
+                }
+            }
+        }
+        Log.d(tag, "Batch of ${wanted.size}: ${wanted.size - missing.size} from cache, ${missing.size} fetched")
+        return wanted.mapNotNull { found[it] }
+    }
+
+    fun put(value: T) {
+        synchronized(lock) {
+            entries[idOf(value)] = Entry(value, System.currentTimeMillis())
+        }
+    }
+
+    fun invalidate(ids: Collection<String>) {
+        synchronized(lock) {
+            ids.forEach { entries.remove(it) }
+            generation++
+        }
+    }
+
+    fun clear() {
+        synchronized(lock) {
+            entries.clear()
+            generation++
+        }
+    }
+
+    // Callers hold lock
+    private fun fresh(id: String): T? {
+        val entry = entries[id] ?: return null
+        if (System.currentTimeMillis() - entry.fetchedAt >= ttlMs) {
+            entries.remove(id)
+            return null
+        }
+        return entry.value
+    }
+
+    // Callers hold lock, so the finally block cannot run before the Deferred is registered
+    private fun load(id: String, loader: suspend (String) -> T?): Deferred<T?> {
+        val startGeneration = generation
+        return scope.async {
+            try {
+                val value = loader(id)
+                synchronized(lock) {
+                    if (value != null && generation == startGeneration) {
+                        entries[id] = Entry(value, System.currentTimeMillis())
+                    }
+                }
+                value
+            } finally {
+                synchronized(lock) { inFlight.remove(id) }
+            }
+        }
+    }
+}
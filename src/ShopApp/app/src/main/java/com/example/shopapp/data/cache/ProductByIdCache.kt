@@ -0,0 +1,44 @@
+package com.example.shopapp.data.cache
+
+import com.example.shopapp.data.dao.ProductDao
+import com.example.shopapp.data.model.Product
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import java.util.concurrent.atomic.AtomicBoolean
+
+// Process-wide LRU of full products by ID, shared by every ProductRepository. Entries expire after a TTL
+// and are dropped as soon as the product snapshot listener reports a change.
+object ProductByIdCache {
+    private const val MAX_ENTRIES = 200
+    private const val TTL_MS = 5 * 60_000L
+
+    private val cache = CoalescingLruCache<Product>("ProductByIdCache", MAX_ENTRIES, TTL_MS) { it.productId }
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val started = AtomicBoolean(false)
+
+    // Follows product changes once per process; identical listeners are multiplexed by Firestore
+    fun start(productDao: ProductDao) {
+        if (!started.compareAndSet(false, true)) return
+        scope.launch {
+            productDao.observeProductChanges().collect { changes ->
+                cache.invalidate(changes.map { it.product.productId })
+            }
+        }
+    }
+
+    suspend fun get(productId: String, loader: suspend (String) -> Product?): Product? {
+        return cache.get(productId, loader)
+    }
+
+    suspend fun getAll(productIds: List<String>, loader: suspend (List<String>) -> List<Product>): List<Product> {
+        return cache.getAll(productIds, loader)
+    }
+
+    fun put(product: Product) = cache.put(product)
+
+    fun invalidate(productId: String) = cache.invalidate(listOf(productId))
+
+    fun clear() = cache.clear()
+}
@@ -0,0 +1,153 @@
+package com.example.shopapp.data.cache
+
+import android.content.Context
+import android.util.Log
+import com.example.shopapp.data.ProductDatabase
+import com.example.shopapp.data.dao.ProductCatalogDao
+import com.example.shopapp.data.dao.ProductDao
+import com.example.shopapp.data.model.Product
+import com.example.shopapp.data.model.ProductEntity
+import com.google.firebase.Timestamp
+import com.google.gson.Gson
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.util.Date
+import java.util.concurrent.atomic.AtomicBoolean
+
+// Offline copy of the product catalog in Room. Screens render from it first; a background
+// delta sync pulls only the products whose updatedAt is newer than the last completed sync.
+class ProductCatalogCache private constructor(
+    private val catalogDao: ProductCatalogDao
+) {
+    private val TAG = "ProductCatalogCache"
+    private val gson = Gson()
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val started = AtomicBoolean(false)
+    private val syncMutex = Mutex()
+
+    // Syncs once per process; safe to call more than once
+    fun start(productDao: ProductDao) {
+        if (!started.compareAndSet(false, true)) return
+        scope.launch { sync(productDao) }
+    }
+
+    suspend fun sync(productDao: ProductDao) {
+        syncMutex.withLock {
+            try {
+                val watermark = catalogDao.getSyncWatermark()
+                if (watermark == null) {
+                    fullSync(productDao)
+                } else {
+                    deltaSync(productDao, watermark)
+                }
+            } catch (e: Exception) {
+                Log.e(TAG, "Error syncing product catalog: ${e.message}")
+            }
+        }
+    }
+
+    private suspend fun deltaSync(productDao: ProductDao, watermark: Long) {
+        // updatedAt is written with the client clock, so look back a little to tolerate skew
+        val since = Timestamp(Date(watermark - CLOCK_SKEW_MS))
+        val changed = productDao.getProductsUpdatedSince(since)
+        if (changed.isNotEmpty()) {
+            val entities = changed.map { toEntity(it) }
+            catalogDao.upsertSynced(entities, maxOf(watermark, entities.maxOf { it.updatedAtMillis }))
+        }
+
+        // Deletions leave no updatedAt behind; a count mismatch means something was removed
+        val remoteCount = productDao.getTotalProductsCount()
+        if (remoteCount > 0 && remoteCount != catalogDao.count()) {
+            fullSync(productDao)
+        } else {
+            Log.d(TAG, "Delta sync applied ${changed.size} products")
+        }
+    }
+
+    private suspend fun fullSync(productDao: ProductDao) {
+        val products = productDao.getProductsUpdatedSince(null)
+        if (products.isEmpty()) return
+        val entities = products.map { toEntity(it) }
+        catalogDao.replaceAll(entities, entities.maxOf { it.updatedAtMillis })
+        Log.d(TAG, "Full sync stored ${products.size} products")
+    }
+
+    suspend fun getPage(limit: Int, categoryId: String? = null): List<Product> {
+        return try {
+            val rows = if (categoryId == null) {
+                catalogDao.getPage(limit)
+            } else {
+                catalogDao.getPageByCategory(categoryId, limit)
+            }
+            rows.mapNotNull { fromEntity(it) }
+        } catch (e: Exception) {
+            Log.e(TAG, "Error reading cached products: ${e.message}")
+            emptyList()
+        }
+    }
+
+    suspend fun getById(productId: String): Product? {
+        return try {
+            catalogDao.getById(productId)?.let { fromEntity(it) }
+        } catch (e: Exception) {
+            Log.e(TAG, "Error reading cached product: ${e.message}")
+            null
+        }
+    }
+
+    // Write-through for products fetched or edited while the app is running
+    suspend fun put(products: List<Product>) {
+        if (products.isEmpty()) return
+        try {
+            catalogDao.upsert(products.map { toEntity(it) })
+        } catch (e: Exception) {
+            Log.e(TAG, "Error caching products: ${e.message}")
+        }
+    }
+
+    suspend fun remove(productId: String) {
+        try {
+            catalogDao.delete(listOf(productId))
+        } catch (e: Exception) {
+            Log.e(TAG, "Error removing cached product: ${e.message}")
+        }
+    }
+
+    private fun toEntity(product: Product): ProductEntity {
+        val summary = product.copy(review = emptyList())
+        return ProductEntity(
+            productId = summary.productId,
+            category = summary.category,
+            updatedAtMillis = summary.updatedAt?.toDate()?.time ?: 0L,
+            json = gson.toJson(summary)
+        )
+    }
+
+    private fun fromEntity(entity: ProductEntity): Product? {
+        return try {
+            gson.fromJson(entity.json, Product::class.java)
+        } catch (e: Exception) {
+            Log.e(TAG, "Error parsing cached product ${entity.productId}: ${e.message}")
+            null
+        }
+    }
+
+    companion object {
+        private const val CLOCK_SKEW_MS = 5 * 60 * 1000L
+
+        @Volatile
+        private var INSTANCE: ProductCatalogCache? = null
+
+        fun getInstance(context: Context): ProductCatalogCache {
+            return INSTANCE ?: synchronized(this) {
+                val instance = ProductCatalogCache(ProductDatabase.getDatabase(context).productCatalogDao())
+                INSTANCE = instance
+                instance
+            }
+        }
+    }
+}
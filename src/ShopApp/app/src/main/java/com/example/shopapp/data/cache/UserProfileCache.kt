@@ -0,0 +1,26 @@
+package com.example.shopapp.data.cache
+
+import com.example.shopapp.data.model.User
+
+// Process-wide LRU of user profiles by ID, shared by the admin DAOs and AuthRepository so review
+// authors, order owners and the dashboard big spender are read once per TTL. User DAOs invalidate on write.
+object UserProfileCache {
+    private const val MAX_ENTRIES = 300
+    private const val TTL_MS = 5 * 60_000L
+
+    private val cache = CoalescingLruCache<User>("UserProfileCache", MAX_ENTRIES, TTL_MS) { it.userId }
+
+    suspend fun get(userId: String, loader: suspend (String) -> User?): User? {
+        return cache.get(userId, loader)
+    }
+
+    suspend fun getAll(userIds: List<String>, loader: suspend (List<String>) -> List<User>): List<User> {
+        return cache.getAll(userIds, loader)
+    }
+
+    fun put(user: User) = cache.put(user)
+
+    fun invalidate(userId: String) = cache.invalidate(listOf(userId))
+
+    fun clear() = cache.clear()
+}
@@ -0,0 +1,40 @@
+package com.example.shopapp.data.dao
+
+import android.util.Log
+import com.google.firebase.firestore.AggregateSource
+import com.google.firebase.firestore.Query
+import kotlinx.coroutines.tasks.await
+import java.util.concurrent.ConcurrentHashMap
+
+// Shared counting helper: runs Firestore aggregate count() queries (one billed read per 1000 matches,
+// no documents downloaded) and keeps the result for a few seconds keyed by collection + filter
+object CountCache {
+    private const val TAG = "CountCache"
+    private const val TTL_MS = 30_000L
+
+    private data class Entry(val count: Int, val fetchedAt: Long)
+
+    private val entries = ConcurrentHashMap<String, Entry>()
+
+    // key must start with the collection name so invalidate(collection) can drop it, e.g. "orders|status=pending"
+    suspend fun count(key: String, query: Query): Int {
+        val now = System.currentTimeMillis()
+        entries[key]?.let { entry ->
+            if (now - entry.fetchedAt < TTL_MS) return entry.count
+        }
+
+        val count = query.count().get(AggregateSource.SERVER).await().count.toInt()
+        entries[key] = Entry(count, now)
+        Log.d(TAG, "Counted $key: $count")
+        return count
+    }
+
+    // Called after writes so the next count reflects them
+    fun invalidate(collection: String) {
+        entries.keys.removeAll { it == collection || it.startsWith("$collection|") }
+    }
+
+    fun clear() {
+        entries.clear()
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.shopapp.data.dao
+
+import java.lang.reflect.Field
+import java.lang.reflect.Modifier
+import java.util.concurrent.ConcurrentHashMap
+
+// Remembers the last version of each document this client read or wrote, so an update can
+// send only the fields that changed instead of set() with the whole object.
+// Field names are the data class properties, which is also how Firestore maps them.
+// Only the most recently used maxEntries documents are kept; an evicted one is written as if never seen.
+class FieldDiffTracker<T : Any>(
+    private val idOf: (T) -> String,
+    private val ignoredFields: Set<String> = emptySet(),
+    private val maxEntries: Int = DEFAULT_MAX_ENTRIES
+) {
+    private val lastKnown = object : LinkedHashMap<String, Map<String, Any?>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Map<String, Any?>>): Boolean {
+            return size > maxEntries
+        }
+    }
+
+    fun remember(item: T): T {
+        val id = idOf(item)
+        if (id.isNotBlank()) {
+            val fields = fieldsOf(item)
+            synchronized(lastKnown) { lastKnown[id] = fields }
+        }
+        return item
+    }
+
+    fun forget(id: String) {
+        synchronized(lastKnown) { lastKnown.remove(id) }
+    }
+
+    // Changed fields of item, empty when nothing changed, null when the document was never seen
+    fun changes(item: T): Map<String, Any?>? {
+        val before = synchronized(lastKnown) { lastKnown[idOf(item)] } ?: return null
+        return fieldsOf(item).filter { (name, value) -> before[name] != value }
+    }
+
+    private fun fieldsOf(item: T): Map<String, Any?> {
+        val fields = FIELDS.getOrPut(item.javaClass) {
+            item.javaClass.declaredFields
+                .filter { !Modifier.isStatic(it.modifiers) && !it.isSynthetic }
+                .onEach { it.isAccessible = true }
+        }
+        return fields
+            .filter { it.name !in ignoredFields }
+            .associate { it.name to it.get(item) }
+    }
+
+    companion object {
+        private const val DEFAULT_MAX_ENTRIES = 500
+
+        private val FIELDS = ConcurrentHashMap<Class<*>, List<Field>>()
+    }
+}
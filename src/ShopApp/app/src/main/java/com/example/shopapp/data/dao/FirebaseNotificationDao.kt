@@ -2,10 +2,21 @@ package com.example.shopapp.data.dao
 
 import android.util.Log
 import com.example.shopapp.data.model.NotificationItem
+import com.example.shopapp.data.model.NotificationPage
+import com.google.firebase.firestore.AggregateSource
+import com.google.firebase.firestore.DocumentReference
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.FieldValue
 import com.google.firebase.firestore.FirebaseFirestore
 import com.google.firebase.firestore.Query
+import com.google.firebase.firestore.SetOptions
+import com.google.firebase.firestore.Transaction
+import com.google.firebase.firestore.WriteBatch
+import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.callbackFlow
 import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.tasks.await
 
 class FirebaseNotificationDao : INotificationDao {
@@ -53,15 +64,37 @@ class FirebaseNotificationDao : INotificationDao {
         }
     }
 
-    override suspend fun getUnreadNotificationCountByUserId(userId: String): Int {
-        return try {
-            val snapshot = notificationsCollection
+    override suspend fun getNotificationsPage(
+        userId: String,
+        limit: Int,
+        startAfter: DocumentSnapshot?
+    ): Flow<NotificationPage> = flow {
+        try {
+            var query = notificationsCollection
                 .whereEqualTo("userId", userId)
-                .whereEqualTo("isRead", false)
-                .get()
-                .await()
+                .orderBy("timestamp", Query.Direction.DESCENDING)
+            if (startAfter != null) {
+                query = query.startAfter(startAfter)
+            }
+            val snapshot = query.limit(limit.toLong()).get().await()
+
+            val notifications = snapshot.documents.mapNotNull { documentToNotification(it) }
+            Log.d(TAG, "Fetched notification page of ${notifications.size} for user $userId")
+            emit(NotificationPage(notifications, snapshot.documents.lastOrNull()))
+        } catch (e: Exception) {
+            Log.e(TAG, "Error fetching notification page: ${e.message}")
+            emit(NotificationPage())
+        }
+    }
 
-            val count = snapshot.size()
+    override suspend fun getUnreadNotificationCountByUserId(userId: String): Int {
+        return try {
+            val counter = unreadCounterRef(db, userId).get().await()
+            val count = if (counter.getBoolean(SEEDED) == true) {
+                counter.getLong(UNREAD_COUNT)?.toInt() ?: 0
+            } else {
+                seedUnreadCount(userId)
+            }
             Log.d(TAG, "Unread notifications count for user $userId: $count")
             count
         } catch (e: Exception) {
@@ -70,6 +103,54 @@ class FirebaseNotificationDao : INotificationDao {
         }
     }
 
+    override fun observeUnreadCount(userId: String): Flow<Int> = callbackFlow {
+        var seeding = false
+        val registration = unreadCounterRef(db, userId).addSnapshotListener { snapshot, error ->
+            if (error != null) {
+                Log.e(TAG, "Error listening for unread count: ${error.message}")
+                return@addSnapshotListener
+            }
+            if (snapshot == null) return@addSnapshotListener
+            if (snapshot.getBoolean(SEEDED) == true) {
+                trySend(snapshot.getLong(UNREAD_COUNT)?.toInt() ?: 0)
+            } else if (!seeding) {
+                // Inbox from before the counter existed; the seed write triggers the next snapshot
+                seeding = true
+                launch {
+                    try {
+                        seedUnreadCount(userId)
+                    } catch (e: Exception) {
+                        Log.e(TAG, "Error seeding unread count: ${e.message}")
+                    }
+                }
+            }
+        }
+        awaitClose { registration.remove() }
+    }
+
+    // One aggregate count to start the counter; increments written before seeding are covered by the count
+    private suspend fun seedUnreadCount(userId: String): Int {
+        val unread = notificationsCollection
+            .whereEqualTo("userId", userId)
+            .whereEqualTo("isRead", false)
+            .count()
+            .get(AggregateSource.SERVER)
+            .await()
+            .count
+            .toInt()
+        val counterRef = unreadCounterRef(db, userId)
+        return db.runTransaction { transaction ->
+            val counter = transaction.get(counterRef)
+            if (counter.getBoolean(SEEDED) == true) {
+                counter.getLong(UNREAD_COUNT)?.toInt() ?: 0
+            } else {
+                transaction.set(counterRef, mapOf(UNREAD_COUNT to unread, SEEDED to true))
+                unread
+            }
+        }.await()
+    }
+
+    // Read state and the unread counter change together, and only when isRead actually flips
     override suspend fun updateNotification(notification: NotificationItem): Boolean {
         return try {
             val updateData = mapOf(
@@ -81,9 +162,15 @@ class FirebaseNotificationDao : INotificationDao {
                 "isRead" to notification.isRead
             )
 
-            notificationsCollection.document(notification.id)
-                .update(updateData)
-                .await()
+            val notificationRef = notificationsCollection.document(notification.id)
+            db.runTransaction { transaction ->
+                val wasRead = transaction.get(notificationRef).getBoolean("isRead") ?: false
+                if (wasRead != notification.isRead) {
+                    adjustUnreadCount(transaction, notification.userId, if (notification.isRead) -1 else 1)
+                }
+                transaction.update(notificationRef, updateData)
+                null
+            }.await()
 
             true
         } catch (e: Exception) {
@@ -94,7 +181,15 @@ class FirebaseNotificationDao : INotificationDao {
 
     override suspend fun deleteNotification(notificationId: String): Boolean {
         return try {
-            notificationsCollection.document(notificationId).delete().await()
+            val notificationRef = notificationsCollection.document(notificationId)
+            db.runTransaction { transaction ->
+                val stored = transaction.get(notificationRef)
+                if (stored.exists() && stored.getBoolean("isRead") != true) {
+                    adjustUnreadCount(transaction, stored.getString("userId") ?: "", -1)
+                }
+                transaction.delete(notificationRef)
+                null
+            }.await()
             Log.d(TAG, "Notification deleted successfully: $notificationId")
             true
         } catch (e: Exception) {
@@ -102,4 +197,119 @@ class FirebaseNotificationDao : INotificationDao {
             false
         }
     }
-}
\ No newline at end of file
+
+    override suspend fun markAsRead(notifications: List<NotificationItem>): Boolean {
+        return try {
+            val unread = notifications.filter { !it.isRead && it.id.isNotBlank() }.distinctBy { it.id }
+            commitInChunks(unread) { transaction, stored ->
+                if (stored.getBoolean("isRead") != true) transaction.update(stored.reference, "isRead", true)
+            }
+            Log.d(TAG, "Marked ${unread.size} notifications as read")
+            true
+        } catch (e: Exception) {
+            Log.e(TAG, "Error marking notifications as read: ${e.message}")
+            false
+        }
+    }
+
+    override suspend fun markAllAsRead(userId: String): Boolean {
+        return try {
+            val snapshot = notificationsCollection
+                .whereEqualTo("userId", userId)
+                .whereEqualTo("isRead", false)
+                .get()
+                .await()
+            markAsRead(snapshot.documents.mapNotNull { documentToNotification(it) })
+        } catch (e: Exception) {
+            Log.e(TAG, "Error marking all notifications as read: ${e.message}")
+            false
+        }
+    }
+
+    override suspend fun deleteNotifications(notifications: List<NotificationItem>): Boolean {
+        return try {
+            val items = notifications.filter { it.id.isNotBlank() }.distinctBy { it.id }
+            commitInChunks(items) { transaction, stored ->
+                transaction.delete(stored.reference)
+            }
+            Log.d(TAG, "Deleted ${items.size} notifications")
+            true
+        } catch (e: Exception) {
+            Log.e(TAG, "Error deleting notifications: ${e.message}")
+            false
+        }
+    }
+
+    override suspend fun deleteAllNotifications(userId: String): Boolean {
+        return try {
+            val snapshot = notificationsCollection
+                .whereEqualTo("userId", userId)
+                .get()
+                .await()
+            deleteNotifications(snapshot.documents.mapNotNull { documentToNotification(it) })
+        } catch (e: Exception) {
+            Log.e(TAG, "Error deleting all notifications: ${e.message}")
+            false
+        }
+    }
+
+    // One transaction per chunk. The stored documents are read first, so each counter drops by the
+    // notifications that were still unread, and IDs already deleted elsewhere are skipped.
+    private suspend fun commitInChunks(
+        items: List<NotificationItem>,
+        write: (Transaction, DocumentSnapshot) -> Unit
+    ) {
+        items.chunked(TRANSACTION_CHUNK).forEach { chunk ->
+            db.runTransaction { transaction ->
+                val stored = chunk
+                    .map { transaction.get(notificationsCollection.document(it.id)) }
+                    .filter { it.exists() }
+                val unreadByUser = stored
+                    .filter { it.getBoolean("isRead") != true }
+                    .groupingBy { it.getString("userId") ?: "" }
+                    .eachCount()
+                stored.forEach { write(transaction, it) }
+                unreadByUser.forEach { (userId, unread) -> adjustUnreadCount(transaction, userId, -unread.toLong()) }
+                null
+            }.await()
+        }
+    }
+
+    private fun adjustUnreadCount(transaction: Transaction, userId: String, delta: Long) {
+        if (userId.isBlank()) return
+        transaction.set(unreadCounterRef(db, userId), mapOf(UNREAD_COUNT to FieldValue.increment(delta)), SetOptions.merge())
+    }
+
+    companion object {
+        private const val UNREAD_COUNT = "unreadCount"
+        private const val SEEDED = "seeded"
+        // Reads and writes of one bulk transaction; with one counter per user it stays under the 500 write limit
+        private const val TRANSACTION_CHUNK = 200
+
+        // Per-user counter document, kept apart from users/{uid} because profile saves replace that document
+        fun unreadCounterRef(db: FirebaseFirestore, userId: String): DocumentReference =
+            db.collection("notificationCounters").document(userId)
+
+        // Adds a new unread notification and bumps the owner's counter in one commit
+        fun addUnread(db: FirebaseFirestore, batch: WriteBatch, notification: Map<String, Any>, userId: String) {
+            batch.set(db.collection("notifications").document(), notification)
+            batch.set(unreadCounterRef(db, userId), mapOf(UNREAD_COUNT to FieldValue.increment(1)), SetOptions.merge())
+        }
+
+        // Same as addUnread, but under a fixed ID: a retry that finds the notification already saved
+        // writes nothing, so the counter is bumped once. Returns whether it was written.
+        fun addUnreadOnce(
+            db: FirebaseFirestore,
+            transaction: Transaction,
+            notificationId: String,
+            notification: Map<String, Any>,
+            userId: String
+        ): Boolean {
+            val notificationRef = db.collection("notifications").document(notificationId)
+            if (transaction.get(notificationRef).exists()) return false
+            transaction.set(notificationRef, notification)
+            transaction.set(unreadCounterRef(db, userId), mapOf(UNREAD_COUNT to FieldValue.increment(1)), SetOptions.merge())
+            return true
+        }
+    }
+}
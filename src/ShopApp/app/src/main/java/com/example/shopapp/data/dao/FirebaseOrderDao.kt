@@ -2,7 +2,9 @@ package com.example.shopapp.data.dao
 
 import android.util.Log
 import com.example.shopapp.data.model.OrderFirebase
+import com.example.shopapp.data.search.OrderSearchFields
 import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.firestore.SetOptions
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.tasks.await
@@ -30,7 +32,12 @@ class FirebaseOrderDao : IOrderDaoFirebase {
     override suspend fun add(item: OrderFirebase): Boolean {
         Log.d("FirebaseOrderDao", "Adding order: ${item.orderId}")
         return try {
-            ordersCollection.document(item.orderId).set(item).await()
+            val orderRef = ordersCollection.document(item.orderId)
+            val batch = db.batch()
+                .set(orderRef, item)
+                .set(orderRef, OrderSearchFields.of(item.username), SetOptions.merge())
+            OrderStatusCounters.recordTransition(db, batch, null, item.status)
+            batch.commit().await()
             Log.d("FirebaseOrderDao", "Order added successfully: ${item.orderId}")
             true
         } catch (e: Exception) {
@@ -42,7 +49,23 @@ class FirebaseOrderDao : IOrderDaoFirebase {
     override suspend fun update(item: OrderFirebase): Boolean {
         Log.d("FirebaseOrderDao", "Updating order: ${item.orderId}")
         return try {
-            ordersCollection.document(item.orderId).set(item).await()
+            val orderRef = ordersCollection.document(item.orderId)
+            // Delivery and the dashboard rollup commit together, and only once per order; the status
+            // counters move in the same commit
+            db.runTransaction { transaction ->
+                val previousStatus = transaction.get(orderRef).getString("status")
+                if (item.status == "delivered" && previousStatus != "delivered") {
+                    val units = item.orderDetail
+                        .groupBy { it.productId }
+                        .mapValues { (_, items) -> items.sumOf { it.quantity } }
+                    FirebaseStatsDao.recordDelivery(db, transaction, item.orderId, item.userId, item.totalPrice, units)
+                    FirebasePurchaseDao.recordPurchases(db, transaction, item.userId, units.keys)
+                }
+                OrderStatusCounters.recordTransition(db, transaction, previousStatus, item.status)
+                // merge keeps the admin search fields, which are not part of OrderFirebase
+                transaction.set(orderRef, item, SetOptions.merge())
+                null
+            }.await()
             Log.d("FirebaseOrderDao", "Order updated successfully: ${item.orderId}")
             true
         } catch (e: Exception) {
@@ -54,7 +77,13 @@ class FirebaseOrderDao : IOrderDaoFirebase {
     override suspend fun delete(id: String): Boolean {
         Log.d("FirebaseOrderDao", "Deleting order with ID: $id")
         return try {
-            ordersCollection.document(id).delete().await()
+            val orderRef = ordersCollection.document(id)
+            db.runTransaction { transaction ->
+                val previousStatus = transaction.get(orderRef).getString("status")
+                OrderStatusCounters.recordTransition(db, transaction, previousStatus, null)
+                transaction.delete(orderRef)
+                null
+            }.await()
             Log.d("FirebaseOrderDao", "Order deleted successfully: $id")
             true
         } catch (e: Exception) {
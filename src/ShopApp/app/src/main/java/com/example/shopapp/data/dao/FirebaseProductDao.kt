@@ -2,11 +2,18 @@ package com.example.shopapp.data.dao
 
 import android.util.Log
 import com.example.shopapp.data.model.Product
+import com.example.shopapp.data.model.ProductChange
+import com.example.shopapp.data.model.ProductPage
+import com.example.shopapp.data.model.RelatedProducts
 import com.example.shopapp.data.model.Review
 import com.google.firebase.Timestamp
-import com.google.firebase.firestore.FieldValue
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.FieldPath
 import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.firestore.SetOptions
+import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.callbackFlow
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.tasks.await
 import java.util.UUID
@@ -17,6 +24,22 @@ class FirebaseProductDao : ProductDao {
     private val productsCollection = db.collection("products")
     private val TAG = "FirebaseProductDao"
 
+    // Reviews and rating totals are owned by FirebaseReviewDao and never part of a product update
+    private val productTracker = FieldDiffTracker<Product>(
+        idOf = { it.productId },
+        ignoredFields = setOf("review", "ratingSum", "ratingCount", "ratingStars")
+    )
+
+    companion object {
+        private const val WHERE_IN_LIMIT = 30
+
+        private val EDITABLE_FIELDS = listOf(
+            "productId", "title", "image", "images", "price", "description", "brand", "model",
+            "color", "category", "popular", "discount", "stock", "sales", "status",
+            "createdAt", "updatedAt"
+        )
+    }
+
     // Helper function to parse reviews from Firestore document
     private fun parseReviews(reviewList: List<Map<String, Any>>?): List<Review> {
         return reviewList?.mapNotNull { map ->
@@ -38,39 +61,37 @@ class FirebaseProductDao : ProductDao {
 
 
     // Helper function to convert Firestore document to Product with reviews
-    private fun documentToProduct(doc: com.google.firebase.firestore.DocumentSnapshot): Product? {
+    private fun documentToProduct(doc: DocumentSnapshot): Product? {
         val product = doc.toObject(Product::class.java) ?: return null
         val reviewList = doc.get("review") as? List<Map<String, Any>> ?: emptyList()
         val parsedReviews = parseReviews(reviewList)
-        return product.copy(review = parsedReviews)
+        return productTracker.remember(
+            withRatingTotals(product.copy(review = parsedReviews), doc.contains("ratingCount"))
+        )
+    }
+
+    // Documents written before the rating totals existed get them derived from their reviews
+    private fun withRatingTotals(product: Product, hasTotals: Boolean): Product {
+        if (hasTotals || product.review.isEmpty()) return product
+        return product.copy(
+            ratingSum = product.review.sumOf { it.rating },
+            ratingCount = product.review.size,
+            ratingStars = product.review
+                .groupingBy { it.rating.toInt().coerceIn(1, 5).toString() }
+                .eachCount()
+        )
+    }
+
+    // Lists, search and the change listener only need the totals; reviews are paged from the
+    // reviews subcollection (FirebaseReviewDao), so they are dropped here
+    private fun documentToProductSummary(doc: DocumentSnapshot): Product? {
+        return documentToProduct(doc)?.copy(review = emptyList())
     }
 
     override suspend fun getAllProducts(): Flow<List<Product>> = flow {
         try {
             val snapshot = db.collection("products").get().await()
-            val products = snapshot.documents.mapNotNull { doc ->
-                val product = doc.toObject(Product::class.java)
-
-                // Manually parse the "review" field
-                val reviewList = doc.get("review") as? List<Map<String, Any>> ?: emptyList()
-                val parsedReviews = reviewList.mapNotNull { map ->
-                    try {
-                        Review(
-                            reviewId = map["reviewId"] as? String ?: UUID.randomUUID().toString(),
-                            userId = map["userId"] as? String ?: "",
-                            rating = (map["rating"] as? Number)?.toDouble() ?: 0.0,
-                            comment = map["comment"] as? String ?: "",
-                            createdAt = map["createdAt"] as? com.google.firebase.Timestamp,
-                            updatedAt = map["updatedAt"] as? com.google.firebase.Timestamp
-                        )
-                    } catch (e: Exception) {
-                        Log.e("Firestore", "Error parsing review: ${e.message}")
-                        null
-                    }
-                }
-
-                product?.copy(review = parsedReviews)
-            }
+            val products = snapshot.documents.mapNotNull { documentToProductSummary(it) }
 
             Log.d("ProductRepository", "Total products fetched: ${products.size}")
             emit(products)
@@ -90,9 +111,24 @@ class FirebaseProductDao : ProductDao {
         }
     }
 
+    // whereIn accepts at most 30 values, so larger batches are split into several queries
+    override suspend fun getProductsByIds(productIds: List<String>): List<Product> {
+        return try {
+            productIds.filter { it.isNotBlank() }.distinct().chunked(WHERE_IN_LIMIT).flatMap { chunk ->
+                productsCollection.whereIn(FieldPath.documentId(), chunk).get().await()
+                    .documents.mapNotNull { documentToProduct(it) }
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "Error fetching products by IDs: ${e.message}")
+            emptyList()
+        }
+    }
+
     override suspend fun addProduct(product: Product): Boolean {
         return try {
             db.collection("products").document(product.productId).set(product).await()
+            productTracker.remember(product)
+            CountCache.invalidate("products")
             Log.d(TAG, "Product added successfully: ${product.productId}")
             true
         } catch (e: Exception) {
@@ -103,11 +139,18 @@ class FirebaseProductDao : ProductDao {
 
     override suspend fun updateProduct(product: Product): Boolean {
         return try {
-            db.collection("products")
-                .document(product.productId)
-                .set(product)
-                .await()
-            Log.d(TAG, "Product updated successfully")
+            val productRef = db.collection("products").document(product.productId)
+            val changes = productTracker.changes(product)
+            when {
+                // Never read on this client: write the editable fields only, so a product loaded
+                // from a summary cannot overwrite reviews or totals
+                changes == null -> productRef.set(product, SetOptions.mergeFields(EDITABLE_FIELDS)).await()
+                changes.isEmpty() -> Log.d(TAG, "No changes for product ${product.productId}")
+                else -> productRef.update(changes).await()
+            }
+            productTracker.remember(product)
+            CountCache.invalidate("products")
+            Log.d(TAG, "Product updated successfully: ${changes?.keys ?: "all fields"}")
             true
         } catch (e: Exception) {
             Log.e(TAG, "Error updating product", e)
@@ -118,6 +161,8 @@ class FirebaseProductDao : ProductDao {
     override suspend fun deleteProduct(productId: String): Boolean {
         return try {
             db.collection("products").document(productId).delete().await()
+            productTracker.forget(productId)
+            CountCache.invalidate("products")
             Log.d(TAG, "Product deleted successfully")
             true
         } catch (e: Exception) {
@@ -158,7 +203,7 @@ class FirebaseProductDao : ProductDao {
                 for (snapshot in listOf(lowerResults, upperResults)) {
                     snapshot.documents.forEach { doc ->
                         if (!productIds.contains(doc.id)) {
-                            documentToProduct(doc)?.let { product ->
+                            documentToProductSummary(doc)?.let { product ->
                                 val fieldValue = when (field) {
                                     "title" -> product.title
                                     "description" -> product.description
@@ -189,129 +234,97 @@ class FirebaseProductDao : ProductDao {
         }
     }
 
-    override suspend fun getProductsPage(limit: Int, offset: Int): Flow<List<Product>> = flow {
+    // Runs one page of baseQuery starting after the given cursor, so every page costs exactly `limit` reads
+    private fun queryPage(
+        baseQuery: Query,
+        limit: Int,
+        startAfter: DocumentSnapshot?,
+        label: String
+    ): Flow<ProductPage> = flow {
         try {
-            // Firestore doesn't support direct offset,using startAfter
-            // first page (offset = 0)
-            val query = if (offset == 0) {
-                productsCollection.orderBy("productId").limit(limit.toLong())
+            val query = if (startAfter == null) {
+                baseQuery.limit(limit.toLong())
             } else {
-                // For subsequent pages,  get the last document of the previous page
-                val lastVisibleDocSnapshot = productsCollection
-                    .orderBy("productId")
-                    .limit(offset.toLong())
-                    .get()
-                    .await()
-                    .documents
-                    .lastOrNull()
-
-                if (lastVisibleDocSnapshot != null) {
-                    productsCollection
-                        .orderBy("productId")
-                        .startAfter(lastVisibleDocSnapshot)
-                        .limit(limit.toLong())
-                } else {
-                    //return an empty list if can not find last document
-                    emit(emptyList<Product>())
-                    return@flow
-                }
+                baseQuery.startAfter(startAfter).limit(limit.toLong())
             }
 
             val snapshot = query.get().await()
-            val products = snapshot.documents.mapNotNull { documentToProduct(it) }
+            val products = snapshot.documents.mapNotNull { documentToProductSummary(it) }
 
-            Log.d(TAG, "Fetched page with limit=$limit, offset=$offset: ${products.size} products")
-            emit(products)
+            Log.d(TAG, "Fetched $label page with limit=$limit, cursor=${startAfter?.id}: ${products.size} products")
+            emit(ProductPage(products, snapshot.documents.lastOrNull()))
         } catch (e: Exception) {
-            Log.e(TAG, "Error fetching products page: ${e.message}")
-            emit(emptyList())
+            Log.e(TAG, "Error fetching $label page: ${e.message}")
+            emit(ProductPage())
         }
     }
 
+    override suspend fun getProductsPage(limit: Int, startAfter: DocumentSnapshot?): Flow<ProductPage> {
+        return queryPage(productsCollection.orderBy("productId"), limit, startAfter, "products")
+    }
+
     override suspend fun getProductsPageByCategory(
         categoryId: String,
         limit: Int,
-        offset: Int
-    ): Flow<List<Product>> = flow {
-        try {
-            val baseQuery = productsCollection.whereEqualTo("category", categoryId)
-
-            val query = if (offset == 0) {
-                baseQuery.limit(limit.toLong())
-            } else {
-                val lastVisibleDocSnapshot = baseQuery
-                    .limit(offset.toLong())
-                    .get()
-                    .await()
-                    .documents
-                    .lastOrNull()
-
-                if (lastVisibleDocSnapshot != null) {
-                    baseQuery
-                        .startAfter(lastVisibleDocSnapshot)
-                        .limit(limit.toLong())
-                } else {
-                    emit(emptyList<Product>())
-                    return@flow
-                }
-            }
-
-            val snapshot = query.get().await()
-            val products = snapshot.documents.mapNotNull { documentToProduct(it) }
-            Log.d(TAG, "Fetched category=$categoryId page with limit=$limit, offset=$offset: ${products.size} products")
-            emit(products)
-        } catch (e: Exception) {
-            Log.e(TAG, "Error fetching products page by category: ${e.message}")
-            emit(emptyList())
-        }
+        startAfter: DocumentSnapshot?
+    ): Flow<ProductPage> {
+        return queryPage(
+            productsCollection.whereEqualTo("category", categoryId),
+            limit,
+            startAfter,
+            "category=$categoryId"
+        )
     }
 
     override suspend fun searchProductsPageByKeyword(
         keyword: String,
         limit: Int,
-        offset: Int
-    ): Flow<List<Product>> = flow {
-        try {
-            val baseQuery = productsCollection
-                .whereGreaterThanOrEqualTo("title", keyword)
-                .whereLessThanOrEqualTo("title", keyword + "\uf8ff")
-                .orderBy("title", Query.Direction.ASCENDING)
-
-            val query = if (offset == 0) {
-                baseQuery.limit(limit.toLong())
-            } else {
-                val lastVisibleDocSnapshot = baseQuery
-                    .limit(offset.toLong())
-                    .get()
-                    .await()
-                    .documents
-                    .lastOrNull()
-
-                if (lastVisibleDocSnapshot != null) {
-                    baseQuery
-                        .startAfter(lastVisibleDocSnapshot)
-                        .limit(limit.toLong())
-                } else {
-                    emit(emptyList<Product>())
-                    return@flow
-                }
-            }
-
-            val snapshot = query.get().await()
-            val products = snapshot.documents.mapNotNull { documentToProduct(it) }
+        startAfter: DocumentSnapshot?
+    ): Flow<ProductPage> {
+        val baseQuery = productsCollection
+            .whereGreaterThanOrEqualTo("title", keyword)
+            .whereLessThanOrEqualTo("title", keyword + "\uf8ff")
+            .orderBy("title", Query.Direction.ASCENDING)
+        return queryPage(baseQuery, limit, startAfter, "keyword '$keyword'")
+    }
 
-            Log.d(TAG, "Searched '$keyword' page with limit=$limit, offset=$offset: ${products.size} products")
-            emit(products)
+    // Two small queries instead of a category page: equality on category + brand for the brand row, and the
+    // category alone for the rest (brand != would need a composite index). One extra doc covers the exclusion.
+    override suspend fun getRelatedProducts(
+        product: Product,
+        sameBrandLimit: Int,
+        similarLimit: Int
+    ): RelatedProducts {
+        return try {
+            val byCategory = productsCollection.whereEqualTo("category", product.category)
+            val sameBrand = byCategory
+                .whereEqualTo("brand", product.brand)
+                .limit((sameBrandLimit + 1).toLong())
+                .get()
+                .await()
+                .documents
+                .mapNotNull { documentToProductSummary(it) }
+                .filter { it.productId != product.productId }
+                .take(sameBrandLimit)
+            val similar = byCategory
+                .limit((similarLimit + sameBrandLimit + 1).toLong())
+                .get()
+                .await()
+                .documents
+                .mapNotNull { documentToProductSummary(it) }
+                .filter { it.productId != product.productId && it.brand != product.brand }
+                .take(similarLimit)
+            Log.d(TAG, "Related to ${product.productId}: ${sameBrand.size} same brand, ${similar.size} similar")
+            RelatedProducts(sameBrand, similar)
         } catch (e: Exception) {
-            Log.e(TAG, "Error searching products page: ${e.message}")
-            emit(emptyList())
+            Log.e(TAG, "Error fetching related products: ${e.message}")
+            RelatedProducts()
         }
     }
 
     override suspend fun getTotalProductsCount(): Int {
         return try {
-            val snapshot = productsCollection.get().await()
-            val count = snapshot.size()
+            val count = CountCache.count("products", productsCollection)
             Log.d(TAG, "Total products count: $count")
             count
         } catch (e: Exception) {
@@ -322,11 +335,10 @@ class FirebaseProductDao : ProductDao {
 
     override suspend fun getTotalProductsCountByCategory(categoryId: String): Int {
         return try {
-            val snapshot = productsCollection
-                .whereEqualTo("category", categoryId)
-                .get()
-                .await()
-            val count = snapshot.size()
+            val count = CountCache.count(
+                "products|category=$categoryId",
+                productsCollection.whereEqualTo("category", categoryId)
+            )
             Log.d(TAG, "Total products count for category $categoryId: $count")
             count
         } catch (e: Exception) {
@@ -337,12 +349,12 @@ class FirebaseProductDao : ProductDao {
 
     override suspend fun getTotalProductsCountByKeyword(keyword: String): Int {
         return try {
-            val snapshot = productsCollection
-                .whereGreaterThanOrEqualTo("title", keyword)
-                .whereLessThanOrEqualTo("title", keyword + "\uf8ff")
-                .get()
-                .await()
-            val count = snapshot.size()
+            val count = CountCache.count(
+                "products|title^=$keyword",
+                productsCollection
+                    .whereGreaterThanOrEqualTo("title", keyword)
+                    .whereLessThanOrEqualTo("title", keyword + "\uf8ff")
+            )
             Log.d(TAG, "Total products count for keyword '$keyword': $count")
             count
         } catch (e: Exception) {
@@ -351,87 +363,69 @@ class FirebaseProductDao : ProductDao {
         }
     }
 
-    // Hàm để thêm/xóa review
-    override suspend fun addReviewToProduct(productId: String, review: Review): Boolean {
-        return try {
-            val productRef = productsCollection.document(productId)
-            productRef.update("review", FieldValue.arrayUnion(review)).await()
-            Log.d(TAG, "Review added to product $productId")
-            true
-        } catch (e: Exception) {
-            Log.e(TAG, "Error adding review: ${e.message}")
-            false
-        }
+    // Search by title
+    override suspend fun searchProductsByTitle(
+        query: String,
+        limit: Int,
+        startAfter: DocumentSnapshot?
+    ): Flow<ProductPage> {
+        val baseQuery = productsCollection
+            .whereGreaterThanOrEqualTo("title", query)
+            .whereLessThanOrEqualTo("title", query + "\uf8ff")
+            .orderBy("title", Query.Direction.ASCENDING)
+        return queryPage(baseQuery, limit, startAfter, "title '$query'")
     }
 
-    override suspend fun removeReviewFromProduct(productId: String, review: Review): Boolean {
+    override suspend fun getTotalProductsCountByTitle(query: String): Int {
         return try {
-            val productRef = productsCollection.document(productId)
-            productRef.update("review", FieldValue.arrayRemove(review)).await()
-            Log.d(TAG, "Review removed from product $productId")
-            true
+            val count = CountCache.count(
+                "products|title^=$query",
+                productsCollection
+                    .whereGreaterThanOrEqualTo("title", query)
+                    .whereLessThanOrEqualTo("title", query + "\uf8ff")
+            )
+            Log.d(TAG, "Total products count for title '$query': $count")
+            count
         } catch (e: Exception) {
-            Log.e(TAG, "Error removing review: ${e.message}")
-            false
+            Log.e(TAG, "Error getting total products count by title: ${e.message}")
+            0
         }
     }
 
-    // Search by title
-    override suspend fun searchProductsByTitle(
-        query: String,
-        limit: Int,
-        offset: Int
-    ): Flow<List<Product>> = flow {
-        try {
-            val baseQuery = productsCollection
-                .whereGreaterThanOrEqualTo("title", query)
-                .whereLessThanOrEqualTo("title", query + "\uf8ff")
-                .orderBy("title", Query.Direction.ASCENDING)
-
-            val query = if (offset == 0) {
-                baseQuery.limit(limit.toLong())
+    override suspend fun getProductsUpdatedSince(since: Timestamp?): List<Product> {
+        return try {
+            val query = if (since == null) {
+                productsCollection
             } else {
-                val lastVisibleDocSnapshot = baseQuery
-                    .limit(offset.toLong())
-                    .get()
-                    .await()
-                    .documents
-                    .lastOrNull()
-
-                if (lastVisibleDocSnapshot != null) {
-                    baseQuery
-                        .startAfter(lastVisibleDocSnapshot)
-                        .limit(limit.toLong())
-                } else {
-                    emit(emptyList<Product>())
-                    return@flow
-                }
+                productsCollection.whereGreaterThan("updatedAt", since).orderBy("updatedAt")
             }
-
             val snapshot = query.get().await()
-            val products = snapshot.documents.mapNotNull { documentToProduct(it) }
-
-            Log.d(TAG, "Searched by title '$query' page with limit=$limit, offset=$offset: ${products.size} products")
-            emit(products)
+            val products = snapshot.documents.mapNotNull { documentToProductSummary(it) }
+            Log.d(TAG, "Products updated since ${since?.toDate()}: ${products.size}")
+            products
         } catch (e: Exception) {
-            Log.e(TAG, "Error searching products by title: ${e.message}")
-            emit(emptyList())
+            Log.e(TAG, "Error fetching updated products: ${e.message}")
+            emptyList()
         }
     }
 
-    override suspend fun getTotalProductsCountByTitle(query: String): Int {
-        return try {
-            val snapshot = productsCollection
-                .whereGreaterThanOrEqualTo("title", query)
-                .whereLessThanOrEqualTo("title", query + "\uf8ff")
-                .get()
-                .await()
-            val count = snapshot.size()
-            Log.d(TAG, "Total products count for title '$query': $count")
-            count
-        } catch (e: Exception) {
-            Log.e(TAG, "Error getting total products count by title: ${e.message}")
-            0
+    override fun observeProductChanges(): Flow<List<ProductChange>> = callbackFlow {
+        var initial = true
+        val registration = productsCollection.addSnapshotListener { snapshot, error ->
+            if (error != null) {
+                Log.e(TAG, "Error listening for product changes: ${error.message}")
+                return@addSnapshotListener
+            }
+            if (snapshot == null) return@addSnapshotListener
+            val changes = snapshot.documentChanges.mapNotNull { change ->
+                documentToProductSummary(change.document)?.let { ProductChange(change.type, it) }
+            }
+            // The initial snapshot is sent even when empty, it is the full product set
+            if (changes.isNotEmpty() || initial) {
+                initial = false
+                trySend(changes)
+            }
         }
+        awaitClose { registration.remove() }
     }
-}
\ No newline at end of file
+}
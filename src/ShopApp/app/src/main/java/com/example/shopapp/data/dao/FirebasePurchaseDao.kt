@@ -0,0 +1,75 @@
+package com.example.shopapp.data.dao
+
+import android.util.Log
+import com.google.firebase.Timestamp
+import com.google.firebase.firestore.FieldValue
+import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.firestore.Transaction
+import kotlinx.coroutines.tasks.await
+
+// users/{userId}/purchases/{productId}: written when an order is delivered, so review eligibility
+// is one document lookup instead of a scan over the user's orders
+class FirebasePurchaseDao : PurchaseDao {
+    private val db = FirebaseFirestore.getInstance()
+    private val TAG = "FirebasePurchaseDao"
+
+    override suspend fun hasPurchased(userId: String, productId: String): Boolean? {
+        return try {
+            purchasesOf(db, userId).document(productId).get().await().exists()
+        } catch (e: Exception) {
+            Log.e(TAG, "Error checking purchase: ${e.message}")
+            null
+        }
+    }
+
+    override suspend fun backfillFromOrders(userId: String): List<String>? {
+        return try {
+            val snapshot = db.collection("orders")
+                .whereEqualTo("userId", userId)
+                .whereEqualTo("status", "delivered")
+                .get()
+                .await()
+            val productIds = snapshot.documents
+                .flatMap { doc -> doc.get("orderDetail") as? List<Map<String, Any>> ?: emptyList() }
+                .mapNotNull { it["productId"] as? String }
+                .filter { it.isNotBlank() }
+                .distinct()
+
+            productIds.chunked(BATCH_LIMIT).forEach { chunk ->
+                val batch = db.batch()
+                chunk.forEach { productId ->
+                    batch.set(purchasesOf(db, userId).document(productId), purchaseData(productId, null))
+                }
+                batch.commit().await()
+            }
+            Log.d(TAG, "Backfilled ${productIds.size} purchases for user $userId from ${snapshot.size()} orders")
+            productIds
+        } catch (e: Exception) {
+            Log.e(TAG, "Error backfilling purchases: ${e.message}")
+            null
+        }
+    }
+
+    companion object {
+        private const val BATCH_LIMIT = 500
+
+        private fun purchasesOf(db: FirebaseFirestore, userId: String) =
+            db.collection("users").document(userId).collection("purchases")
+
+        private fun purchaseData(productId: String, deliveredAt: Any?): Map<String, Any?> = mapOf(
+            "productId" to productId,
+            "deliveredAt" to (deliveredAt ?: Timestamp.now())
+        )
+
+        // Blind writes, so it can go anywhere among the writes of the delivering transaction
+        fun recordPurchases(db: FirebaseFirestore, transaction: Transaction, userId: String, productIds: Collection<String>) {
+            if (userId.isBlank()) return
+            productIds.filter { it.isNotBlank() }.forEach { productId ->
+                transaction.set(
+                    purchasesOf(db, userId).document(productId),
+                    purchaseData(productId, FieldValue.serverTimestamp())
+                )
+            }
+        }
+    }
+}
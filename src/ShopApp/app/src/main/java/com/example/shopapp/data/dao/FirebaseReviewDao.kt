@@ -0,0 +1,260 @@
+package com.example.shopapp.data.dao
+
+import android.util.Log
+import com.example.shopapp.data.model.Review
+import com.example.shopapp.data.model.ReviewPage
+import com.google.firebase.Timestamp
+import com.google.firebase.firestore.DocumentReference
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.FieldValue
+import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.firestore.Query
+import com.google.firebase.firestore.Source
+import com.google.firebase.firestore.Transaction
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.tasks.await
+import java.util.UUID
+
+// Reviews live in products/{productId}/reviews; the product document only keeps the rating totals
+class FirebaseReviewDao : ReviewDao {
+    private val db = FirebaseFirestore.getInstance()
+    private val productsCollection = db.collection("products")
+    private val TAG = "FirebaseReviewDao"
+
+    private class RatingTotals(var sum: Double, var count: Int, val stars: MutableMap<String, Int>) {
+        fun add(rating: Double) {
+            sum += rating
+            count++
+            val star = starOf(rating)
+            stars[star] = (stars[star] ?: 0) + 1
+        }
+
+        fun remove(rating: Double) {
+            sum = (sum - rating).coerceAtLeast(0.0)
+            count = (count - 1).coerceAtLeast(0)
+            val star = starOf(rating)
+            stars[star] = ((stars[star] ?: 0) - 1).coerceAtLeast(0)
+        }
+
+        // updatedAt moves too, so the offline catalog picks the new totals up in its next delta sync
+        fun toFields(): Map<String, Any> = mapOf(
+            "ratingSum" to sum,
+            "ratingCount" to count,
+            "ratingStars" to stars,
+            "updatedAt" to FieldValue.serverTimestamp()
+        )
+
+        private fun starOf(rating: Double) = rating.toInt().coerceIn(1, 5).toString()
+
+        companion object {
+            fun of(reviews: List<Review>) = RatingTotals(0.0, 0, HashMap()).apply { reviews.forEach { add(it.rating) } }
+
+            fun stored(productDoc: DocumentSnapshot): RatingTotals {
+                val stars = (productDoc.get("ratingStars") as? Map<String, Any>)
+                    ?.mapValuesTo(HashMap()) { (it.value as? Number)?.toInt() ?: 0 } ?: HashMap()
+                return RatingTotals(
+                    productDoc.getDouble("ratingSum") ?: 0.0,
+                    productDoc.getLong("ratingCount")?.toInt() ?: 0,
+                    stars
+                )
+            }
+        }
+    }
+
+    private fun reviewsOf(productId: String) = productsCollection.document(productId).collection("reviews")
+
+    private fun documentToReview(doc: DocumentSnapshot): Review? {
+        return try {
+            Review(
+                reviewId = doc.getString("reviewId") ?: doc.id,
+                userId = doc.getString("userId") ?: "",
+                rating = doc.getDouble("rating") ?: 0.0,
+                comment = doc.getString("comment") ?: "",
+                createdAt = doc.getTimestamp("createdAt"),
+                updatedAt = doc.getTimestamp("updatedAt")
+            )
+        } catch (e: Exception) {
+            Log.e(TAG, "Error parsing review document: ${e.message}")
+            null
+        }
+    }
+
+    // Reviews still embedded in the product document (written before the subcollection existed)
+    private fun legacyReviews(productDoc: DocumentSnapshot): List<Review> {
+        val reviewList = productDoc.get("review") as? List<Map<String, Any>> ?: return emptyList()
+        return reviewList.mapNotNull { map ->
+            try {
+                Review(
+                    reviewId = map["reviewId"] as? String ?: legacyReviewId(map),
+                    userId = map["userId"] as? String ?: "",
+                    rating = (map["rating"] as? Number)?.toDouble() ?: 0.0,
+                    comment = map["comment"] as? String ?: "",
+                    createdAt = map["createdAt"] as? Timestamp,
+                    updatedAt = map["updatedAt"] as? Timestamp
+                )
+            } catch (e: Exception) {
+                Log.e(TAG, "Error parsing review: ${e.message}")
+                null
+            }
+        }
+    }
+
+    // Reviews saved without an ID get one derived from their content, so every read agrees on it
+    // and a review can be deleted by the ID the screen was given
+    private fun legacyReviewId(map: Map<String, Any>): String {
+        val key = listOf("userId", "rating", "comment", "createdAt").joinToString("|") { map[it]?.toString() ?: "" }
+        return UUID.nameUUIDFromBytes(key.toByteArray()).toString()
+    }
+
+    // Runs change against the product's rating totals and saves them after; change must do its reads
+    // before its writes. A product that still embeds reviews has them moved first, then it is retried.
+    private suspend fun updateReviews(productRef: DocumentReference, change: (Transaction, RatingTotals) -> Unit) {
+        repeat(2) {
+            val done = db.runTransaction { transaction ->
+                val productDoc = transaction.get(productRef)
+                if (legacyReviews(productDoc).isNotEmpty()) return@runTransaction false
+                val totals = RatingTotals.stored(productDoc)
+                change(transaction, totals)
+                transaction.update(productRef, totals.toFields())
+                true
+            }.await()
+            if (done) return
+            migrateProduct(productRef)
+        }
+        throw IllegalStateException("Embedded reviews of ${productRef.id} could not be migrated")
+    }
+
+    // Read from the local cache when possible; the detail screen has usually just loaded the product
+    private suspend fun hasEmbeddedReviews(productRef: DocumentReference): Boolean {
+        val productDoc = try {
+            productRef.get(Source.CACHE).await()
+        } catch (e: Exception) {
+            productRef.get().await()
+        }
+        return legacyReviews(productDoc).isNotEmpty()
+    }
+
+    override suspend fun getReviewsPage(
+        productId: String,
+        limit: Int,
+        startAfter: DocumentSnapshot?
+    ): Flow<ReviewPage> = flow {
+        try {
+            val baseQuery = reviewsOf(productId).orderBy("createdAt", Query.Direction.DESCENDING)
+            val query = if (startAfter == null) {
+                baseQuery.limit(limit.toLong())
+            } else {
+                baseQuery.startAfter(startAfter).limit(limit.toLong())
+            }
+
+            var snapshot = query.get().await()
+            val productRef = productsCollection.document(productId)
+            if (startAfter == null && snapshot.isEmpty && hasEmbeddedReviews(productRef) && migrateProduct(productRef)) {
+                // Not migrated yet: move the embedded reviews into the subcollection, then page it as usual
+                snapshot = query.get().await()
+            }
+            val reviews = snapshot.documents.mapNotNull { documentToReview(it) }
+
+            Log.d(TAG, "Fetched ${reviews.size} reviews for product $productId")
+            emit(ReviewPage(reviews, snapshot.documents.lastOrNull()))
+        } catch (e: Exception) {
+            Log.e(TAG, "Error fetching reviews page: ${e.message}")
+            emit(ReviewPage())
+        }
+    }
+
+    override suspend fun addReview(productId: String, review: Review): Boolean {
+        return try {
+            updateReviews(productsCollection.document(productId)) { transaction, totals ->
+                totals.add(review.rating)
+                transaction.set(reviewsOf(productId).document(review.reviewId), review)
+            }
+            Log.d(TAG, "Review added to product $productId")
+            true
+        } catch (e: Exception) {
+            Log.e(TAG, "Error adding review: ${e.message}")
+            false
+        }
+    }
+
+    override suspend fun deleteReview(productId: String, review: Review): Boolean {
+        return try {
+            val reviewRef = reviewsOf(productId).document(review.reviewId)
+            updateReviews(productsCollection.document(productId)) { transaction, totals ->
+                if (transaction.get(reviewRef).exists()) {
+                    totals.remove(review.rating)
+                    transaction.delete(reviewRef)
+                }
+            }
+            Log.d(TAG, "Review removed from product $productId")
+            true
+        } catch (e: Exception) {
+            Log.e(TAG, "Error removing review: ${e.message}")
+            false
+        }
+    }
+
+    // Moves one product's embedded reviews into its subcollection, MIGRATE_CHUNK per transaction; false
+    // when there was nothing to move. The first chunk stores totals over every embedded review, so from
+    // then on the stored totals are complete and the remaining chunks only move documents.
+    private suspend fun migrateProduct(productRef: DocumentReference): Boolean {
+        var moved = false
+        while (true) {
+            val remaining = db.runTransaction { transaction ->
+                val productDoc = transaction.get(productRef)
+                val legacy = legacyReviews(productDoc)
+                if (legacy.isEmpty()) return@runTransaction -1
+
+                val totals = if (productDoc.contains("ratingCount")) RatingTotals.stored(productDoc) else RatingTotals.of(legacy)
+                val chunk = legacy.take(MIGRATE_CHUNK)
+                val rest = legacy.drop(MIGRATE_CHUNK)
+                chunk.forEach { review -> transaction.set(reviewsOf(productRef.id).document(review.reviewId), review) }
+                transaction.update(productRef, totals.toFields() + ("review" to if (rest.isEmpty()) FieldValue.delete() else rest))
+                rest.size
+            }.await()
+            if (remaining < 0) return moved
+            moved = true
+            if (remaining == 0) return true
+        }
+    }
+
+    // Runs once: the marker in meta/embeddedReviews records that every product has been moved
+    override suspend fun migrateEmbeddedReviews(): Int {
+        if (migrationDone) return 0
+        return try {
+            val marker = db.collection("meta").document(MIGRATION_MARKER)
+            if (marker.get().await().getLong("version") == MIGRATION_VERSION) {
+                migrationDone = true
+                return 0
+            }
+
+            val snapshot = productsCollection
+                .whereNotEqualTo("review", emptyList<Any>())
+                .get()
+                .await()
+
+            var migrated = 0
+            for (doc in snapshot.documents) {
+                if (migrateProduct(doc.reference)) migrated++
+            }
+            marker.set(mapOf("version" to MIGRATION_VERSION, "updatedAt" to FieldValue.serverTimestamp())).await()
+            migrationDone = true
+            Log.d(TAG, "Migrated embedded reviews of $migrated products")
+            migrated
+        } catch (e: Exception) {
+            Log.e(TAG, "Error migrating embedded reviews: ${e.message}")
+            0
+        }
+    }
+
+    companion object {
+        // Reviews moved per transaction, with one write left for the product
+        private const val MIGRATE_CHUNK = 400
+        private const val MIGRATION_MARKER = "embeddedReviews"
+        private const val MIGRATION_VERSION = 1L
+
+        @Volatile
+        private var migrationDone = false
+    }
+}
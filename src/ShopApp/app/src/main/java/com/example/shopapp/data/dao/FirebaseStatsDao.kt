@@ -0,0 +1,213 @@
+package com.example.shopapp.data.dao
+
+import android.util.Log
+import com.example.shopapp.data.model.Order
+import com.example.shopapp.data.model.SalesStats
+import com.google.firebase.Timestamp
+import com.google.firebase.firestore.DocumentReference
+import com.google.firebase.firestore.FieldValue
+import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.firestore.SetOptions
+import com.google.firebase.firestore.Transaction
+import kotlinx.coroutines.tasks.await
+import java.util.Calendar
+
+class FirebaseStatsDao : StatsDao {
+    private val db = FirebaseFirestore.getInstance()
+    private val TAG = "FirebaseStatsDao"
+
+    override suspend fun getSalesStats(): SalesStats? {
+        return try {
+            val doc = salesRef(db).get().await()
+            if (doc.exists()) doc.toObject(SalesStats::class.java) else null
+        } catch (e: Exception) {
+            Log.e(TAG, "Error fetching sales stats: ${e.message}")
+            null
+        }
+    }
+
+    // The epoch starts before the orders are read, so from then on recordDelivery adds each delivery
+    // itself. The fold-in and recordDelivery both only add, and both skip an order already counted in
+    // the epoch, so an order delivered while the history is folded in is counted exactly once.
+    override suspend fun rebuildSalesStats(loadDeliveredOrders: suspend () -> List<Order>): SalesStats? {
+        return try {
+            val salesRef = salesRef(db)
+            val epoch = db.runTransaction { transaction ->
+                val current = transaction.get(salesRef).toObject(SalesStats::class.java)
+                // An unfinished rebuild is resumed; its counted markers keep orders from being added twice
+                if (current != null && current.epoch.isNotBlank() && !current.rebuilt) {
+                    current.epoch
+                } else {
+                    val epoch = salesRef.collection("epochs").document().id
+                    transaction.set(salesRef, SalesStats(updatedAt = Timestamp.now(), epoch = epoch))
+                    epoch
+                }
+            }.await()
+
+            val deliveries = loadDeliveredOrders().map { order ->
+                Delivery(order.orderId, order.userId, order.totalPrice, unitsOf(order), dayOf(order.updatedAt))
+            }
+            var added = 0
+            chunkByWrites(deliveries).forEach { chunk ->
+                added += db.runTransaction { transaction -> record(db, transaction, chunk, epoch) }.await()
+            }
+
+            db.runTransaction { transaction ->
+                if (transaction.get(salesRef).getString("epoch") == epoch) {
+                    transaction.set(salesRef, mapOf("rebuilt" to true), SetOptions.merge())
+                }
+                null
+            }.await()
+
+            Log.d(TAG, "Rebuilt sales stats: folded in $added of ${deliveries.size} delivered orders")
+            getSalesStats()
+        } catch (e: Exception) {
+            Log.e(TAG, "Error rebuilding sales stats: ${e.message}")
+            null
+        }
+    }
+
+    private class Delivery(
+        val orderId: String,
+        val userId: String,
+        val totalPrice: Double,
+        val units: Map<String, Int>,
+        val day: String
+    ) {
+        val spender: String get() = userId.ifBlank { "unknown" }
+    }
+
+    companion object {
+        // Writes of one fold-in transaction, under the 500 limit
+        private const val WRITE_LIMIT = 450
+
+        private fun salesRef(db: FirebaseFirestore) = db.collection("stats").document("sales")
+
+        private fun unitsOf(order: Order): Map<String, Int> = order.orderDetail
+            .groupBy { it.productId }
+            .mapValues { (_, items) -> items.sumOf { it.quantity } }
+
+        private fun dayOf(timestamp: Timestamp?): String {
+            val calendar = Calendar.getInstance()
+            timestamp?.let { calendar.time = it.toDate() }
+            return SalesStats.dayKey(calendar)
+        }
+
+        private fun oldestBucket(): String {
+            val calendar = Calendar.getInstance()
+            calendar.add(Calendar.DAY_OF_YEAR, -(SalesStats.DAILY_BUCKETS - 1))
+            return SalesStats.dayKey(calendar)
+        }
+
+        // Consecutive deliveries whose counted markers, counters and summary fit in one transaction
+        private fun chunkByWrites(deliveries: List<Delivery>): List<List<Delivery>> {
+            val chunks = mutableListOf<List<Delivery>>()
+            var chunk = mutableListOf<Delivery>()
+            val products = HashSet<String>()
+            val users = HashSet<String>()
+            deliveries.forEach { delivery ->
+                val newProducts = delivery.units.keys.count { it !in products }
+                val newUser = if (delivery.spender in users) 0 else 1
+                if (chunk.isNotEmpty() && chunk.size + 1 + products.size + newProducts + users.size + newUser + 1 > WRITE_LIMIT) {
+                    chunks += chunk
+                    chunk = mutableListOf()
+                    products.clear()
+                    users.clear()
+                }
+                chunk += delivery
+                products += delivery.units.keys
+                users += delivery.spender
+            }
+            if (chunk.isNotEmpty()) chunks += chunk
+            return chunks
+        }
+
+        // Adds one delivered order to the rollup inside the caller's transaction. It reads the summary and the
+        // touched counters first and writes after, so the caller must do its own reads before calling and its
+        // writes after. Before the first rebuild has started an epoch nothing is written: the rebuild counts
+        // this order from the orders collection.
+        fun recordDelivery(
+            db: FirebaseFirestore,
+            transaction: Transaction,
+            orderId: String,
+            userId: String,
+            totalPrice: Double,
+            units: Map<String, Int>
+        ) {
+            record(db, transaction, listOf(Delivery(orderId, userId, totalPrice, units, dayOf(null))), null)
+        }
+
+        // Adds the deliveries not yet counted in the current epoch and returns how many that was. With
+        // expectedEpoch set nothing is written once a newer rebuild has replaced that epoch. The best
+        // seller / big spender only ever grow, so comparing the touched counters against them stays exact.
+        private fun record(
+            db: FirebaseFirestore,
+            transaction: Transaction,
+            deliveries: List<Delivery>,
+            expectedEpoch: String?
+        ): Int {
+            val salesRef = salesRef(db)
+            val summary = transaction.get(salesRef).toObject(SalesStats::class.java) ?: return 0
+            if (summary.epoch.isBlank() || (expectedEpoch != null && summary.epoch != expectedEpoch)) return 0
+
+            val epochRef = salesRef.collection("epochs").document(summary.epoch)
+            val fresh = deliveries.distinctBy { it.orderId }.filter { delivery ->
+                !transaction.get(countedRef(epochRef, delivery.orderId)).exists()
+            }
+            if (fresh.isEmpty()) return 0
+
+            val units = HashMap<String, Int>()
+            val spend = HashMap<String, Double>()
+            fresh.forEach { delivery ->
+                delivery.units.forEach { (productId, quantity) -> units.merge(productId, quantity) { a, b -> a + b } }
+                spend.merge(delivery.spender, delivery.totalPrice) { a, b -> a + b }
+            }
+            val productTotals = units.mapValues { (productId, quantity) ->
+                (transaction.get(epochRef.collection("productUnits").document(productId)).getLong("units")?.toInt() ?: 0) + quantity
+            }
+            val userTotals = spend.mapValues { (userId, total) ->
+                (transaction.get(epochRef.collection("userSpend").document(userId)).getDouble("total") ?: 0.0) + total
+            }
+
+            fresh.forEach { delivery ->
+                transaction.set(countedRef(epochRef, delivery.orderId), mapOf("countedAt" to FieldValue.serverTimestamp()))
+            }
+            productTotals.forEach { (productId, total) ->
+                transaction.set(epochRef.collection("productUnits").document(productId), mapOf("units" to total))
+            }
+            userTotals.forEach { (userId, total) ->
+                transaction.set(epochRef.collection("userSpend").document(userId), mapOf("total" to total))
+            }
+
+            val oldestDay = oldestBucket()
+            val dailyUpdates = HashMap<String, Any>()
+            fresh.filter { it.day >= oldestDay }.groupBy { it.day }.forEach { (day, onDay) ->
+                dailyUpdates[day] = FieldValue.increment(onDay.sumOf { it.totalPrice })
+            }
+            summary.dailyRevenue.keys.filter { it < oldestDay }.forEach { dailyUpdates[it] = FieldValue.delete() }
+
+            val updates = HashMap<String, Any>()
+            updates["totalRevenue"] = FieldValue.increment(fresh.sumOf { it.totalPrice })
+            updates["deliveredCount"] = FieldValue.increment(fresh.size.toLong())
+            if (dailyUpdates.isNotEmpty()) updates["dailyRevenue"] = dailyUpdates
+            updates["updatedAt"] = FieldValue.serverTimestamp()
+            productTotals.maxByOrNull { it.value }?.let { (productId, total) ->
+                if (total > summary.bestSellerUnits || productId == summary.bestSellerId) {
+                    updates["bestSellerId"] = productId
+                    updates["bestSellerUnits"] = total
+                }
+            }
+            userTotals.maxByOrNull { it.value }?.let { (userId, total) ->
+                if (total > summary.bigSpenderTotal || userId == summary.bigSpenderId) {
+                    updates["bigSpenderId"] = userId
+                    updates["bigSpenderTotal"] = total
+                }
+            }
+            transaction.set(salesRef, updates, SetOptions.merge())
+            return fresh.size
+        }
+
+        private fun countedRef(epochRef: DocumentReference, orderId: String) =
+            epochRef.collection("counted").document(orderId)
+    }
+}
@@ -1,8 +1,11 @@
 package com.example.shopapp.data.dao
 
 import android.util.Log
+import com.example.shopapp.data.cache.UserProfileCache
 import com.example.shopapp.data.model.User
+import com.example.shopapp.data.search.UserSearchFields
 import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.firestore.SetOptions
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.tasks.await
@@ -17,6 +20,16 @@ class FirebaseUserDao : UserDao {
         return doc.toObject(User::class.java)
     }
 
+    // set() replaces the document, so the admin search fields are written again in the same batch
+    private suspend fun setWithSearchFields(userId: String, user: User) {
+        val userRef = usersCollection.document(userId)
+        db.batch()
+            .set(userRef, user)
+            .set(userRef, UserSearchFields.of(user), SetOptions.merge())
+            .commit()
+            .await()
+    }
+
     override suspend fun getAllUser(): Flow<List<User>> = flow {
         try {
             val snapshot = usersCollection.get().await()
@@ -71,7 +84,8 @@ class FirebaseUserDao : UserDao {
 
     override suspend fun addUser(user: User): Boolean {
         return try {
-            usersCollection.document(user.userId).set(user).await()
+            setWithSearchFields(user.userId, user)
+            CountCache.invalidate("users")
             Log.d(TAG, "User added successfully: ${user.userId}")
             true
         } catch (e: Exception) {
@@ -93,12 +107,14 @@ class FirebaseUserDao : UserDao {
                 }
 
                 val docId = emailQuery.documents[0].id
-                usersCollection.document(docId).set(user.copy(userId = docId)).await()
+                setWithSearchFields(docId, user.copy(userId = docId))
+                UserProfileCache.invalidate(docId)
                 Log.d(TAG, "User updated successfully by email lookup: $docId")
                 true
             } else {
                 // Use the existing userId
-                usersCollection.document(user.userId).set(user).await()
+                setWithSearchFields(user.userId, user)
+                UserProfileCache.invalidate(user.userId)
                 Log.d(TAG, "User updated successfully: ${user.userId}")
                 true
             }
@@ -111,6 +127,8 @@ class FirebaseUserDao : UserDao {
     override suspend fun deleteUser(userId: String): Boolean {
         return try {
             usersCollection.document(userId).delete().await()
+            UserProfileCache.invalidate(userId)
+            CountCache.invalidate("users")
             Log.d(TAG, "User deleted successfully: ${userId}")
             true
         }
@@ -137,8 +155,7 @@ class FirebaseUserDao : UserDao {
 
     override suspend fun getTotalUsersCount(): Int {
         return try {
-            val snapshot = usersCollection.get().await()
-            val count = snapshot.size()
+            val count = CountCache.count("users", usersCollection)
             Log.d(TAG, "Total users count: $count")
             count
         } catch (e: Exception) {
@@ -149,12 +166,12 @@ class FirebaseUserDao : UserDao {
 
     override suspend fun getTotalUsersCountByKeyword(keyword: String): Int {
         return try {
-            val snapshot = usersCollection
-                .whereGreaterThanOrEqualTo("username", keyword)
-                .whereLessThanOrEqualTo("username", keyword + "\uf8ff")
-                .get()
-                .await()
-            val count = snapshot.size()
+            val count = CountCache.count(
+                "users|username^=$keyword",
+                usersCollection
+                    .whereGreaterThanOrEqualTo("username", keyword)
+                    .whereLessThanOrEqualTo("username", keyword + "\uf8ff")
+            )
             Log.d(TAG, "Total users count for keyword '$keyword': $count")
             count
         } catch (e: Exception) {
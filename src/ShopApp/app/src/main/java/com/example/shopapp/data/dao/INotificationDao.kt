@@ -1,11 +1,23 @@
 package com.example.shopapp.data.dao
 
 import com.example.shopapp.data.model.NotificationItem
+import com.example.shopapp.data.model.NotificationPage
+import com.google.firebase.firestore.DocumentSnapshot
 import kotlinx.coroutines.flow.Flow
 
 interface INotificationDao {
     suspend fun getNotificationsByUserId(userId: String): Flow<List<NotificationItem>>
+    // Newest first, continuing after startAfter (the lastDocument of the previous page)
+    suspend fun getNotificationsPage(userId: String, limit: Int, startAfter: DocumentSnapshot? = null): Flow<NotificationPage>
     suspend fun getUnreadNotificationCountByUserId(userId: String): Int
+    // Live unread count for the inbox badge
+    fun observeUnreadCount(userId: String): Flow<Int>
     suspend fun updateNotification(notification: NotificationItem): Boolean
     suspend fun deleteNotification(notificationId: String): Boolean
-}
\ No newline at end of file
+
+    // Bulk operations, committed in chunked transactions; read state changes touch only isRead
+    suspend fun markAsRead(notifications: List<NotificationItem>): Boolean
+    suspend fun markAllAsRead(userId: String): Boolean
+    suspend fun deleteNotifications(notifications: List<NotificationItem>): Boolean
+    suspend fun deleteAllNotifications(userId: String): Boolean
+}
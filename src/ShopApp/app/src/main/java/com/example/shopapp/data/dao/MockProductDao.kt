@@ -1,7 +1,9 @@
 package com.example.shopapp.data.dao
 
 import com.example.shopapp.data.model.Product
+import com.example.shopapp.data.model.ProductPage
 import com.google.firebase.Timestamp
+import com.google.firebase.firestore.DocumentSnapshot
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.flow
 import java.util.UUID
@@ -203,24 +205,24 @@ class MockProductDao :ProductDao {
 
     override suspend fun getProductsPage(
         limit: Int,
-        offset: Int
-    ): Flow<List<Product>> {
+        startAfter: DocumentSnapshot?
+    ): Flow<ProductPage> {
         TODO("Not yet implemented")
     }
 
     override suspend fun getProductsPageByCategory(
         categoryId: String,
         limit: Int,
-        offset: Int
-    ): Flow<List<Product>> {
+        startAfter: DocumentSnapshot?
+    ): Flow<ProductPage> {
         TODO("Not yet implemented")
     }
 
     override suspend fun searchProductsPageByKeyword(
         keyword: String,
         limit: Int,
-        offset: Int
-    ): Flow<List<Product>> {
+        startAfter: DocumentSnapshot?
+    ): Flow<ProductPage> {
         TODO("Not yet implemented")
     }
 
@@ -236,9 +238,9 @@ class MockProductDao :ProductDao {
         TODO("Not yet implemented")
     }
 
-    override suspend fun searchProductsByTitle(query: String, limit: Int, offset: Int): Flow<List<Product>> {
+    override suspend fun searchProductsByTitle(query: String, limit: Int, startAfter: DocumentSnapshot?): Flow<ProductPage> {
         return flow {
-            emit(productList.filter { it.title.contains(query, ignoreCase = true) })
+            emit(ProductPage(productList.filter { it.title.contains(query, ignoreCase = true) }, null))
         }
     }
 
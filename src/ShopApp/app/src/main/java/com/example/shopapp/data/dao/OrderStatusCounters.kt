@@ -0,0 +1,114 @@
+package com.example.shopapp.data.dao
+
+import android.util.Log
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.FieldValue
+import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.firestore.SetOptions
+import com.google.firebase.firestore.Transaction
+import com.google.firebase.firestore.WriteBatch
+import kotlinx.coroutines.tasks.await
+import kotlin.random.Random
+
+// Order counts per status, spread over SHARD_COUNT documents in stats/orderStatus/shards so a burst of
+// checkouts does not contend on one document. Each shard holds one field per status; writers bump a
+// random shard and readers sum all of them, so every status badge together costs SHARD_COUNT reads.
+// The shards are never overwritten: seeding stores per-status offsets on the root document that make
+// shards + offsets match the orders collection, so no increment can be lost or counted twice.
+object OrderStatusCounters {
+    private const val TAG = "OrderStatusCounters"
+    private const val SHARD_COUNT = 10
+    private const val SEED_ATTEMPTS = 3
+
+    // Read from the root once; they never change after seeding
+    @Volatile
+    private var offsets: Map<String, Int>? = null
+
+    private fun rootRef(db: FirebaseFirestore) = db.collection("stats").document("orderStatus")
+
+    private fun shardRef(db: FirebaseFirestore, shard: Int = Random.nextInt(SHARD_COUNT)) =
+        rootRef(db).collection("shards").document(shard.toString())
+
+    private fun deltaFields(from: String?, to: String?): Map<String, Any> {
+        if (from == to) return emptyMap()
+        val fields = HashMap<String, Any>()
+        if (!from.isNullOrBlank()) fields[from] = FieldValue.increment(-1)
+        if (!to.isNullOrBlank()) fields[to] = FieldValue.increment(1)
+        return fields
+    }
+
+    // from = null for a new order, to = null for a deleted one. Blind write, so it can follow the
+    // caller's reads inside a transaction.
+    fun recordTransition(db: FirebaseFirestore, transaction: Transaction, from: String?, to: String?) {
+        val fields = deltaFields(from, to)
+        if (fields.isNotEmpty()) transaction.set(shardRef(db), fields, SetOptions.merge())
+    }
+
+    fun recordTransition(db: FirebaseFirestore, batch: WriteBatch, from: String?, to: String?) {
+        val fields = deltaFields(from, to)
+        if (fields.isNotEmpty()) batch.set(shardRef(db), fields, SetOptions.merge())
+    }
+
+    // countByStatus is only used once, to seed the offsets from the orders collection, and must not be cached
+    suspend fun readAll(db: FirebaseFirestore, countByStatus: suspend (String) -> Int): Map<String, Int> {
+        val base = offsets ?: loadOffsets(db, countByStatus).also { offsets = it }
+        val counts = HashMap(base)
+        readShards(db).forEach { (status, value) -> counts[status] = (counts[status] ?: 0) + value }
+        return counts
+    }
+
+    private suspend fun readShards(db: FirebaseFirestore): Map<String, Int> {
+        val sums = HashMap<String, Int>()
+        rootRef(db).collection("shards").get().await().documents.forEach { shard ->
+            shard.data?.forEach { (status, value) ->
+                (value as? Number)?.let { sums[status] = (sums[status] ?: 0) + it.toInt() }
+            }
+        }
+        return sums
+    }
+
+    private fun offsetsOf(root: DocumentSnapshot): Map<String, Int> {
+        val stored = root.get("offsets") as? Map<*, *> ?: return emptyMap()
+        return stored.entries.mapNotNull { (status, value) ->
+            (value as? Number)?.let { status.toString() to it.toInt() }
+        }.toMap()
+    }
+
+    private suspend fun loadOffsets(db: FirebaseFirestore, countByStatus: suspend (String) -> Int): Map<String, Int> {
+        val root = rootRef(db).get().await()
+        if (root.getBoolean("initialized") == true) return offsetsOf(root)
+
+        // Every status change writes a shard in the same commit, so equal shard sums before and after
+        // the counts mean the counts and the shards describe the same orders
+        var seeded: Map<String, Int>? = null
+        for (attempt in 1..SEED_ATTEMPTS) {
+            val before = readShards(db)
+            val totals = SEED_STATUSES.associateWith { countByStatus(it) }
+            val after = readShards(db)
+            if (before == after) {
+                seeded = totals.mapValues { (status, total) -> total - (after[status] ?: 0) }
+                break
+            }
+            Log.d(TAG, "Orders changed while seeding, attempt $attempt")
+        }
+        val computed = seeded ?: throw IllegalStateException("Orders kept changing while seeding counters")
+
+        // The first seeder to commit wins; a concurrent one takes its offsets
+        return db.runTransaction { transaction ->
+            val current = transaction.get(rootRef(db))
+            if (current.getBoolean("initialized") == true) {
+                offsetsOf(current)
+            } else {
+                transaction.set(rootRef(db), mapOf(
+                    "initialized" to true,
+                    "offsets" to computed,
+                    "seededAt" to FieldValue.serverTimestamp()
+                ))
+                Log.d(TAG, "Seeded order status counters: $computed")
+                computed
+            }
+        }.await()
+    }
+
+    private val SEED_STATUSES = listOf("pending", "shipping", "delivered", "cancelled")
+}
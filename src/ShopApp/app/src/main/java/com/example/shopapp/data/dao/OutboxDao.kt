@@ -0,0 +1,23 @@
+package com.example.shopapp.data.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.example.shopapp.data.model.OutboxEntry
+
+@Dao
+interface OutboxDao {
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun insertAll(entries: List<OutboxEntry>)
+
+    // Oldest first; entries that used up their attempts stay in the table for inspection
+    @Query("SELECT * FROM outbox WHERE attempts < :maxAttempts ORDER BY createdAt LIMIT :limit")
+    suspend fun pending(limit: Int, maxAttempts: Int): List<OutboxEntry>
+
+    @Query("DELETE FROM outbox WHERE idempotencyKey IN (:keys)")
+    suspend fun delete(keys: List<String>)
+
+    @Query("UPDATE outbox SET attempts = attempts + 1, lastError = :error WHERE idempotencyKey IN (:keys)")
+    suspend fun markFailed(keys: List<String>, error: String)
+}
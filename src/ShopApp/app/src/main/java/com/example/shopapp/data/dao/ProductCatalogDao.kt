@@ -0,0 +1,54 @@
+package com.example.shopapp.data.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import androidx.room.Transaction
+import com.example.shopapp.data.model.CatalogSyncState
+import com.example.shopapp.data.model.ProductEntity
+
+@Dao
+interface ProductCatalogDao {
+    // Same order as the Firestore pages (document id), so the cached page and the fresh one line up
+    @Query("SELECT * FROM products ORDER BY productId LIMIT :limit")
+    suspend fun getPage(limit: Int): List<ProductEntity>
+
+    @Query("SELECT * FROM products WHERE category = :category ORDER BY productId LIMIT :limit")
+    suspend fun getPageByCategory(category: String, limit: Int): List<ProductEntity>
+
+    @Query("SELECT * FROM products WHERE productId = :productId")
+    suspend fun getById(productId: String): ProductEntity?
+
+    @Query("SELECT watermarkMillis FROM catalog_sync WHERE id = 0")
+    suspend fun getSyncWatermark(): Long?
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun setSyncState(state: CatalogSyncState)
+
+    @Query("SELECT COUNT(*) FROM products")
+    suspend fun count(): Int
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun upsert(products: List<ProductEntity>)
+
+    @Query("DELETE FROM products WHERE productId IN (:productIds)")
+    suspend fun delete(productIds: List<String>)
+
+    @Query("DELETE FROM products")
+    suspend fun clear()
+
+    @Transaction
+    suspend fun replaceAll(products: List<ProductEntity>, watermarkMillis: Long) {
+        clear()
+        upsert(products)
+        setSyncState(CatalogSyncState(watermarkMillis = watermarkMillis))
+    }
+
+    // The watermark only moves together with the rows it covers
+    @Transaction
+    suspend fun upsertSynced(products: List<ProductEntity>, watermarkMillis: Long) {
+        upsert(products)
+        setSyncState(CatalogSyncState(watermarkMillis = watermarkMillis))
+    }
+}
@@ -1,21 +1,30 @@
 package com.example.shopapp.data.dao
 
 import com.example.shopapp.data.model.Product
+import com.example.shopapp.data.model.ProductChange
+import com.example.shopapp.data.model.ProductPage
+import com.example.shopapp.data.model.RelatedProducts
 import com.example.shopapp.data.model.Review
+import com.google.firebase.Timestamp
+import com.google.firebase.firestore.DocumentSnapshot
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.emptyFlow
 
 interface ProductDao {
     suspend fun getAllProducts(): Flow<List<Product>>
     suspend fun getProductById(productId: String): Product?
+    // missing IDs are skipped; order of the result is not guaranteed
+    suspend fun getProductsByIds(productIds: List<String>): List<Product> =
+        productIds.mapNotNull { getProductById(it) }
     suspend fun addProduct(product: Product): Boolean
     suspend fun updateProduct(product: Product): Boolean
     suspend fun deleteProduct(productId: String): Boolean
     suspend fun searchProductsByKeyword(keyword: String): Flow<List<Product>>
 
-    //pagination optimize
-    suspend fun getProductsPage(limit: Int, offset: Int): Flow<List<Product>>
-    suspend fun getProductsPageByCategory(categoryId: String, limit: Int, offset: Int): Flow<List<Product>>
-    suspend fun searchProductsPageByKeyword(keyword: String, limit: Int, offset: Int): Flow<List<Product>>
+    // cursor pagination: pass the lastDocument of the previous page, null for the first page
+    suspend fun getProductsPage(limit: Int, startAfter: DocumentSnapshot? = null): Flow<ProductPage>
+    suspend fun getProductsPageByCategory(categoryId: String, limit: Int, startAfter: DocumentSnapshot? = null): Flow<ProductPage>
+    suspend fun searchProductsPageByKeyword(keyword: String, limit: Int, startAfter: DocumentSnapshot? = null): Flow<ProductPage>
     suspend fun getTotalProductsCount(): Int
     suspend fun getTotalProductsCountByCategory(categoryId: String): Int
     suspend fun getTotalProductsCountByKeyword(keyword: String): Int
@@ -30,6 +39,17 @@ interface ProductDao {
     }
 
     // search by title
-    suspend fun searchProductsByTitle(query: String, limit: Int, offset: Int): Flow<List<Product>>
+    suspend fun searchProductsByTitle(query: String, limit: Int, startAfter: DocumentSnapshot? = null): Flow<ProductPage>
     suspend fun getTotalProductsCountByTitle(query: String): Int
+
+    // products changed after `since` (all products when null), used for the offline catalog delta sync
+    suspend fun getProductsUpdatedSince(since: Timestamp?): List<Product> = emptyList()
+
+    // suggestions for a product page, never including the product itself
+    suspend fun getRelatedProducts(product: Product, sameBrandLimit: Int, similarLimit: Int): RelatedProducts =
+        RelatedProducts()
+
+    // live product deltas, used to keep local indexes current. The first emission is the initial
+    // snapshot (every product as ADDED, possibly none), so collectors can drop entries that are gone
+    fun observeProductChanges(): Flow<List<ProductChange>> = emptyFlow()
 }
@@ -0,0 +1,47 @@
+package com.example.shopapp.data.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import androidx.room.Transaction
+import com.example.shopapp.data.model.ProductSearchDoc
+import com.example.shopapp.data.model.ProductSearchToken
+
+@Dao
+interface ProductSearchDao {
+    @Query("SELECT * FROM product_search_tokens")
+    suspend fun getAllTokens(): List<ProductSearchToken>
+
+    @Query("SELECT * FROM product_search_docs")
+    suspend fun getAllDocs(): List<ProductSearchDoc>
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun insertTokens(tokens: List<ProductSearchToken>)
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun insertDocs(docs: List<ProductSearchDoc>)
+
+    @Query("DELETE FROM product_search_tokens WHERE productId IN (:productIds)")
+    suspend fun deleteTokens(productIds: List<String>)
+
+    @Query("DELETE FROM product_search_docs WHERE productId IN (:productIds)")
+    suspend fun deleteDocs(productIds: List<String>)
+
+    // Replaces the postings of the changed products and drops the removed ones in one transaction
+    @Transaction
+    suspend fun applyChanges(
+        changedIds: List<String>,
+        tokens: List<ProductSearchToken>,
+        docs: List<ProductSearchDoc>,
+        removedIds: List<String>
+    ) {
+        val staleIds = changedIds + removedIds
+        if (staleIds.isNotEmpty()) {
+            deleteTokens(staleIds)
+            deleteDocs(removedIds)
+        }
+        if (tokens.isNotEmpty()) insertTokens(tokens)
+        if (docs.isNotEmpty()) insertDocs(docs)
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.shopapp.data.dao
+
+interface PurchaseDao {
+    // single document read of users/{userId}/purchases/{productId}; null when the read failed
+    suspend fun hasPurchased(userId: String, productId: String): Boolean?
+
+    // one-off for users whose deliveries predate the purchases subcollection; returns all purchased ids,
+    // or null when the orders could not be read
+    suspend fun backfillFromOrders(userId: String): List<String>?
+}
@@ -0,0 +1,23 @@
+package com.example.shopapp.data.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.example.shopapp.data.model.PurchaseSyncState
+import com.example.shopapp.data.model.PurchasedProduct
+
+@Dao
+interface PurchasedProductDao {
+    @Query("SELECT EXISTS(SELECT 1 FROM purchased_products WHERE userId = :userId AND productId = :productId)")
+    suspend fun contains(userId: String, productId: String): Boolean
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun insertAll(purchases: List<PurchasedProduct>)
+
+    @Query("SELECT EXISTS(SELECT 1 FROM purchase_sync WHERE userId = :userId)")
+    suspend fun isSynced(userId: String): Boolean
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun markSynced(state: PurchaseSyncState)
+}
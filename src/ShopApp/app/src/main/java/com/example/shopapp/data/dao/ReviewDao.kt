@@ -0,0 +1,16 @@
+package com.example.shopapp.data.dao
+
+import com.example.shopapp.data.model.Review
+import com.example.shopapp.data.model.ReviewPage
+import com.google.firebase.firestore.DocumentSnapshot
+import kotlinx.coroutines.flow.Flow
+
+interface ReviewDao {
+    // newest first; pass the lastDocument of the previous page, null for the first page
+    suspend fun getReviewsPage(productId: String, limit: Int, startAfter: DocumentSnapshot? = null): Flow<ReviewPage>
+    suspend fun addReview(productId: String, review: Review): Boolean
+    suspend fun deleteReview(productId: String, review: Review): Boolean
+
+    // one-off move of the embedded review arrays into the subcollection, returns migrated products
+    suspend fun migrateEmbeddedReviews(): Int
+}
@@ -0,0 +1,71 @@
+package com.example.shopapp.data.dao
+
+import android.util.Log
+import com.google.firebase.firestore.CollectionReference
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.FieldPath
+import com.google.firebase.firestore.FieldValue
+import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.firestore.SetOptions
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.tasks.await
+
+// Adds denormalized search fields to documents written before those fields existed. Runs once per
+// collection and version: a marker in meta/{name} records completion, so later processes pay one read.
+// Documents are walked by ID one page at a time and the marker keeps the last ID done, so a run that
+// dies part way resumes there, and two clients running at once skip ahead to each other's progress.
+object SearchFieldsBackfill {
+    private const val TAG = "SearchFieldsBackfill"
+    private const val BATCH_LIMIT = 500
+    // one write of each batch is the marker
+    private const val PAGE_SIZE = BATCH_LIMIT - 1
+
+    private val done = HashSet<String>()
+    private val mutex = Mutex()
+
+    suspend fun ensure(
+        db: FirebaseFirestore,
+        name: String,
+        version: Long,
+        collection: CollectionReference,
+        fieldsOf: (DocumentSnapshot) -> Map<String, Any>
+    ) {
+        val key = "$name@$version"
+        mutex.withLock {
+            if (key in done) return
+            val marker = db.collection("meta").document(name)
+            var cursor: String? = null
+            var updated = 0
+            while (true) {
+                val state = marker.get().await()
+                if (state.getLong("version") == version) break
+                val saved = if (state.getLong("cursorVersion") == version) state.getString("cursor") else null
+                if (saved != null && (cursor == null || saved > cursor)) cursor = saved
+
+                var query = collection.orderBy(FieldPath.documentId()).limit(PAGE_SIZE.toLong())
+                cursor?.let { query = query.startAfter(it) }
+                val page = query.get().await().documents
+                val last = page.size < PAGE_SIZE
+
+                val batch = db.batch()
+                page.forEach { doc -> batch.update(doc.reference, fieldsOf(doc)) }
+                val progress = if (last) {
+                    mapOf("version" to version, "updatedAt" to FieldValue.serverTimestamp())
+                } else {
+                    mapOf("cursorVersion" to version, "cursor" to page.last().id, "updatedAt" to FieldValue.serverTimestamp())
+                }
+                batch.set(marker, progress, SetOptions.merge())
+                batch.commit().await()
+                updated += page.size
+
+                if (last) {
+                    Log.d(TAG, "Backfilled $name for $updated documents")
+                    break
+                }
+                cursor = page.last().id
+            }
+            done += key
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.shopapp.data.dao
+
+import com.example.shopapp.data.model.Order
+import com.example.shopapp.data.model.SalesStats
+
+interface StatsDao {
+    // null when the rollup has not been built yet
+    suspend fun getSalesStats(): SalesStats?
+
+    // One-off backfill from the delivered order history, for data written before the rollup existed.
+    // The orders are loaded only after deliveries have started counting, so none falls in between.
+    suspend fun rebuildSalesStats(loadDeliveredOrders: suspend () -> List<Order>): SalesStats?
+}
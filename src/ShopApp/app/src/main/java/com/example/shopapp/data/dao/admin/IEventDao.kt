@@ -2,7 +2,9 @@ package com.example.shopapp.data.dao.admin
 
 import com.example.shopapp.data.dao.IDao
 import com.example.shopapp.data.model.Event
+import com.example.shopapp.data.model.EventChange
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.emptyFlow
 
 interface IEventDao : IDao<Event> {
     suspend fun searchEventsByTitle(title: String): Flow<List<Event>>
@@ -17,4 +19,7 @@ interface IEventDao : IDao<Event> {
     suspend fun getTotalEventsCount(): Int
     suspend fun getTotalEventsCountByType(eventType: String): Int
     suspend fun getTotalEventsCountByStatus(status: String): Int
+
+    // live event deltas (initial snapshot arrives as ADDED, possibly empty), used to keep the local search index current
+    fun observeEventChanges(): Flow<List<EventChange>> = emptyFlow()
 }
\ No newline at end of file
@@ -2,11 +2,18 @@ package com.example.shopapp.data.dao.admin
 
 import com.example.shopapp.data.dao.IDao
 import com.example.shopapp.data.model.Order
+import com.example.shopapp.data.model.OrderChange
+import com.example.shopapp.data.model.OrderPage
+import com.google.firebase.firestore.DocumentSnapshot
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.emptyFlow
 
 interface IOrderDao : IDao<Order> {
     suspend fun searchOrdersByUserId(userId: String): Flow<List<Order>>
-    suspend fun searchOrdersByUsername(username: String): Flow<List<Order>>
+
+    // cursor pagination over the username prefix index: pass the lastDocument of the previous page, null for the first
+    suspend fun searchOrdersByUsername(username: String, limit: Int, startAfter: DocumentSnapshot? = null): Flow<OrderPage>
+    suspend fun getTotalOrdersCountByUsername(username: String): Int
 
     suspend fun getOrdersPage(limit: Int, offset: Int): Flow<List<Order>>
     suspend fun getOrdersPageByUserId(userId: String, limit: Int, offset: Int): Flow<List<Order>>
@@ -15,6 +22,15 @@ interface IOrderDao : IDao<Order> {
     suspend fun getTotalOrdersCount(): Int
     suspend fun getTotalOrdersCountByUserId(userId: String): Int
     suspend fun getTotalOrdersCountByStatus(status: String): Int
+    // every status at once, e.g. for the status tab badges
+    suspend fun getOrderStatusCounts(): Map<String, Int> = emptyMap()
 
     suspend fun getAllOrdersByStatus(status: String): Flow<List<Order>>
+
+    // Moves the order to newStatus; with adjustInventory, stock/sales of every line item change in the same commit.
+    // Returns false if the order is no longer in the status it was read with.
+    suspend fun updateOrderStatus(order: Order, newStatus: String, adjustInventory: Boolean): Boolean
+
+    // Live deltas of the newest `limit` orders (optionally of one status); the first emission is the initial window
+    fun observeOrders(limit: Int, status: String? = null): Flow<List<OrderChange>> = emptyFlow()
 }
\ No newline at end of file
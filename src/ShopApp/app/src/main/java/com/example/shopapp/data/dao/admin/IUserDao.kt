@@ -5,6 +5,8 @@ import com.example.shopapp.data.model.User
 import kotlinx.coroutines.flow.Flow
 
 interface IUserDao : IDao<User> {
+    // missing IDs are skipped; order of the result is not guaranteed
+    suspend fun getUsersByIds(ids: List<String>): List<User> = ids.mapNotNull { getById(it) }
     suspend fun searchUsersByKeyword(keyword: String, limit: Int, offset: Int): Flow<List<User>>
     suspend fun getUsersPage(limit: Int, offset: Int): Flow<List<User>>
     suspend fun searchUserByStatus(status: String, limit: Int, offset: Int): Flow<List<User>>
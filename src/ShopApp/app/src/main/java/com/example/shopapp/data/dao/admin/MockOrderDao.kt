@@ -2,6 +2,8 @@ package com.example.shopapp.data.dao.admin
 
 import com.example.shopapp.data.model.Order
 import com.example.shopapp.data.model.CartItem
+import com.example.shopapp.data.model.OrderPage
+import com.google.firebase.firestore.DocumentSnapshot
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.flowOf
 import com.google.firebase.Timestamp
@@ -196,8 +198,18 @@ class MockOrderDao : IOrderDao {
         return flowOf(orders.filter { it.userId == userId }.sortedByDescending { it.createdAt })
     }
 
-    override suspend fun searchOrdersByUsername(username: String): Flow<List<Order>> {
-        return flowOf(orders.filter { it.username.contains(username, ignoreCase = true) })
+    // Mock orders have no snapshots, so only the first page is returned
+    override suspend fun searchOrdersByUsername(
+        username: String,
+        limit: Int,
+        startAfter: DocumentSnapshot?
+    ): Flow<OrderPage> {
+        if (startAfter != null) return flowOf(OrderPage())
+        return flowOf(OrderPage(orders.filter { it.username.contains(username, ignoreCase = true) }.take(limit), null))
+    }
+
+    override suspend fun getTotalOrdersCountByUsername(username: String): Int {
+        return orders.count { it.username.contains(username, ignoreCase = true) }
     }
 
     override suspend fun getOrdersPage(limit: Int, offset: Int): Flow<List<Order>> {
@@ -218,7 +230,19 @@ class MockOrderDao : IOrderDao {
     override suspend fun getTotalOrdersCountByStatus(status: String): Int {
         return orders.count { it.status == status }
     }
+    override suspend fun getOrderStatusCounts(): Map<String, Int> {
+        return orders.groupingBy { it.status }.eachCount()
+    }
     override suspend fun getAllOrdersByStatus(status: String): Flow<List<Order>> {
         return flowOf(orders.filter { it.status == status })
     }
-}
\ No newline at end of file
+
+    override suspend fun updateOrderStatus(order: Order, newStatus: String, adjustInventory: Boolean): Boolean {
+        val index = orders.indexOfFirst { it.orderId == order.orderId && it.status == order.status }
+        if (index != -1) {
+            orders[index] = orders[index].copy(status = newStatus)
+            return true
+        }
+        return false
+    }
+}
@@ -1,10 +1,16 @@
 package com.example.shopapp.data.dao.admin
 
 import android.util.Log
+import com.example.shopapp.data.dao.CountCache
+import com.example.shopapp.data.dao.FieldDiffTracker
 import com.example.shopapp.data.model.Event
+import com.example.shopapp.data.model.EventChange
+import com.google.firebase.firestore.DocumentSnapshot
 import com.google.firebase.firestore.FirebaseFirestore
 import com.google.firebase.firestore.Query
+import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.callbackFlow
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.tasks.await
 
@@ -12,6 +18,12 @@ class RealEventDao : IEventDao {
     private val db = FirebaseFirestore.getInstance()
     private val eventsCollection = db.collection("events")
     private val TAG = "RealEventDao"
+    private val eventTracker = FieldDiffTracker<Event>(idOf = { it.eventId })
+
+    // Helper function to convert Firestore document to Event
+    private fun documentToEvent(doc: DocumentSnapshot): Event? {
+        return doc.toObject(Event::class.java)?.let { eventTracker.remember(it) }
+    }
 
     override suspend fun getAll(): Flow<List<Event>> = flow {
         try {
@@ -20,7 +32,7 @@ class RealEventDao : IEventDao {
                 .get().await()
 
             val events = snapshot.documents.mapNotNull { doc ->
-                doc.toObject(Event::class.java)
+                documentToEvent(doc)
             }
             Log.d(TAG, "Total events fetched: ${events.size}")
             emit(events)
@@ -33,7 +45,7 @@ class RealEventDao : IEventDao {
     override suspend fun getById(id: String): Event? {
         return try {
             val doc = eventsCollection.document(id).get().await()
-            doc.toObject(Event::class.java)
+            documentToEvent(doc)
         } catch (e: Exception) {
             Log.e(TAG, "Error fetching event by ID: ${e.message}")
             null
@@ -43,6 +55,8 @@ class RealEventDao : IEventDao {
     override suspend fun add(item: Event): Boolean {
         return try {
             eventsCollection.document(item.eventId).set(item).await()
+            eventTracker.remember(item)
+            CountCache.invalidate("events")
             Log.d(TAG, "Event added successfully: ${item.eventId}")
             true
         } catch (e: Exception) {
@@ -53,8 +67,16 @@ class RealEventDao : IEventDao {
 
     override suspend fun update(item: Event): Boolean {
         return try {
-            eventsCollection.document(item.eventId).set(item).await()
-            Log.d(TAG, "Event updated successfully: ${item.eventId}")
+            val eventRef = eventsCollection.document(item.eventId)
+            val changes = eventTracker.changes(item)
+            when {
+                changes == null -> eventRef.set(item).await()
+                changes.isEmpty() -> Log.d(TAG, "No changes for event ${item.eventId}")
+                else -> eventRef.update(changes).await()
+            }
+            eventTracker.remember(item)
+            CountCache.invalidate("events")
+            Log.d(TAG, "Event updated successfully: ${item.eventId} ${changes?.keys ?: "all fields"}")
             true
         } catch (e: Exception) {
             Log.e(TAG, "Error updating event", e)
@@ -65,6 +87,8 @@ class RealEventDao : IEventDao {
     override suspend fun delete(id: String): Boolean {
         return try {
             eventsCollection.document(id).delete().await()
+            eventTracker.forget(id)
+            CountCache.invalidate("events")
             Log.d(TAG, "Event deleted successfully: $id")
             true
         } catch (e: Exception) {
@@ -103,7 +127,7 @@ class RealEventDao : IEventDao {
             for (snapshot in listOf(lowerResults, upperResults)) {
                 snapshot.documents.forEach { doc ->
                     if (!eventIds.contains(doc.id)) {
-                        doc.toObject(Event::class.java)?.let { event ->
+                        documentToEvent(doc)?.let { event ->
                             if (event.title.lowercase().contains(lowercaseTitle)) {
                                 eventIds.add(doc.id)
                                 results.add(event)
@@ -133,7 +157,7 @@ class RealEventDao : IEventDao {
             val snapshot = eventsCollection.get().await()
 
             val events = snapshot.documents.mapNotNull { doc ->
-                doc.toObject(Event::class.java)
+                documentToEvent(doc)
             }.filter {
                 it.description.contains(description, ignoreCase = true)
             }
@@ -154,7 +178,7 @@ class RealEventDao : IEventDao {
                 .get().await()
 
             val events = snapshot.documents.mapNotNull { doc ->
-                doc.toObject(Event::class.java)
+                documentToEvent(doc)
             }
 
             Log.d(TAG, "Search results for event type '$eventType': ${events.size}")
@@ -173,7 +197,7 @@ class RealEventDao : IEventDao {
                 .get().await()
 
             val events = snapshot.documents.mapNotNull { doc ->
-                doc.toObject(Event::class.java)
+                documentToEvent(doc)
             }
 
             Log.d(TAG, "Search results for status '$status': ${events.size}")
@@ -212,7 +236,7 @@ class RealEventDao : IEventDao {
 
             val snapshot = query.get().await()
             val events = snapshot.documents.mapNotNull { doc ->
-                doc.toObject(Event::class.java)
+                documentToEvent(doc)
             }
 
             Log.d(TAG, "Fetched page with limit=$limit, offset=$offset: ${events.size} events")
@@ -251,7 +275,7 @@ class RealEventDao : IEventDao {
 
             val snapshot = query.get().await()
             val events = snapshot.documents.mapNotNull { doc ->
-                doc.toObject(Event::class.java)
+                documentToEvent(doc)
             }
 
             Log.d(TAG, "Fetched type=$eventType page with limit=$limit, offset=$offset: ${events.size} events")
@@ -290,7 +314,7 @@ class RealEventDao : IEventDao {
 
             val snapshot = query.get().await()
             val events = snapshot.documents.mapNotNull { doc ->
-                doc.toObject(Event::class.java)
+                documentToEvent(doc)
             }
 
             Log.d(TAG, "Fetched status=$status page with limit=$limit, offset=$offset: ${events.size} events")
@@ -303,8 +327,7 @@ class RealEventDao : IEventDao {
 
     override suspend fun getTotalEventsCount(): Int {
         return try {
-            val snapshot = eventsCollection.get().await()
-            val count = snapshot.size()
+            val count = CountCache.count("events", eventsCollection)
             Log.d(TAG, "Total events count: $count")
             count
         } catch (e: Exception) {
@@ -315,11 +338,10 @@ class RealEventDao : IEventDao {
 
     override suspend fun getTotalEventsCountByType(eventType: String): Int {
         return try {
-            val snapshot = eventsCollection
-                .whereEqualTo("eventType", eventType)
-                .get()
-                .await()
-            val count = snapshot.size()
+            val count = CountCache.count(
+                "events|eventType=$eventType",
+                eventsCollection.whereEqualTo("eventType", eventType)
+            )
             Log.d(TAG, "Total events count for type '$eventType': $count")
             count
         } catch (e: Exception) {
@@ -330,11 +352,10 @@ class RealEventDao : IEventDao {
 
     override suspend fun getTotalEventsCountByStatus(status: String): Int {
         return try {
-            val snapshot = eventsCollection
-                .whereEqualTo("status", status)
-                .get()
-                .await()
-            val count = snapshot.size()
+            val count = CountCache.count(
+                "events|status=$status",
+                eventsCollection.whereEqualTo("status", status)
+            )
             Log.d(TAG, "Total events count for status '$status': $count")
             count
         } catch (e: Exception) {
@@ -342,4 +363,24 @@ class RealEventDao : IEventDao {
             0
         }
     }
-}
\ No newline at end of file
+
+    override fun observeEventChanges(): Flow<List<EventChange>> = callbackFlow {
+        var initial = true
+        val registration = eventsCollection.addSnapshotListener { snapshot, error ->
+            if (error != null) {
+                Log.e(TAG, "Error listening for event changes: ${error.message}")
+                return@addSnapshotListener
+            }
+            if (snapshot == null) return@addSnapshotListener
+            val changes = snapshot.documentChanges.mapNotNull { change ->
+                documentToEvent(change.document)?.let { EventChange(change.type, it) }
+            }
+            // The initial snapshot is sent even when empty, so an empty collection still counts as loaded
+            if (changes.isNotEmpty() || initial) {
+                initial = false
+                trySend(changes)
+            }
+        }
+        awaitClose { registration.remove() }
+    }
+}
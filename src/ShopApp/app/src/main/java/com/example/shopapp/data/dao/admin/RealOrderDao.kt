@@ -1,19 +1,41 @@
 package com.example.shopapp.data.dao.admin
 
 import android.util.Log
+import com.example.shopapp.data.dao.CountCache
+import com.example.shopapp.data.dao.FieldDiffTracker
+import com.example.shopapp.data.dao.FirebasePurchaseDao
+import com.example.shopapp.data.dao.FirebaseStatsDao
+import com.example.shopapp.data.dao.OrderStatusCounters
+import com.example.shopapp.data.dao.SearchFieldsBackfill
 import com.example.shopapp.data.model.CartItem
 import com.example.shopapp.data.model.Order
+import com.example.shopapp.data.model.OrderChange
+import com.example.shopapp.data.model.OrderPage
+import com.example.shopapp.data.search.OrderSearchFields
+import com.example.shopapp.data.search.SearchTokenizer
 import com.google.firebase.Timestamp
+import com.google.firebase.firestore.AggregateSource
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.FieldValue
 import com.google.firebase.firestore.FirebaseFirestore
 import com.google.firebase.firestore.Query
+import com.google.firebase.firestore.SetOptions
+import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.callbackFlow
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.tasks.await
 
 class RealOrderDao : IOrderDao {
     private val db = FirebaseFirestore.getInstance()
     private val ordersCollection = db.collection("orders")
+    private val productsCollection = db.collection("products")
     private val TAG = "RealOrderDao"
+    private val orderTracker = FieldDiffTracker<Order>(idOf = { it.orderId })
+
+    companion object {
+        private const val SEARCH_FIELDS_VERSION = 1L
+    }
 
     // Helper function to convert Firestore document to Order
     private fun documentToOrder(doc: com.google.firebase.firestore.DocumentSnapshot): Order? {
@@ -31,7 +53,7 @@ class RealOrderDao : IOrderDao {
                     timestamp = (item["timestamp"] as? Timestamp)?.seconds?.toLong() ?: System.currentTimeMillis()
                 )
             }
-            return order.copy(orderDetail = parsedItemList)
+            return orderTracker.remember(order.copy(orderDetail = parsedItemList))
         } catch (e: Exception) {
             Log.e(TAG, "Error parsing order document: ${e.message}")
             return null
@@ -64,7 +86,14 @@ class RealOrderDao : IOrderDao {
 
     override suspend fun add(item: Order): Boolean {
         return try {
-            ordersCollection.document(item.orderId).set(item).await()
+            val orderRef = ordersCollection.document(item.orderId)
+            val batch = db.batch()
+                .set(orderRef, item)
+                .set(orderRef, OrderSearchFields.of(item.username), SetOptions.merge())
+            OrderStatusCounters.recordTransition(db, batch, null, item.status)
+            batch.commit().await()
+            orderTracker.remember(item)
+            CountCache.invalidate("orders")
             Log.d(TAG, "Order added successfully: ${item.orderId}")
             true
         } catch (e: Exception) {
@@ -75,8 +104,32 @@ class RealOrderDao : IOrderDao {
 
     override suspend fun update(item: Order): Boolean {
         return try {
-            ordersCollection.document(item.orderId).set(item).await()
-            Log.d(TAG, "Order updated successfully")
+            val orderRef = ordersCollection.document(item.orderId)
+            val changes = orderTracker.changes(item)
+            val fields = when {
+                changes == null -> null
+                "username" in changes -> changes + OrderSearchFields.of(item.username)
+                else -> changes
+            }
+            when {
+                fields?.isEmpty() == true -> Log.d(TAG, "No changes for order ${item.orderId}")
+                // A status edit also moves the order between status counters, which needs the stored status
+                fields == null || "status" in fields -> db.runTransaction { transaction ->
+                    val previousStatus = transaction.get(orderRef).getString("status")
+                    OrderStatusCounters.recordTransition(db, transaction, previousStatus, item.status)
+                    if (fields == null) {
+                        transaction.set(orderRef, item)
+                        transaction.set(orderRef, OrderSearchFields.of(item.username), SetOptions.merge())
+                    } else {
+                        transaction.update(orderRef, fields)
+                    }
+                    null
+                }.await()
+                else -> orderRef.update(fields).await()
+            }
+            orderTracker.remember(item)
+            CountCache.invalidate("orders")
+            Log.d(TAG, "Order updated successfully: ${changes?.keys ?: "all fields"}")
             true
         } catch (e: Exception) {
             Log.e(TAG, "Error updating order", e)
@@ -86,7 +139,15 @@ class RealOrderDao : IOrderDao {
 
     override suspend fun delete(id: String): Boolean {
         return try {
-            ordersCollection.document(id).delete().await()
+            val orderRef = ordersCollection.document(id)
+            db.runTransaction { transaction ->
+                val previousStatus = transaction.get(orderRef).getString("status")
+                OrderStatusCounters.recordTransition(db, transaction, previousStatus, null)
+                transaction.delete(orderRef)
+                null
+            }.await()
+            orderTracker.forget(id)
+            CountCache.invalidate("orders")
             Log.d(TAG, "Order deleted successfully")
             true
         } catch (e: Exception) {
@@ -95,6 +156,82 @@ class RealOrderDao : IOrderDao {
         }
     }
 
+    override suspend fun updateOrderStatus(order: Order, newStatus: String, adjustInventory: Boolean): Boolean {
+        return try {
+            val quantities = if (adjustInventory) quantitiesByProduct(order) else emptyMap()
+
+            val orderRef = ordersCollection.document(order.orderId)
+            val updated = db.runTransaction { transaction ->
+                val current = transaction.get(orderRef).getString("status")
+                if (current != order.status) {
+                    false
+                } else {
+                    // Products deleted since the order was placed are skipped instead of failing the
+                    // whole commit; read here so a deletion racing this commit retries the transaction
+                    val existingIds = quantities.keys.filterTo(HashSet()) { productId ->
+                        transaction.get(productsCollection.document(productId)).exists()
+                    }
+                    if (newStatus == "delivered") {
+                        val units = quantitiesByProduct(order)
+                        FirebaseStatsDao.recordDelivery(db, transaction, order.orderId, order.userId, order.totalPrice, units)
+                        FirebasePurchaseDao.recordPurchases(db, transaction, order.userId, units.keys)
+                    }
+                    OrderStatusCounters.recordTransition(db, transaction, current, newStatus)
+                    transaction.update(orderRef, "status", newStatus)
+                    quantities.filterKeys { it in existingIds }.forEach { (productId, quantity) ->
+                        transaction.update(
+                            productsCollection.document(productId),
+                            mapOf(
+                                "stock" to FieldValue.increment(-quantity.toLong()),
+                                "sales" to FieldValue.increment(quantity.toLong()),
+                                "updatedAt" to FieldValue.serverTimestamp()
+                            )
+                        )
+                    }
+                    true
+                }
+            }.await()
+
+            if (updated) {
+                orderTracker.remember(order.copy(status = newStatus))
+                CountCache.invalidate("orders")
+                Log.d(TAG, "Order ${order.orderId} moved to $newStatus, adjusted ${quantities.size} products")
+            } else {
+                Log.d(TAG, "Order ${order.orderId} is no longer '${order.status}', status not changed")
+            }
+            updated
+        } catch (e: Exception) {
+            Log.e(TAG, "Error updating order status", e)
+            false
+        }
+    }
+
+    override fun observeOrders(limit: Int, status: String?): Flow<List<OrderChange>> = callbackFlow {
+        val baseQuery = if (status == null) ordersCollection else ordersCollection.whereEqualTo("status", status)
+        val registration = baseQuery
+            .orderBy("createdAt", Query.Direction.DESCENDING)
+            .limit(limit.toLong())
+            .addSnapshotListener { snapshot, error ->
+                if (error != null) {
+                    Log.e(TAG, "Error listening for orders: ${error.message}")
+                    return@addSnapshotListener
+                }
+                val changes = snapshot?.documentChanges?.mapNotNull { change ->
+                    documentToOrder(change.document)?.let { OrderChange(change.type, it, change.newIndex) }
+                } ?: emptyList()
+                trySend(changes)
+            }
+        awaitClose { registration.remove() }
+    }
+
+    // Quantities per product, so an item repeated across lines is one increment
+    private fun quantitiesByProduct(order: Order): Map<String, Int> {
+        return order.orderDetail
+            .filter { it.productId.isNotBlank() }
+            .groupBy { it.productId }
+            .mapValues { (_, items) -> items.sumOf { it.quantity } }
+    }
+
     override suspend fun searchOrdersByUserId(userId: String): Flow<List<Order>> = flow {
         try {
             val snapshot = ordersCollection
@@ -111,48 +248,59 @@ class RealOrderDao : IOrderDao {
         }
     }
 
-    override suspend fun searchOrdersByUsername(username: String): Flow<List<Order>> = flow {
+    override suspend fun searchOrdersByUsername(
+        username: String,
+        limit: Int,
+        startAfter: DocumentSnapshot?
+    ): Flow<OrderPage> = flow {
         try {
-            val lowercaseUsername = username.lowercase()
-            val matchingOrders = mutableListOf<Order>()
-            val orderIds = mutableSetOf<String>()
-
-            if (lowercaseUsername.isNotEmpty()) {
-                val firstChar = lowercaseUsername.first().toString()
-                val firstCharCapitalized = firstChar.uppercase()
-
-                // Search with lowercase first char
-                val lowerResults = ordersCollection
-                    .whereGreaterThanOrEqualTo("username", firstChar)
-                    .whereLessThanOrEqualTo("username", firstChar + "\uf8ff")
-                    .get().await()
-
-                // Search with uppercase first char
-                val upperResults = ordersCollection
-                    .whereGreaterThanOrEqualTo("username", firstCharCapitalized)
-                    .whereLessThanOrEqualTo("username", firstCharCapitalized + "\uf8ff")
-                    .get().await()
-
-                // Process results and filter client-side
-                for (snapshot in listOf(lowerResults, upperResults)) {
-                    snapshot.documents.forEach { doc ->
-                        if (!orderIds.contains(doc.id)) {
-                            documentToOrder(doc)?.let { order ->
-                                if (order.username.lowercase().contains(lowercaseUsername)) {
-                                    orderIds.add(doc.id)
-                                    matchingOrders.add(order)
-                                }
-                            }
-                        }
-                    }
-                }
+            val token = SearchTokenizer.prefixQuery(username)
+            if (token.isEmpty()) {
+                emit(OrderPage())
+                return@flow
             }
+            ensureSearchFields()
 
-            Log.d(TAG, "Search results for username '$username': ${matchingOrders.size}")
-            emit(matchingOrders)
+            val baseQuery = usernameQuery(token).orderBy("createdAt", Query.Direction.DESCENDING)
+            val query = if (startAfter == null) {
+                baseQuery.limit(limit.toLong())
+            } else {
+                baseQuery.startAfter(startAfter).limit(limit.toLong())
+            }
+
+            val snapshot = query.get().await()
+            val orders = snapshot.documents.mapNotNull { documentToOrder(it) }
+            Log.d(TAG, "Search results for username '$username', cursor=${startAfter?.id}: ${orders.size}")
+            emit(OrderPage(orders, snapshot.documents.lastOrNull()))
         } catch (e: Exception) {
             Log.e(TAG, "Error searching orders by username: ${e.message}")
-            emit(emptyList())
+            emit(OrderPage())
+        }
+    }
+
+    override suspend fun getTotalOrdersCountByUsername(username: String): Int {
+        return try {
+            val token = SearchTokenizer.prefixQuery(username)
+            if (token.isEmpty()) return 0
+            ensureSearchFields()
+
+            val count = CountCache.count("orders|username=$token", usernameQuery(token))
+            Log.d(TAG, "Total orders count for username '$username': $count")
+            count
+        } catch (e: Exception) {
+            Log.e(TAG, "Error getting orders count by username: ${e.message}")
+            0
+        }
+    }
+
+    private fun usernameQuery(token: String): Query {
+        return ordersCollection.whereArrayContains(OrderSearchFields.TOKENS, token)
+    }
+
+    // Orders placed before the username index existed get it once
+    private suspend fun ensureSearchFields() {
+        SearchFieldsBackfill.ensure(db, "orderSearchFields", SEARCH_FIELDS_VERSION, ordersCollection) { doc ->
+            OrderSearchFields.of(doc.getString("username") ?: "")
         }
     }
 
@@ -266,8 +414,7 @@ class RealOrderDao : IOrderDao {
 
     override suspend fun getTotalOrdersCount(): Int {
         return try {
-            val snapshot = ordersCollection.get().await()
-            val count = snapshot.size()
+            val count = CountCache.count("orders", ordersCollection)
             Log.d(TAG, "Total orders count: $count")
             count
         } catch (e: Exception) {
@@ -278,11 +425,10 @@ class RealOrderDao : IOrderDao {
 
     override suspend fun getTotalOrdersCountByUserId(userId: String): Int {
         return try {
-            val snapshot = ordersCollection
-                .whereEqualTo("userId", userId)
-                .get()
-                .await()
-            val count = snapshot.size()
+            val count = CountCache.count(
+                "orders|userId=$userId",
+                ordersCollection.whereEqualTo("userId", userId)
+            )
             Log.d(TAG, "Total orders count for user $userId: $count")
             count
         } catch (e: Exception) {
@@ -292,17 +438,19 @@ class RealOrderDao : IOrderDao {
     }
 
     override suspend fun getTotalOrdersCountByStatus(status: String): Int {
+        return getOrderStatusCounts()[status] ?: 0
+    }
+
+    override suspend fun getOrderStatusCounts(): Map<String, Int> {
         return try {
-            val snapshot = ordersCollection
-                .whereEqualTo("status", status)
-                .get()
-                .await()
-            val count = snapshot.size()
-            Log.d(TAG, "Total orders count for status '$status': $count")
-            count
+            val counts = OrderStatusCounters.readAll(db) { status ->
+                ordersCollection.whereEqualTo("status", status).count().get(AggregateSource.SERVER).await().count.toInt()
+            }
+            Log.d(TAG, "Order counts by status: $counts")
+            counts
         } catch (e: Exception) {
-            Log.e(TAG, "Error getting status orders count: ${e.message}")
-            0
+            Log.e(TAG, "Error getting order counts by status: ${e.message}")
+            emptyMap()
         }
     }
 
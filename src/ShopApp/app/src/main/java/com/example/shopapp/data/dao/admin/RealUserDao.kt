@@ -1,18 +1,37 @@
 package com.example.shopapp.data.dao.admin
 
 import android.util.Log
+import com.example.shopapp.data.cache.UserProfileCache
+import com.example.shopapp.data.dao.CountCache
+import com.example.shopapp.data.dao.FieldDiffTracker
+import com.example.shopapp.data.dao.SearchFieldsBackfill
 import com.example.shopapp.data.model.User
+import com.example.shopapp.data.search.SearchTokenizer
+import com.example.shopapp.data.search.UserSearchFields
 import com.google.firebase.Timestamp
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.FieldPath
 import com.google.firebase.firestore.FirebaseFirestore
 import com.google.firebase.firestore.Query
+import com.google.firebase.firestore.SetOptions
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.tasks.await
+import java.util.concurrent.ConcurrentHashMap
 
 class RealUserDao : IUserDao {
     private val db = FirebaseFirestore.getInstance()
     private val usersCollection = db.collection("users")
     private val TAG = "RealUserDao"
+    private val userTracker = FieldDiffTracker<User>(idOf = { it.userId })
+
+    // offset -> last document before it, per search token, so paging forward never re-reads earlier pages
+    private val searchCursors = ConcurrentHashMap<String, DocumentSnapshot>()
+
+    companion object {
+        private const val WHERE_IN_LIMIT = 30
+        private const val SEARCH_FIELDS_VERSION = 1L
+    }
 
     // Helper function to convert Firestore document to User
     private fun documentToUser(doc: com.google.firebase.firestore.DocumentSnapshot): User? {
@@ -27,16 +46,18 @@ class RealUserDao : IUserDao {
             val createdAt = doc.getTimestamp("createdAt")
             val updatedAt = doc.getTimestamp("updatedAt")
 
-            User(
-                userId = userId,
-                username = username,
-                email = email,
-                address = address,
-                phone = phone,
-                role = role,
-                status = status,
-                createdAt = createdAt,
-                updatedAt = updatedAt
+            userTracker.remember(
+                User(
+                    userId = userId,
+                    username = username,
+                    email = email,
+                    address = address,
+                    phone = phone,
+                    role = role,
+                    status = status,
+                    createdAt = createdAt,
+                    updatedAt = updatedAt
+                )
             )
         } catch (e: Exception) {
             Log.e(TAG, "Error parsing user document: ${e.message}")
@@ -68,13 +89,34 @@ class RealUserDao : IUserDao {
         }
     }
 
+    // whereIn accepts at most 30 values, so larger batches are split into several queries
+    override suspend fun getUsersByIds(ids: List<String>): List<User> {
+        return try {
+            ids.filter { it.isNotBlank() }.distinct().chunked(WHERE_IN_LIMIT).flatMap { chunk ->
+                usersCollection.whereIn(FieldPath.documentId(), chunk).get().await()
+                    .documents.mapNotNull { documentToUser(it) }
+            }.also { Log.d(TAG, "Fetched ${it.size} of ${ids.size} users by ID") }
+        } catch (e: Exception) {
+            Log.e(TAG, "Error fetching users by IDs: ${e.message}")
+            emptyList()
+        }
+    }
+
     override suspend fun add(item: User): Boolean {
         return try {
             val newUser = item.copy(
                 createdAt = Timestamp.now(),
                 updatedAt = Timestamp.now()
             )
-            usersCollection.document(item.userId).set(newUser).await()
+            val userRef = usersCollection.document(item.userId)
+            db.batch()
+                .set(userRef, newUser)
+                .set(userRef, UserSearchFields.of(newUser), SetOptions.merge())
+                .commit()
+                .await()
+            userTracker.remember(newUser)
+            CountCache.invalidate("users")
+            searchCursors.clear()
             Log.d(TAG, "User added successfully: ${item.userId}")
             true
         } catch (e: Exception) {
@@ -88,8 +130,28 @@ class RealUserDao : IUserDao {
             val updatedUser = item.copy(
                 updatedAt = Timestamp.now()
             )
-            usersCollection.document(item.userId).set(updatedUser).await()
-            Log.d(TAG, "User updated successfully: ${item.userId}")
+            val userRef = usersCollection.document(item.userId)
+            val changes = userTracker.changes(updatedUser)
+            when {
+                changes == null -> db.batch()
+                    .set(userRef, updatedUser)
+                    .set(userRef, UserSearchFields.of(updatedUser), SetOptions.merge())
+                    .commit()
+                    .await()
+                // updatedAt alone is not an edit
+                (changes.keys - "updatedAt").isEmpty() -> {
+                    Log.d(TAG, "No changes for user ${item.userId}")
+                    return true
+                }
+                "username" in changes || "email" in changes ->
+                    userRef.update(changes + UserSearchFields.of(updatedUser)).await()
+                else -> userRef.update(changes).await()
+            }
+            userTracker.remember(updatedUser)
+            UserProfileCache.invalidate(item.userId)
+            CountCache.invalidate("users")
+            searchCursors.clear()
+            Log.d(TAG, "User updated successfully: ${item.userId} ${changes?.keys ?: "all fields"}")
             true
         } catch (e: Exception) {
             Log.e(TAG, "Error updating user", e)
@@ -100,6 +162,10 @@ class RealUserDao : IUserDao {
     override suspend fun delete(id: String): Boolean {
         return try {
             usersCollection.document(id).delete().await()
+            userTracker.forget(id)
+            UserProfileCache.invalidate(id)
+            CountCache.invalidate("users")
+            searchCursors.clear()
             Log.d(TAG, "User deleted successfully: $id")
             true
         } catch (e: Exception) {
@@ -110,56 +176,32 @@ class RealUserDao : IUserDao {
 
     override suspend fun searchUsersByKeyword(keyword: String, limit: Int, offset: Int): Flow<List<User>> = flow {
         try {
-            val lowercaseKeyword = keyword.lowercase()
-            val matchingUsers = mutableListOf<User>()
-            val userIds = mutableSetOf<String>()
-
-            if (lowercaseKeyword.isNotEmpty()) {
-                val firstChar = lowercaseKeyword.first().toString()
-                val firstCharCapitalized = firstChar.uppercase()
-
-                // Search with lowercase first char in username
-                val lowerUsernameResults = usersCollection
-                    .whereGreaterThanOrEqualTo("username", firstChar)
-                    .whereLessThanOrEqualTo("username", firstChar + "\uf8ff")
-                    .get().await()
-
-                // Search with uppercase first char in username
-                val upperUsernameResults = usersCollection
-                    .whereGreaterThanOrEqualTo("username", firstCharCapitalized)
-                    .whereLessThanOrEqualTo("username", firstCharCapitalized + "\uf8ff")
-                    .get().await()
-
-                // Search in email
-                val emailResults = usersCollection
-                    .whereGreaterThanOrEqualTo("email", keyword)
-                    .whereLessThanOrEqualTo("email", keyword + "\uf8ff")
-                    .get().await()
+            val token = SearchTokenizer.prefixQuery(keyword)
+            if (token.isEmpty()) {
+                emit(emptyList<User>())
+                return@flow
+            }
+            ensureSearchFields()
 
-                // Process results and filter client-side
-                for (snapshot in listOf(lowerUsernameResults, upperUsernameResults, emailResults)) {
-                    snapshot.documents.forEach { doc ->
-                        if (!userIds.contains(doc.id)) {
-                            documentToUser(doc)?.let { user ->
-                                if (user.username.lowercase().contains(lowercaseKeyword) ||
-                                    user.email.lowercase().contains(lowercaseKeyword)
-                                ) {
-                                    userIds.add(doc.id)
-                                    matchingUsers.add(user)
-                                }
-                            }
-                        }
-                    }
+            val baseQuery = keywordQuery(token).orderBy("createdAt", Query.Direction.DESCENDING)
+            val query = if (offset == 0) {
+                baseQuery.limit(limit.toLong())
+            } else {
+                // Pages are normally walked in order, so the previous page's last document is remembered
+                val cursor = searchCursors["$token|$offset"]
+                    ?: baseQuery.limit(offset.toLong()).get().await().documents.lastOrNull()
+                if (cursor == null) {
+                    emit(emptyList<User>())
+                    return@flow
                 }
+                baseQuery.startAfter(cursor).limit(limit.toLong())
             }
 
-            // Apply pagination (offset and limit) to the combined results
-            val paginatedResults = matchingUsers
-                .drop(offset)
-                .take(limit)
-
-            Log.d(TAG, "Search results for keyword '$keyword': ${paginatedResults.size}")
-            emit(paginatedResults)
+            val snapshot = query.get().await()
+            snapshot.documents.lastOrNull()?.let { searchCursors["$token|${offset + snapshot.size()}"] = it }
+            val users = snapshot.documents.mapNotNull { documentToUser(it) }
+            Log.d(TAG, "Search results for keyword '$keyword' (token '$token'), offset=$offset: ${users.size}")
+            emit(users)
         } catch (e: Exception) {
             Log.e(TAG, "Error searching users by keyword: ${e.message}")
             emit(emptyList())
@@ -240,8 +282,7 @@ class RealUserDao : IUserDao {
 
     override suspend fun getTotalUsersCount(): Int {
         return try {
-            val snapshot = usersCollection.get().await()
-            val count = snapshot.size()
+            val count = CountCache.count("users", usersCollection)
             Log.d(TAG, "Total users count: $count")
             count
         } catch (e: Exception) {
@@ -252,47 +293,11 @@ class RealUserDao : IUserDao {
 
     override suspend fun getTotalUsersCountByKeyword(keyword: String): Int {
         return try {
-            val lowercaseKeyword = keyword.lowercase()
-            val userIds = mutableSetOf<String>()
+            val token = SearchTokenizer.prefixQuery(keyword)
+            if (token.isEmpty()) return 0
+            ensureSearchFields()
 
-            if (lowercaseKeyword.isNotEmpty()) {
-                val firstChar = lowercaseKeyword.first().toString()
-                val firstCharCapitalized = firstChar.uppercase()
-
-                // Search with lowercase first char in username
-                val lowerUsernameResults = usersCollection
-                    .whereGreaterThanOrEqualTo("username", firstChar)
-                    .whereLessThanOrEqualTo("username", firstChar + "\uf8ff")
-                    .get().await()
-
-                // Search with uppercase first char in username
-                val upperUsernameResults = usersCollection
-                    .whereGreaterThanOrEqualTo("username", firstCharCapitalized)
-                    .whereLessThanOrEqualTo("username", firstCharCapitalized + "\uf8ff")
-                    .get().await()
-
-                // Search in email
-                val emailResults = usersCollection
-                    .whereGreaterThanOrEqualTo("email", keyword)
-                    .whereLessThanOrEqualTo("email", keyword + "\uf8ff")
-                    .get().await()
-
-                for (snapshot in listOf(lowerUsernameResults, upperUsernameResults, emailResults)) {
-                    snapshot.documents.forEach { doc ->
-                        if (!userIds.contains(doc.id)) {
-                            documentToUser(doc)?.let { user ->
-                                if (user.username.lowercase().contains(lowercaseKeyword) ||
-                                    user.email.lowercase().contains(lowercaseKeyword)
-                                ) {
-                                    userIds.add(doc.id)
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-
-            val count = userIds.size
+            val count = CountCache.count("users|token=$token", keywordQuery(token))
             Log.d(TAG, "Total users count for keyword '$keyword': $count")
             count
         } catch (e: Exception) {
@@ -301,13 +306,23 @@ class RealUserDao : IUserDao {
         }
     }
 
+    private fun keywordQuery(token: String): Query {
+        return usersCollection.whereArrayContains(UserSearchFields.TOKENS, token)
+    }
+
+    // Users written before the search fields existed get them once
+    private suspend fun ensureSearchFields() {
+        SearchFieldsBackfill.ensure(db, "userSearchFields", SEARCH_FIELDS_VERSION, usersCollection) { doc ->
+            UserSearchFields.of(doc.getString("username") ?: "", doc.getString("email") ?: "")
+        }
+    }
+
     override suspend fun getTotalUsersCountByStatus(status: String): Int {
         return try {
-            val snapshot = usersCollection
-                .whereEqualTo("status", status)
-                .get()
-                .await()
-            val count = snapshot.size()
+            val count = CountCache.count(
+                "users|status=$status",
+                usersCollection.whereEqualTo("status", status)
+            )
             Log.d(TAG, "Total users count with status '$status': $count")
             count
         } catch (e: Exception) {
@@ -0,0 +1,12 @@
+package com.example.shopapp.data.model
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+// Single row: newest updatedAt pulled by a completed catalog sync. Kept apart from the products
+// table because write-through puts from screens must not move it.
+@Entity(tableName = "catalog_sync")
+data class CatalogSyncState(
+    @PrimaryKey val id: Int = 0,
+    val watermarkMillis: Long
+)
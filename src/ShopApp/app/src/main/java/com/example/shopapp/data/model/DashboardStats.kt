@@ -0,0 +1,90 @@
+package com.example.shopapp.data.model
+
+import java.util.Calendar
+
+// Everything the admin dashboard shows, computed once per data change instead of in the composable
+data class DashboardStats(
+    val totalIncome: Double = 0.0,
+    val dailyIncome: Double = 0.0,
+    val weeklyIncome: Double = 0.0,
+    val monthlyIncome: Double = 0.0,
+    val deliveredCount: Int = 0,
+    val pendingCount: Int = 0,
+    val bestSellerId: String = "",
+    val bestSellerUnits: Int = 0,
+    val bigSpenderId: String = "",
+    val bigSpenderTotal: Double = 0.0
+) {
+    companion object {
+        private const val DAY_MILLIS = 24 * 60 * 60 * 1000L
+
+        fun fromSalesStats(stats: SalesStats, pendingCount: Int, now: Calendar = Calendar.getInstance()): DashboardStats {
+            return DashboardStats(
+                totalIncome = stats.totalRevenue,
+                dailyIncome = stats.revenueForLastDays(1, now),
+                weeklyIncome = stats.revenueForLastDays(7, now),
+                monthlyIncome = stats.revenueForLastDays(30, now),
+                deliveredCount = stats.deliveredCount,
+                pendingCount = pendingCount,
+                bestSellerId = stats.bestSellerId,
+                bestSellerUnits = stats.bestSellerUnits,
+                bigSpenderId = stats.bigSpenderId,
+                bigSpenderTotal = stats.bigSpenderTotal
+            )
+        }
+
+        // Single pass over the delivered orders. Income windows are calendar days counted back from
+        // today (delivery time = updatedAt), the same buckets the stats rollup keeps.
+        fun compute(deliveredOrders: List<Order>, pendingCount: Int, now: Calendar = Calendar.getInstance()): DashboardStats {
+            val startOfToday = (now.clone() as Calendar).apply {
+                set(Calendar.HOUR_OF_DAY, 0)
+                set(Calendar.MINUTE, 0)
+                set(Calendar.SECOND, 0)
+                set(Calendar.MILLISECOND, 0)
+            }.timeInMillis
+            val startOfWeek = startOfToday - 6 * DAY_MILLIS
+            val startOfMonth = startOfToday - 29 * DAY_MILLIS
+
+            val productUnits = HashMap<String, Int>()
+            val userSpending = HashMap<String, Double>()
+            var total = 0.0
+            var daily = 0.0
+            var weekly = 0.0
+            var monthly = 0.0
+
+            for (order in deliveredOrders) {
+                val price = order.totalPrice
+                total += price
+
+                val deliveredAt = order.updatedAt?.let { it.seconds * 1000 + it.nanoseconds / 1_000_000 } ?: 0L
+                if (deliveredAt >= startOfMonth) {
+                    monthly += price
+                    if (deliveredAt >= startOfWeek) {
+                        weekly += price
+                        if (deliveredAt >= startOfToday) daily += price
+                    }
+                }
+
+                userSpending.merge(order.userId, price) { a, b -> a + b }
+                for (item in order.orderDetail) {
+                    productUnits.merge(item.productId, item.quantity) { a, b -> a + b }
+                }
+            }
+
+            val bestSeller = productUnits.maxByOrNull { it.value }
+            val bigSpender = userSpending.maxByOrNull { it.value }
+            return DashboardStats(
+                totalIncome = total,
+                dailyIncome = daily,
+                weeklyIncome = weekly,
+                monthlyIncome = monthly,
+                deliveredCount = deliveredOrders.size,
+                pendingCount = pendingCount,
+                bestSellerId = bestSeller?.key ?: "",
+                bestSellerUnits = bestSeller?.value ?: 0,
+                bigSpenderId = bigSpender?.key ?: "",
+                bigSpenderTotal = bigSpender?.value ?: 0.0
+            )
+        }
+    }
+}
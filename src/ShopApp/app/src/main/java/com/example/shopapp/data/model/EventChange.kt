@@ -0,0 +1,9 @@
+package com.example.shopapp.data.model
+
+import com.google.firebase.firestore.DocumentChange
+
+// A single event delta delivered by a snapshot listener
+data class EventChange(
+    val type: DocumentChange.Type,
+    val event: Event
+)
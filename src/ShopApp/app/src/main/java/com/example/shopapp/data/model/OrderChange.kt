@@ -0,0 +1,26 @@
+package com.example.shopapp.data.model
+
+import com.google.firebase.firestore.DocumentChange
+
+// A single order delta delivered by a snapshot listener; newIndex is the position in the
+// listened window after the change (-1 when removed)
+data class OrderChange(
+    val type: DocumentChange.Type,
+    val order: Order,
+    val newIndex: Int
+) {
+    companion object {
+        // Keyed by orderId, so an order never appears twice and untouched rows keep their identity
+        fun applyAll(current: List<Order>, changes: List<OrderChange>): List<Order> {
+            val list = current.toMutableList()
+            for (change in changes) {
+                val index = list.indexOfFirst { it.orderId == change.order.orderId }
+                if (index != -1) list.removeAt(index)
+                if (change.type != DocumentChange.Type.REMOVED) {
+                    list.add(change.newIndex.coerceIn(0, list.size), change.order)
+                }
+            }
+            return list
+        }
+    }
+}
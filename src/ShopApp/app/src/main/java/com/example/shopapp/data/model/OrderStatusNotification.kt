@@ -0,0 +1,8 @@
+package com.example.shopapp.data.model
+
+// Outbox payload for the push and inbox record sent when an order changes status
+data class OrderStatusNotification(
+    val userId: String = "",
+    val orderId: String = "",
+    val orderStatus: String = ""
+)
@@ -0,0 +1,20 @@
+package com.example.shopapp.data.model
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+// A side effect that must eventually reach the server, drained by OutboxWorker. The key is also
+// the ID of whatever the effect creates remotely, so a retried delivery does not create it twice.
+@Entity(tableName = "outbox")
+data class OutboxEntry(
+    @PrimaryKey val idempotencyKey: String,
+    val type: String,
+    val payload: String,
+    val createdAt: Long = System.currentTimeMillis(),
+    val attempts: Int = 0,
+    val lastError: String? = null
+) {
+    companion object {
+        const val TYPE_ORDER_STATUS_NOTIFICATION = "order_status_notification"
+    }
+}
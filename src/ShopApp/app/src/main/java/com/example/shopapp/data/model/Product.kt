@@ -1,6 +1,7 @@
 package com.example.shopapp.data.model
 
 import com.google.firebase.Timestamp
+import com.google.firebase.firestore.Exclude
 
 data class Product(
     val productId: String,
@@ -20,7 +21,16 @@ data class Product(
     val status: String,
     val review: List<Review>,
     val createdAt: Timestamp?,
-    val updatedAt: Timestamp?
+    val updatedAt: Timestamp?,
+    // Running totals kept in step with the reviews, so the average needs no pass over them
+    val ratingSum: Double = 0.0,
+    val ratingCount: Int = 0,
+    // Number of reviews per star ("1".."5"), for the rating breakdown
+    val ratingStars: Map<String, Int> = emptyMap()
 ) {
     constructor() : this("", "", "",emptyList(), 0.0, "", "", "", "", "", false, 0.0, 0, 0, "", emptyList(), Timestamp.now(), Timestamp.now())
-}
\ No newline at end of file
+
+    @get:Exclude
+    val averageRating: Double
+        get() = if (ratingCount > 0) ratingSum / ratingCount else 0.0
+}
@@ -0,0 +1,9 @@
+package com.example.shopapp.data.model
+
+import com.google.firebase.firestore.DocumentChange
+
+// A single product delta delivered by a snapshot listener
+data class ProductChange(
+    val type: DocumentChange.Type,
+    val product: Product
+)
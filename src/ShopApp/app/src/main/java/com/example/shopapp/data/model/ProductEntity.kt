@@ -0,0 +1,14 @@
+package com.example.shopapp.data.model
+
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+
+// Offline copy of a product summary; the columns are what the catalog queries filter and sort on
+@Entity(tableName = "products", indices = [Index("category"), Index("updatedAtMillis")])
+data class ProductEntity(
+    @PrimaryKey val productId: String,
+    val category: String,
+    val updatedAtMillis: Long,
+    val json: String
+)
@@ -0,0 +1,11 @@
+package com.example.shopapp.data.model
+
+import com.google.firebase.firestore.DocumentSnapshot
+
+// One page of products plus the cursor to continue from (null when the page is empty)
+data class ProductPage(
+    val products: List<Product>,
+    val lastDocument: DocumentSnapshot?
+) {
+    constructor() : this(emptyList(), null)
+}
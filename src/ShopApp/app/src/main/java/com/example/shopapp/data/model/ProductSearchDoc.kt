@@ -0,0 +1,11 @@
+package com.example.shopapp.data.model
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+// Product payload the search index returns for a hit, stored as JSON
+@Entity(tableName = "product_search_docs")
+data class ProductSearchDoc(
+    @PrimaryKey val productId: String,
+    val json: String
+)
@@ -0,0 +1,16 @@
+package com.example.shopapp.data.model
+
+import androidx.room.Entity
+import androidx.room.Index
+
+// One posting of the product search index: token -> product with a field weight
+@Entity(
+    tableName = "product_search_tokens",
+    primaryKeys = ["token", "productId"],
+    indices = [Index("productId")]
+)
+data class ProductSearchToken(
+    val token: String,
+    val productId: String,
+    val weight: Int
+)
@@ -0,0 +1,11 @@
+package com.example.shopapp.data.model
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+// Marks a user whose purchases were backfilled from the order history on this device
+@Entity(tableName = "purchase_sync")
+data class PurchaseSyncState(
+    @PrimaryKey val userId: String,
+    val syncedAt: Long
+)
@@ -0,0 +1,10 @@
+package com.example.shopapp.data.model
+
+import androidx.room.Entity
+
+// Local copy of users/{userId}/purchases: a product the user has received at least once
+@Entity(tableName = "purchased_products", primaryKeys = ["userId", "productId"])
+data class PurchasedProduct(
+    val userId: String,
+    val productId: String
+)
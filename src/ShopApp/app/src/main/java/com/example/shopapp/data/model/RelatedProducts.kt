@@ -0,0 +1,9 @@
+package com.example.shopapp.data.model
+
+// Suggestions shown under a product: same category and brand first, then the rest of the category
+data class RelatedProducts(
+    val sameBrand: List<Product>,
+    val similar: List<Product>
+) {
+    constructor() : this(emptyList(), emptyList())
+}
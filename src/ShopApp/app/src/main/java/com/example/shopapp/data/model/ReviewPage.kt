@@ -0,0 +1,11 @@
+package com.example.shopapp.data.model
+
+import com.google.firebase.firestore.DocumentSnapshot
+
+// One page of a product's reviews plus the cursor to continue from (null when there are no more)
+data class ReviewPage(
+    val reviews: List<Review>,
+    val lastDocument: DocumentSnapshot?
+) {
+    constructor() : this(emptyList(), null)
+}
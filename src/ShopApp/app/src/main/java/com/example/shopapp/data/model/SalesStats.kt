@@ -0,0 +1,42 @@
+package com.example.shopapp.data.model
+
+import com.google.firebase.Timestamp
+import java.text.SimpleDateFormat
+import java.util.Calendar
+import java.util.Locale
+
+// stats/sales: rollup of delivered orders, updated in the same transaction that delivers an order.
+// Per-product units and per-user spend live in epochs/{epoch}/productUnits and userSpend. A rebuild
+// starts a new epoch; rebuilt is set once it has folded in the whole delivered order history.
+data class SalesStats(
+    val totalRevenue: Double = 0.0,
+    val deliveredCount: Int = 0,
+    // day ("yyyyMMdd", device time zone) -> revenue, the last DAILY_BUCKETS days only
+    val dailyRevenue: Map<String, Double> = emptyMap(),
+    val bestSellerId: String = "",
+    val bestSellerUnits: Int = 0,
+    val bigSpenderId: String = "",
+    val bigSpenderTotal: Double = 0.0,
+    val updatedAt: Timestamp? = null,
+    val rebuilt: Boolean = false,
+    val epoch: String = ""
+) {
+    // Revenue of today and the days - 1 days before it
+    fun revenueForLastDays(days: Int, now: Calendar = Calendar.getInstance()): Double {
+        val day = now.clone() as Calendar
+        var total = 0.0
+        repeat(days) {
+            total += dailyRevenue[dayKey(day)] ?: 0.0
+            day.add(Calendar.DAY_OF_YEAR, -1)
+        }
+        return total
+    }
+
+    companion object {
+        const val DAILY_BUCKETS = 31
+
+        fun dayKey(calendar: Calendar): String {
+            return SimpleDateFormat("yyyyMMdd", Locale.US).apply { timeZone = calendar.timeZone }.format(calendar.time)
+        }
+    }
+}
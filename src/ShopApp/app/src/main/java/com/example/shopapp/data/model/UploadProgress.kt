@@ -0,0 +1,10 @@
+package com.example.shopapp.data.model
+
+// Combined progress of a multi-image upload. urls is set on the last emission, in the order the
+// images were given.
+data class UploadProgress(
+    val completed: Int,
+    val total: Int,
+    val fraction: Float,
+    val urls: List<String>? = null
+)
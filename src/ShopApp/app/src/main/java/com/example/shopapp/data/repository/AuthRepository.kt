@@ -9,7 +9,9 @@ import androidx.credentials.CustomCredential
 import androidx.credentials.CredentialManager
 import androidx.credentials.GetCredentialRequest
 import androidx.credentials.exceptions.GetCredentialException
+import com.example.shopapp.data.cache.UserProfileCache
 import com.example.shopapp.data.model.User
+import com.example.shopapp.data.search.UserSearchFields
 import com.facebook.CallbackManager
 import com.facebook.FacebookCallback
 import com.facebook.FacebookException
@@ -19,6 +21,7 @@ import com.google.android.libraries.identity.googleid.GoogleIdTokenCredential
 import com.google.firebase.auth.FacebookAuthProvider
 import com.google.firebase.auth.FirebaseAuth
 import com.google.firebase.auth.GoogleAuthProvider
+import com.google.firebase.firestore.FieldPath
 import com.google.firebase.firestore.FieldValue
 import com.google.firebase.firestore.FirebaseFirestore
 import kotlinx.coroutines.CancellationException
@@ -130,7 +133,7 @@ class AuthRepository(
                 "status" to "active",
                 "createdAt" to FieldValue.serverTimestamp(),
                 "updatedAt" to FieldValue.serverTimestamp()
-            )
+            ) + UserSearchFields.of(username, email)
 
             db.collection("users").document(userId).set(userData).await()
             Unit
@@ -288,7 +291,7 @@ class AuthRepository(
                             "createdAt" to FieldValue.serverTimestamp(),
                             "updatedAt" to FieldValue.serverTimestamp(),
                             "role" to "user"  // Default role
-                        )
+                        ) + UserSearchFields.of(user.displayName ?: "User", user.email ?: "")
                         db.collection("users").document(user.uid).set(userData).await()
                     }
 
@@ -346,7 +349,7 @@ class AuthRepository(
                                                 "createdAt" to FieldValue.serverTimestamp(),
                                                 "updatedAt" to FieldValue.serverTimestamp(),
                                                 "role" to "user"
-                                            )
+                                            ) + UserSearchFields.of(user.displayName ?: "User", user.email ?: "")
                                             db.collection("users").document(user.uid).set(userData)
                                                 .addOnSuccessListener {
                                                     Log.d(TAG, "Firestore user data set success")
@@ -410,12 +413,29 @@ class AuthRepository(
     }
 
     suspend fun getUserById(userId: String): User? {
-        return try {
-            val userDoc = db.collection("users").document(userId).get().await()
-            userDoc.toObject(User::class.java)?.copy(userId = userId)
-        } catch (e: Exception) {
-            Log.e(TAG, "Error getting user by ID: ${e.message}")
-            null
+        return UserProfileCache.get(userId) { id ->
+            try {
+                val userDoc = db.collection("users").document(id).get().await()
+                userDoc.toObject(User::class.java)?.copy(userId = id)
+            } catch (e: Exception) {
+                Log.e(TAG, "Error getting user by ID: ${e.message}")
+                null
+            }
+        }
+    }
+
+    // Review authors and similar lists: cached profiles plus one whereIn query per 30 missing IDs
+    suspend fun getUsersByIds(userIds: List<String>): List<User> {
+        return UserProfileCache.getAll(userIds) { ids ->
+            try {
+                ids.chunked(30).flatMap { chunk ->
+                    db.collection("users").whereIn(FieldPath.documentId(), chunk).get().await()
+                        .documents.mapNotNull { doc -> doc.toObject(User::class.java)?.copy(userId = doc.id) }
+                }
+            } catch (e: Exception) {
+                Log.e(TAG, "Error getting users by IDs: ${e.message}")
+                emptyList()
+            }
         }
     }
 }
\ No newline at end of file
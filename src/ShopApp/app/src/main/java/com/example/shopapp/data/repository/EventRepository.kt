@@ -1,10 +1,19 @@
 package com.example.shopapp.data.repository
 
+import android.util.Log
 import com.example.shopapp.data.dao.admin.IEventDao
 import com.example.shopapp.data.model.Event
+import com.example.shopapp.data.search.EventSearchIndex
+import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flowOf
+
+class EventRepository(
+    private val eventDao: IEventDao,
+    private val searchIndex: EventSearchIndex? = null
+) : IRepository<Event> {
+    private val TAG = "EventRepository"
 
-class EventRepository(private val eventDao: IEventDao) : IRepository<Event> {
     override suspend fun fetchAll(): Flow<List<Event>> {
         return eventDao.getAll()
     }
@@ -25,11 +34,22 @@ class EventRepository(private val eventDao: IEventDao) : IRepository<Event> {
         return eventDao.delete(id)
     }
 
+    // Served from the local index once the listener has delivered the events; Firestore before that
     suspend fun searchEventsByTitle(title: String): Flow<List<Event>> {
+        if (searchIndex != null && searchIndex.isReady) {
+            val results = searchIndex.searchByTitle(title)
+            Log.d(TAG, "Index search for title '$title': ${results.size} results")
+            return flowOf(results)
+        }
         return eventDao.searchEventsByTitle(title)
     }
 
     suspend fun searchEventsByDescription(description: String): Flow<List<Event>> {
+        if (searchIndex != null && searchIndex.isReady) {
+            val results = searchIndex.searchByDescription(description)
+            Log.d(TAG, "Index search for description '$description': ${results.size} results")
+            return flowOf(results)
+        }
         return eventDao.searchEventsByDescription(description)
     }
 
@@ -41,5 +61,10 @@ class EventRepository(private val eventDao: IEventDao) : IRepository<Event> {
         return eventDao.searchEventsByStatus(status)
     }
 
+    // The index listens for event changes only while scope is active
+    fun startSearchIndex(scope: CoroutineScope) {
+        searchIndex?.start(eventDao, scope)
+    }
+
     fun getEventDao(): IEventDao = eventDao
 }
\ No newline at end of file
@@ -2,6 +2,8 @@ package com.example.shopapp.data.repository
 
 import com.example.shopapp.data.dao.INotificationDao
 import com.example.shopapp.data.model.NotificationItem
+import com.example.shopapp.data.model.NotificationPage
+import com.google.firebase.firestore.DocumentSnapshot
 import kotlinx.coroutines.flow.Flow
 
 class NotificationRepository(
@@ -11,16 +13,36 @@ class NotificationRepository(
         return notificationDao.getNotificationsByUserId(userId)
     }
 
+    suspend fun getUserNotificationsPage(userId: String, limit: Int, startAfter: DocumentSnapshot? = null): Flow<NotificationPage> {
+        return notificationDao.getNotificationsPage(userId, limit, startAfter)
+    }
+
     suspend fun getUnreadNotificationsCount(userId: String): Int {
         return notificationDao.getUnreadNotificationCountByUserId(userId)
     }
 
+    fun observeUnreadCount(userId: String): Flow<Int> {
+        return notificationDao.observeUnreadCount(userId)
+    }
+
+    // Writes only isRead, in a transaction that drops the unread counter only if it was still unread
     suspend fun markNotificationAsRead(notification: NotificationItem): Boolean {
-        val updatedNotification = notification.copy(isRead = true)
-        return notificationDao.updateNotification(updatedNotification)
+        return notificationDao.markAsRead(listOf(notification))
+    }
+
+    suspend fun markAllNotificationsAsRead(userId: String): Boolean {
+        return notificationDao.markAllAsRead(userId)
     }
 
     suspend fun deleteNotification(notificationId: String): Boolean {
         return notificationDao.deleteNotification(notificationId)
     }
-}
\ No newline at end of file
+
+    suspend fun deleteNotifications(notifications: List<NotificationItem>): Boolean {
+        return notificationDao.deleteNotifications(notifications)
+    }
+
+    suspend fun deleteAllNotifications(userId: String): Boolean {
+        return notificationDao.deleteAllNotifications(userId)
+    }
+}
@@ -1,10 +1,18 @@
 package com.example.shopapp.data.repository
 
+import com.example.shopapp.data.dao.StatsDao
 import com.example.shopapp.data.dao.admin.IOrderDao
 import com.example.shopapp.data.model.Order
+import com.example.shopapp.data.model.OrderPage
+import com.example.shopapp.data.model.SalesStats
+import com.google.firebase.firestore.DocumentSnapshot
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.first
 
-class OrderRepository(private val orderDao: IOrderDao) : IRepository<Order> {
+class OrderRepository(
+    private val orderDao: IOrderDao,
+    private val statsDao: StatsDao? = null
+) : IRepository<Order> {
     override suspend fun fetchAll(): Flow<List<Order>> {
         return orderDao.getAll()
     }
@@ -29,12 +37,26 @@ class OrderRepository(private val orderDao: IOrderDao) : IRepository<Order> {
         return orderDao.searchOrdersByUserId(userId)
     }
 
-    suspend fun searchOrdersByUsername(username: String): Flow<List<Order>> {
-        return orderDao.searchOrdersByUsername(username)
+    suspend fun searchOrdersByUsername(username: String, limit: Int, startAfter: DocumentSnapshot? = null): Flow<OrderPage> {
+        return orderDao.searchOrdersByUsername(username, limit, startAfter)
+    }
+
+    suspend fun getTotalOrdersCountByUsername(username: String): Int {
+        return orderDao.getTotalOrdersCountByUsername(username)
+    }
+
+    suspend fun updateOrderStatus(order: Order, newStatus: String, adjustInventory: Boolean): Boolean {
+        return orderDao.updateOrderStatus(order, newStatus, adjustInventory)
     }
 
     fun getOrderDao(): IOrderDao = orderDao
 
+    // Reads the delivered-orders rollup; the first time, it is built from the delivered order history
+    suspend fun getSalesStats(): SalesStats? {
+        val dao = statsDao ?: return null
+        return dao.getSalesStats()?.takeIf { it.rebuilt } ?: dao.rebuildSalesStats { orderDao.getAllOrdersByStatus("delivered").first() }
+    }
+
     suspend fun getAllOrderByStatus(status: String): Flow<List<Order>> {
         return orderDao.getAllOrdersByStatus(status)
     }
@@ -1,52 +1,145 @@
 package com.example.shopapp.data.repository
 
 import android.util.Log
+import android.util.LruCache
+import com.example.shopapp.data.cache.ProductByIdCache
+import com.example.shopapp.data.cache.ProductCatalogCache
 import com.example.shopapp.data.dao.ProductDao
+import com.example.shopapp.data.dao.ReviewDao
 import com.example.shopapp.data.model.Product
+import com.example.shopapp.data.model.ProductPage
+import com.example.shopapp.data.model.RelatedProducts
 import com.example.shopapp.data.model.Review
+import com.example.shopapp.data.model.ReviewPage
+import com.example.shopapp.data.search.ProductSearchIndex
+import com.google.firebase.firestore.DocumentSnapshot
 import com.google.firebase.firestore.FirebaseFirestore
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.tasks.await
 
 class ProductRepository(
-    private val productDao: ProductDao
+    private val productDao: ProductDao,
+    private val searchIndex: ProductSearchIndex? = null,
+    private val reviewDao: ReviewDao? = null,
+    private val catalog: ProductCatalogCache? = null
 ) : IRepository<Product> {
     private val TAG = "ProductRepository"
+
+    // Suggestions per product page, so going back and forth between products costs no reads
+    private val relatedCache = LruCache<String, RelatedProducts>(RELATED_CACHE_SIZE)
+
+    companion object {
+        private const val RELATED_CACHE_SIZE = 32
+    }
+
+    init {
+        searchIndex?.start(productDao)
+        catalog?.start(productDao)
+        ProductByIdCache.start(productDao)
+    }
     override suspend fun fetchAll(): Flow<List<Product>> = flow {
         productDao.getAllProducts().collect { productList -> emit(productList) }
     }
 
     override suspend fun fetchById(id: String): Product? {
-        return productDao.getProductById(id)
+        return ProductByIdCache.get(id) { productDao.getProductById(it) }
+    }
+
+    suspend fun getProductsByIds(ids: List<String>): List<Product> {
+        return ProductByIdCache.getAll(ids) { productDao.getProductsByIds(it) }
     }
 
     override suspend fun create(item: Product): Boolean {
-        return productDao.addProduct(item)
+        val success = productDao.addProduct(item)
+        if (success) {
+            catalog?.put(listOf(item))
+            ProductByIdCache.invalidate(item.productId)
+            relatedCache.evictAll()
+        }
+        return success
     }
 
     override suspend fun modify(item: Product): Boolean {
-        return productDao.updateProduct(item)
+        val success = productDao.updateProduct(item)
+        if (success) {
+            catalog?.put(listOf(item))
+            ProductByIdCache.invalidate(item.productId)
+            relatedCache.evictAll()
+        }
+        return success
     }
 
     override suspend fun remove(id: String): Boolean {
-        return productDao.deleteProduct(id)
+        val success = productDao.deleteProduct(id)
+        if (success) {
+            catalog?.remove(id)
+            ProductByIdCache.invalidate(id)
+            relatedCache.evictAll()
+        }
+        return success
+    }
+
+    // First page straight from the offline catalog, for rendering before the network answers
+    suspend fun getCachedPage(limit: Int, categoryId: String? = null): List<Product> {
+        return catalog?.getPage(limit, categoryId) ?: emptyList()
     }
 
+    suspend fun getRelatedProducts(product: Product, sameBrandLimit: Int, similarLimit: Int): RelatedProducts {
+        relatedCache.get(product.productId)?.let { return it }
+        val related = productDao.getRelatedProducts(product, sameBrandLimit, similarLimit)
+        if (related.sameBrand.isNotEmpty() || related.similar.isNotEmpty()) {
+            relatedCache.put(product.productId, related)
+        }
+        return related
+    }
+
+    // Served from the local index once it has data; falls back to the Firestore scan before that
     suspend fun search(keyword: String): Flow<List<Product>> = flow {
-        productDao.searchProductsByKeyword(keyword).collect { productList -> emit(productList) }
+        if (searchIndex != null && searchIndex.isReady) {
+            val results = searchIndex.search(keyword)
+            Log.d(TAG, "Index search for '$keyword': ${results.size} results")
+            emit(results)
+        } else {
+            productDao.searchProductsByKeyword(keyword).collect { productList -> emit(productList) }
+        }
+    }
+
+    // Progressive search: emits local index hits immediately, then, while the index is still warming up,
+    // merges in the Firestore results. Collect with flatMapLatest so a newer query cancels this one.
+    fun searchProgressive(keyword: String): Flow<List<Product>> = flow {
+        val local = searchIndex?.search(keyword) ?: emptyList()
+        if (local.isNotEmpty()) {
+            emit(local)
+        }
+        if (searchIndex != null && searchIndex.isReady) {
+            if (local.isEmpty()) emit(local)
+            return@flow
+        }
+
+        val remote = productDao.searchProductsByKeyword(keyword).first()
+        val localIds = local.mapTo(HashSet()) { it.productId }
+        emit(local + remote.filter { it.productId !in localIds })
     }
 
-    suspend fun fetchPage(limit: Int, offset: Int): Flow<List<Product>> = flow {
-        productDao.getProductsPage(limit, offset).collect { productList -> emit(productList) }
+    suspend fun fetchPage(limit: Int, startAfter: DocumentSnapshot? = null): Flow<ProductPage> = flow {
+        productDao.getProductsPage(limit, startAfter).collect { page ->
+            catalog?.put(page.products)
+            emit(page)
+        }
     }
 
-    suspend fun fetchPageByCategory(categoryId: String, limit: Int, offset: Int): Flow<List<Product>> = flow {
-        productDao.getProductsPageByCategory(categoryId, limit, offset).collect { productList -> emit(productList) }
+    suspend fun fetchPageByCategory(categoryId: String, limit: Int, startAfter: DocumentSnapshot? = null): Flow<ProductPage> = flow {
+        productDao.getProductsPageByCategory(categoryId, limit, startAfter).collect { page ->
+            catalog?.put(page.products)
+            emit(page)
+        }
     }
 
-    suspend fun searchByKeywordPaginated(keyword: String, limit: Int, offset: Int): Flow<List<Product>> = flow {
-        productDao.searchProductsPageByKeyword(keyword, limit, offset).collect { productList -> emit(productList) }
+    suspend fun searchByKeywordPaginated(keyword: String, limit: Int, startAfter: DocumentSnapshot? = null): Flow<ProductPage> = flow {
+        productDao.searchProductsPageByKeyword(keyword, limit, startAfter).collect { page -> emit(page) }
     }
 
     suspend fun getTotalCount(): Int {
@@ -62,15 +155,28 @@ class ProductRepository(
     }
 
     suspend fun addReview(productId: String, review: Review): Boolean {
-        return productDao.addReviewToProduct(productId, review)
+        val success = reviewDao?.addReview(productId, review) ?: productDao.addReviewToProduct(productId, review)
+        // rating totals changed, so the next fetchById must go to Firestore
+        if (success) ProductByIdCache.invalidate(productId)
+        return success
     }
 
     suspend fun removeReview(productId: String, review: Review): Boolean {
-        return productDao.removeReviewFromProduct(productId, review)
+        val success = reviewDao?.deleteReview(productId, review) ?: productDao.removeReviewFromProduct(productId, review)
+        if (success) ProductByIdCache.invalidate(productId)
+        return success
+    }
+
+    suspend fun fetchReviewsPage(productId: String, limit: Int, startAfter: DocumentSnapshot? = null): Flow<ReviewPage> {
+        return reviewDao?.getReviewsPage(productId, limit, startAfter) ?: flowOf(ReviewPage())
+    }
+
+    suspend fun migrateEmbeddedReviews(): Int {
+        return reviewDao?.migrateEmbeddedReviews() ?: 0
     }
 
-    suspend fun searchProductsByTitle(query: String, limit: Int, offset: Int): Flow<List<Product>> {
-        return productDao.searchProductsByTitle(query, limit, offset)
+    suspend fun searchProductsByTitle(query: String, limit: Int, startAfter: DocumentSnapshot? = null): Flow<ProductPage> {
+        return productDao.searchProductsByTitle(query, limit, startAfter)
     }
 
     suspend fun getTotalProductsCountByTitle(query: String): Int {
@@ -78,6 +184,6 @@ class ProductRepository(
     }
 
     suspend fun getProductById(id: String): Product? {
-        return productDao.getProductById(id)
+        return fetchById(id)
     }
 }
@@ -0,0 +1,38 @@
+package com.example.shopapp.data.repository
+
+import android.util.Log
+import com.example.shopapp.data.dao.PurchaseDao
+import com.example.shopapp.data.dao.PurchasedProductDao
+import com.example.shopapp.data.model.PurchaseSyncState
+import com.example.shopapp.data.model.PurchasedProduct
+
+// "Has this user received product X": answered from Room, falling back to one document read.
+// Only positive answers are cached, since a purchase is never revoked. null means it could not be verified.
+class PurchaseRepository(
+    private val localDao: PurchasedProductDao,
+    private val remoteDao: PurchaseDao
+) {
+    private val TAG = "PurchaseRepository"
+
+    suspend fun hasPurchased(userId: String, productId: String): Boolean? {
+        if (userId.isBlank() || productId.isBlank()) return false
+        return try {
+            if (localDao.contains(userId, productId)) return true
+
+            if (!localDao.isSynced(userId)) {
+                // Left unsynced when the orders could not be read, so the next check tries again
+                val productIds = remoteDao.backfillFromOrders(userId) ?: return null
+                localDao.insertAll(productIds.map { PurchasedProduct(userId, it) })
+                localDao.markSynced(PurchaseSyncState(userId, System.currentTimeMillis()))
+                return productId in productIds
+            }
+
+            val purchased = remoteDao.hasPurchased(userId, productId) ?: return null
+            if (purchased) localDao.insertAll(listOf(PurchasedProduct(userId, productId)))
+            purchased
+        } catch (e: Exception) {
+            Log.e(TAG, "Error checking purchase: ${e.message}")
+            null
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.shopapp.data.repository
 
+import com.example.shopapp.data.cache.UserProfileCache
 import com.example.shopapp.data.dao.admin.IUserDao
 import com.example.shopapp.data.model.User
 import kotlinx.coroutines.flow.Flow
@@ -10,7 +11,11 @@ class UserRepository(private val userDao: IUserDao) : IRepository<User> {
     }
 
     override suspend fun fetchById(id: String): User? {
-        return userDao.getById(id)
+        return UserProfileCache.get(id) { userDao.getById(it) }
+    }
+
+    suspend fun getUsersByIds(ids: List<String>): List<User> {
+        return UserProfileCache.getAll(ids) { userDao.getUsersByIds(it) }
     }
 
     override suspend fun create(item: User): Boolean {
@@ -0,0 +1,127 @@
+package com.example.shopapp.data.search
+
+import android.util.Log
+import com.example.shopapp.data.dao.admin.IEventDao
+import com.example.shopapp.data.model.Event
+import com.example.shopapp.data.model.EventChange
+import com.google.firebase.firestore.DocumentChange
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.job
+import kotlinx.coroutines.launch
+import java.util.TreeMap
+
+// In-memory inverted index over event titles and descriptions, filled and kept current by the events
+// snapshot listener. The collection is small, so unlike ProductSearchIndex nothing is persisted.
+object EventSearchIndex {
+    private const val TAG = "EventSearchIndex"
+
+    private val lock = Any()
+    private var job: Job? = null
+
+    // token -> event ids, one index per searchable field; sorted so prefix lookups are a range scan
+    private val titlePostings = TreeMap<String, MutableSet<String>>()
+    private val descriptionPostings = TreeMap<String, MutableSet<String>>()
+    private val events = HashMap<String, Event>()
+
+    @Volatile
+    var isReady = false
+        private set
+
+    // Follows live event changes while scope is active; a call while already running is ignored.
+    // Cancelling the scope removes the listener and empties the index.
+    fun start(eventDao: IEventDao, scope: CoroutineScope) {
+        synchronized(lock) {
+            if (job?.isActive == true) return
+            clear()
+            job = scope.launch(Dispatchers.Default) {
+                try {
+                    eventDao.observeEventChanges().collect { changes -> applyChanges(changes) }
+                } finally {
+                    stopped(coroutineContext.job)
+                }
+            }
+        }
+    }
+
+    private fun stopped(owner: Job) {
+        synchronized(lock) {
+            // A newer start has already taken over
+            if (job !== owner) return
+            job = null
+            clear()
+        }
+        Log.d(TAG, "Event search index stopped")
+    }
+
+    private fun clear() {
+        isReady = false
+        titlePostings.clear()
+        descriptionPostings.clear()
+        events.clear()
+    }
+
+    private fun applyChanges(changes: List<EventChange>) {
+        synchronized(lock) {
+            for (change in changes) {
+                val event = change.event
+                unindex(event.eventId)
+                if (change.type != DocumentChange.Type.REMOVED) {
+                    events[event.eventId] = event
+                    addPostings(titlePostings, event.eventId, event.title)
+                    addPostings(descriptionPostings, event.eventId, event.description)
+                }
+            }
+            isReady = true
+        }
+        Log.d(TAG, "Applied ${changes.size} event changes to search index")
+    }
+
+    private fun addPostings(postings: TreeMap<String, MutableSet<String>>, eventId: String, text: String) {
+        SearchTokenizer.tokenize(text).forEach { token ->
+            postings.getOrPut(token) { HashSet() }.add(eventId)
+        }
+    }
+
+    private fun unindex(eventId: String) {
+        val event = events.remove(eventId) ?: return
+        removePostings(titlePostings, eventId, event.title)
+        removePostings(descriptionPostings, eventId, event.description)
+    }
+
+    private fun removePostings(postings: TreeMap<String, MutableSet<String>>, eventId: String, text: String) {
+        SearchTokenizer.tokenize(text).forEach { token ->
+            postings[token]?.let { ids ->
+                ids.remove(eventId)
+                if (ids.isEmpty()) postings.remove(token)
+            }
+        }
+    }
+
+    fun searchByTitle(query: String): List<Event> = search(titlePostings, query)
+
+    fun searchByDescription(query: String): List<Event> = search(descriptionPostings, query)
+
+    // Every query token must match a token of the field; the last one may be an unfinished prefix.
+    // Newest events first, like the unfiltered list.
+    private fun search(postings: TreeMap<String, MutableSet<String>>, query: String): List<Event> {
+        val queryTokens = SearchTokenizer.tokenize(query)
+        if (queryTokens.isEmpty()) return emptyList()
+
+        synchronized(lock) {
+            var ids: Set<String>? = null
+            queryTokens.forEachIndexed { i, token ->
+                val matches = if (i == queryTokens.lastIndex) {
+                    postings.subMap(token, true, token + '\uffff', false).values.flatten().toSet()
+                } else {
+                    postings[token] ?: emptySet()
+                }
+                ids = ids?.intersect(matches) ?: matches
+                if (ids!!.isEmpty()) return emptyList()
+            }
+
+            return ids!!.mapNotNull { events[it] }.sortedByDescending { it.createdAt }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.shopapp.data.search
+
+// Denormalized search fields stored on every order document, mirroring UserSearchFields for the
+// username copied into the order
+object OrderSearchFields {
+    const val TOKENS = "usernameTokens"
+
+    fun of(username: String): Map<String, Any> = mapOf(
+        "usernameLower" to username.lowercase(),
+        TOKENS to SearchTokenizer.prefixTokens(username)
+    )
+}
@@ -0,0 +1,70 @@
+package com.example.shopapp.data.search
+
+import com.example.shopapp.data.model.Product
+
+// Filters a fixed result set by category, price range and minimum rating.
+// Price and rating are kept in sorted arrays, so each filter change is two binary searches
+// plus a scan of the narrowest candidate range instead of a pass over every product and review.
+class ProductFilterEngine(private val products: List<Product>) {
+    private val byPrice: IntArray = products.indices.sortedBy { products[it].price }.toIntArray()
+    private val prices = DoubleArray(products.size) { products[byPrice[it]].price }
+
+    private val byRating: IntArray = products.indices.sortedBy { products[it].averageRating }.toIntArray()
+    private val ratings = DoubleArray(products.size) { products[byRating[it]].averageRating }
+
+    private val byCategory: Map<String, IntArray> = products.indices
+        .groupBy { products[it].category }
+        .mapValues { it.value.toIntArray() }
+
+    // Keeps the original (ranked) order of the result set
+    fun filter(category: String?, minPrice: Double, maxPrice: Double, minRating: Double): List<Product> {
+        if (products.isEmpty()) return emptyList()
+
+        val priceFrom = lowerBound(prices, minPrice)
+        val priceTo = upperBound(prices, maxPrice)
+        val ratingFrom = lowerBound(ratings, minRating)
+        val categoryIds = category?.let { byCategory[it] ?: return emptyList() }
+
+        val priceCount = priceTo - priceFrom
+        val ratingCount = ratings.size - ratingFrom
+        if (priceCount <= 0 || ratingCount <= 0) return emptyList()
+
+        // Walk whichever candidate set is smallest and check the other two conditions per item
+        val candidates: IntArray = when {
+            categoryIds != null && categoryIds.size <= minOf(priceCount, ratingCount) -> categoryIds
+            priceCount <= ratingCount -> byPrice.copyOfRange(priceFrom, priceTo)
+            else -> byRating.copyOfRange(ratingFrom, ratings.size)
+        }
+
+        val matched = candidates.filter { i ->
+            val product = products[i]
+            (category == null || product.category == category) &&
+                    product.price >= minPrice && product.price <= maxPrice &&
+                    product.averageRating >= minRating
+        }.sorted()
+
+        return matched.map { products[it] }
+    }
+
+    // First index whose value is >= target
+    private fun lowerBound(values: DoubleArray, target: Double): Int {
+        var low = 0
+        var high = values.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (values[mid] < target) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    // First index whose value is > target
+    private fun upperBound(values: DoubleArray, target: Double): Int {
+        var low = 0
+        var high = values.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (values[mid] <= target) low = mid + 1 else high = mid
+        }
+        return low
+    }
+}
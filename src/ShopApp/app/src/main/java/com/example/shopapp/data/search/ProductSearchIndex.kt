@@ -0,0 +1,223 @@
+package com.example.shopapp.data.search
+
+import android.content.Context
+import android.util.Log
+import com.example.shopapp.data.ProductDatabase
+import com.example.shopapp.data.dao.ProductDao
+import com.example.shopapp.data.dao.ProductSearchDao
+import com.example.shopapp.data.model.Product
+import com.example.shopapp.data.model.ProductChange
+import com.example.shopapp.data.model.ProductSearchDoc
+import com.example.shopapp.data.model.ProductSearchToken
+import com.google.firebase.firestore.DocumentChange
+import com.google.gson.Gson
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import java.util.TreeMap
+import java.util.concurrent.atomic.AtomicBoolean
+
+// In-memory inverted index over the product catalog, persisted in Room and kept current
+// from the products snapshot listener. Searches never touch the network.
+// The constructor is internal so unit tests can run it over an in-memory dao.
+class ProductSearchIndex internal constructor(
+    private val searchDao: ProductSearchDao
+) {
+    private val TAG = "ProductSearchIndex"
+    private val gson = Gson()
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+    private val started = AtomicBoolean(false)
+    private val lock = Any()
+
+    // token -> (productId -> weight); sorted so prefix lookups are a range scan
+    private val postings = TreeMap<String, MutableMap<String, Int>>()
+    private val productTokens = HashMap<String, Map<String, Int>>()
+    private val products = HashMap<String, Product>()
+
+    @Volatile
+    var isReady = false
+        private set
+
+    // Loads the persisted index, then follows live product changes; safe to call more than once
+    fun start(productDao: ProductDao) {
+        if (!started.compareAndSet(false, true)) return
+
+        scope.launch {
+            try {
+                loadFromDisk()
+            } catch (e: Exception) {
+                Log.e(TAG, "Error loading persisted search index: ${e.message}")
+            }
+            var initial = true
+            productDao.observeProductChanges().collect { changes ->
+                applyChanges(changes, fullSnapshot = initial)
+                initial = false
+            }
+        }
+    }
+
+    internal suspend fun loadFromDisk() {
+        val docs = searchDao.getAllDocs()
+        val tokens = searchDao.getAllTokens()
+        synchronized(lock) {
+            docs.forEach { doc ->
+                gson.fromJson(doc.json, Product::class.java)?.let { products[doc.productId] = it }
+            }
+            tokens.groupBy { it.productId }.forEach { (productId, rows) ->
+                val weights = rows.associate { it.token to it.weight }
+                productTokens[productId] = weights
+                weights.forEach { (token, weight) ->
+                    postings.getOrPut(token) { HashMap() }[productId] = weight
+                }
+            }
+            if (products.isNotEmpty()) isReady = true
+        }
+        Log.d(TAG, "Loaded ${docs.size} products, ${tokens.size} postings from disk")
+    }
+
+    // fullSnapshot: changes list every product that exists, so anything else restored from disk
+    // was deleted while the app was not running
+    internal suspend fun applyChanges(changes: List<ProductChange>, fullSnapshot: Boolean = false) {
+        val changedIds = mutableListOf<String>()
+        val removedIds = mutableListOf<String>()
+        val newTokens = mutableListOf<ProductSearchToken>()
+        val newDocs = mutableListOf<ProductSearchDoc>()
+
+        synchronized(lock) {
+            if (fullSnapshot) {
+                val liveIds = changes.mapTo(HashSet()) { it.product.productId }
+                (products.keys + productTokens.keys).filter { it !in liveIds }.forEach { productId ->
+                    unindex(productId)
+                    removedIds.add(productId)
+                }
+            }
+            for (change in changes) {
+                val product = change.product
+                unindex(product.productId)
+                if (change.type == DocumentChange.Type.REMOVED) {
+                    removedIds.add(product.productId)
+                } else {
+                    val weights = weighTokens(product)
+                    index(product, weights)
+                    changedIds.add(product.productId)
+                    weights.forEach { (token, weight) ->
+                        newTokens.add(ProductSearchToken(token, product.productId, weight))
+                    }
+                    newDocs.add(ProductSearchDoc(product.productId, gson.toJson(product)))
+                }
+            }
+            isReady = true
+        }
+
+        try {
+            searchDao.applyChanges(changedIds, newTokens, newDocs, removedIds)
+        } catch (e: Exception) {
+            Log.e(TAG, "Error persisting search index: ${e.message}")
+        }
+        Log.d(TAG, "Applied ${changes.size} product changes to search index, dropped ${removedIds.size}")
+    }
+
+    private fun index(product: Product, weights: Map<String, Int>) {
+        products[product.productId] = product
+        productTokens[product.productId] = weights
+        weights.forEach { (token, weight) ->
+            postings.getOrPut(token) { HashMap() }[product.productId] = weight
+        }
+    }
+
+    private fun unindex(productId: String) {
+        products.remove(productId)
+        productTokens.remove(productId)?.keys?.forEach { token ->
+            postings[token]?.let { ids ->
+                ids.remove(productId)
+                if (ids.isEmpty()) postings.remove(token)
+            }
+        }
+    }
+
+    // A token found in several fields keeps the weight of the most important one
+    private fun weighTokens(product: Product): Map<String, Int> {
+        val weights = HashMap<String, Int>()
+        fun add(text: String, weight: Int) {
+            SearchTokenizer.tokenize(text).forEach { token ->
+                if (weight > (weights[token] ?: 0)) weights[token] = weight
+            }
+        }
+        add(product.description, WEIGHT_DESCRIPTION)
+        add(product.category, WEIGHT_CATEGORY)
+        add(product.model, WEIGHT_MODEL)
+        add(product.brand, WEIGHT_BRAND)
+        add(product.title, WEIGHT_TITLE)
+        return weights
+    }
+
+    // Every query token must match a product token; the last one may be an unfinished prefix.
+    // Results are ranked by summed field weight, exact matches first, then by sales.
+    fun search(query: String, limit: Int = Int.MAX_VALUE): List<Product> {
+        val queryTokens = SearchTokenizer.tokenize(query)
+        if (queryTokens.isEmpty()) return emptyList()
+
+        synchronized(lock) {
+            var scores: MutableMap<String, Int>? = null
+            queryTokens.forEachIndexed { i, token ->
+                val matches = if (i == queryTokens.lastIndex) prefixMatches(token) else exactMatches(token)
+                scores = if (scores == null) {
+                    matches
+                } else {
+                    val merged = HashMap<String, Int>()
+                    scores!!.forEach { (id, score) -> matches[id]?.let { merged[id] = score + it } }
+                    merged
+                }
+                if (scores!!.isEmpty()) return emptyList()
+            }
+
+            return scores!!.entries
+                .sortedWith(
+                    compareByDescending<Map.Entry<String, Int>> { it.value }
+                        .thenByDescending { products[it.key]?.sales ?: 0 }
+                )
+                .asSequence()
+                .take(limit)
+                .mapNotNull { products[it.key] }
+                .toList()
+        }
+    }
+
+    private fun exactMatches(token: String): MutableMap<String, Int> {
+        val ids = postings[token] ?: return HashMap()
+        return ids.mapValuesTo(HashMap()) { it.value * EXACT_BONUS }
+    }
+
+    private fun prefixMatches(prefix: String): MutableMap<String, Int> {
+        val result = HashMap<String, Int>()
+        postings.subMap(prefix, true, prefix + '\uffff', false).forEach { (token, ids) ->
+            val bonus = if (token == prefix) EXACT_BONUS else 1
+            ids.forEach { (id, weight) ->
+                val score = weight * bonus
+                if (score > (result[id] ?: 0)) result[id] = score
+            }
+        }
+        return result
+    }
+
+    companion object {
+        private const val WEIGHT_TITLE = 5
+        private const val WEIGHT_BRAND = 4
+        private const val WEIGHT_MODEL = 3
+        private const val WEIGHT_CATEGORY = 2
+        private const val WEIGHT_DESCRIPTION = 1
+        private const val EXACT_BONUS = 2
+
+        @Volatile
+        private var INSTANCE: ProductSearchIndex? = null
+
+        fun getInstance(context: Context): ProductSearchIndex {
+            return INSTANCE ?: synchronized(this) {
+                val instance = ProductSearchIndex(ProductDatabase.getDatabase(context).productSearchDao())
+                INSTANCE = instance
+                instance
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.shopapp.data.search
+
+import java.text.Normalizer
+
+// Splits free text into lowercase, accent-free tokens so "Điện Thoại" and "dien thoai" match
+object SearchTokenizer {
+    private val MARKS = "\\p{InCombiningDiacriticalMarks}+".toRegex()
+    private val SEPARATORS = "[^\\p{L}\\p{N}]+".toRegex()
+
+    fun normalize(text: String): String {
+        val decomposed = Normalizer.normalize(text.lowercase(), Normalizer.Form.NFD)
+        return MARKS.replace(decomposed, "").replace('đ', 'd')
+    }
+
+    fun tokenize(text: String): List<String> {
+        if (text.isBlank()) return emptyList()
+        return normalize(text).split(SEPARATORS).filter { it.isNotEmpty() }
+    }
+
+    // Prefixes of the whole text and of each word in it, stored in an array field so one
+    // array-contains query finds "doe" and "john d" in "John Doe"
+    fun prefixTokens(text: String): List<String> {
+        return (listOf(normalize(text).trim()) + tokenize(text))
+            .filter { it.isNotEmpty() }
+            .flatMap { source -> (1..minOf(source.length, MAX_PREFIX_LENGTH)).map { source.substring(0, it) } }
+            .distinct()
+    }
+
+    // The token to look up for typed input; longer input is matched on its first characters
+    fun prefixQuery(input: String): String {
+        return normalize(input).trim().take(MAX_PREFIX_LENGTH)
+    }
+
+    private const val MAX_PREFIX_LENGTH = 20
+}
@@ -0,0 +1,17 @@
+package com.example.shopapp.data.search
+
+import com.example.shopapp.data.model.User
+
+// Denormalized search fields stored on every user document: lowercase username/email, and
+// searchTokens with the prefixes of both, so the admin search is a single array-contains query
+object UserSearchFields {
+    const val TOKENS = "searchTokens"
+
+    fun of(username: String, email: String): Map<String, Any> = mapOf(
+        "usernameLower" to username.lowercase(),
+        "emailLower" to email.lowercase(),
+        TOKENS to (SearchTokenizer.prefixTokens(username) + SearchTokenizer.prefixTokens(email)).distinct()
+    )
+
+    fun of(user: User): Map<String, Any> = of(user.username, user.email)
+}
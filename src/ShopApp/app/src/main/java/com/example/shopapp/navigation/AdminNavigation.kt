@@ -2,6 +2,7 @@ package com.example.shopapp.navigation
 
 import androidx.compose.material3.ExperimentalMaterial3Api
 import androidx.compose.runtime.Composable
+import androidx.compose.runtime.LaunchedEffect
 import androidx.compose.ui.platform.LocalContext
 import androidx.lifecycle.viewmodel.compose.viewModel
 import androidx.navigation.NavController
@@ -9,6 +10,8 @@ import androidx.navigation.compose.NavHost
 import androidx.navigation.compose.composable
 import androidx.navigation.compose.rememberNavController
 import com.example.shopapp.data.dao.FirebaseProductDao
+import com.example.shopapp.data.dao.FirebaseReviewDao
+import com.example.shopapp.data.dao.FirebaseStatsDao
 import com.example.shopapp.data.dao.admin.MockOrderDao
 import com.example.shopapp.data.dao.admin.RealOrderDao
 import com.example.shopapp.data.dao.admin.MockUserDao
@@ -19,6 +22,7 @@ import com.example.shopapp.data.repository.OrderRepository
 import com.example.shopapp.data.repository.ProductRepository
 import com.example.shopapp.data.repository.UserRepository
 import com.example.shopapp.data.repository.EventRepository
+import com.example.shopapp.data.search.EventSearchIndex
 import com.example.shopapp.ui.admin.AdminHomeScreen
 import com.example.shopapp.ui.admin.events.AddEventScreen
 import com.example.shopapp.ui.admin.orders.OrderDetailScreen
@@ -34,6 +38,8 @@ import com.example.shopapp.ui.admin.users.UserDetailScreen
 import com.example.shopapp.ui.admin.users.UserManagementScreen
 import com.example.shopapp.viewmodel.AuthViewModel
 import com.example.shopapp.viewmodel.OrderViewModel
+import com.example.shopapp.viewmodel.StatsViewModel
+import com.example.shopapp.viewmodel.StatsViewModelFactory
 import com.example.shopapp.viewmodel.OrderViewModelFactory
 import com.example.shopapp.viewmodel.EventViewModel
 import com.example.shopapp.viewmodel.EventViewModelFactory
@@ -53,24 +59,33 @@ fun AdminNavigation(authViewModel: AuthViewModel, rootNavController: NavControll
     val currentUserId = FirebaseAuth.getInstance().currentUser?.uid ?: ""
 
     val productViewModel: ProductViewModel = viewModel(
-        factory = ProductViewModelFactory(ProductRepository(FirebaseProductDao()), currentUserId)
+        factory = ProductViewModelFactory(ProductRepository(FirebaseProductDao(), reviewDao = FirebaseReviewDao()), currentUserId)
     )
     val userViewModel: UserViewModel = viewModel(
         factory = UserViewModelFactory(UserRepository(RealUserDao()))
     )
+    val orderRepository = OrderRepository(RealOrderDao(), FirebaseStatsDao())
     val orderViewModel: OrderViewModel = viewModel(
         factory = OrderViewModelFactory(
-            OrderRepository(RealOrderDao()),
+            orderRepository,
             NotificationService(FirebaseFirestore.getInstance(), context)
         )
     )
+    val statsViewModel: StatsViewModel = viewModel(
+        factory = StatsViewModelFactory(orderRepository)
+    )
 
     val eventViewModel: EventViewModel = viewModel(
-        factory = EventViewModelFactory(EventRepository(RealEventDao()))
+        factory = EventViewModelFactory(EventRepository(RealEventDao(), EventSearchIndex))
     )
 
+    // One-time move of reviews still embedded in product documents; a no-op query once none are left
+    LaunchedEffect(Unit) {
+        productViewModel.migrateEmbeddedReviews()
+    }
+
     NavHost(navController = navController, startDestination = Screen.AdminHome.route) {
-        composable(Screen.AdminHome.route) { AdminHomeScreen(navController, authViewModel, rootNavController, orderViewModel, productViewModel, userViewModel) }
+        composable(Screen.AdminHome.route) { AdminHomeScreen(navController, authViewModel, rootNavController, orderViewModel, statsViewModel, productViewModel, userViewModel) }
 
         composable(Screen.ProductManagement.route) {
             ProductManagementScreen(
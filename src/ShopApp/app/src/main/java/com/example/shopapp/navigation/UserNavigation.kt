@@ -37,9 +37,11 @@ import androidx.navigation.compose.composable
 import androidx.navigation.compose.currentBackStackEntryAsState
 import androidx.navigation.compose.rememberNavController
 import com.example.shopapp.data.CartDatabase
+import com.example.shopapp.data.cache.ProductCatalogCache
 import com.example.shopapp.data.dao.FirebaseNotificationDao
 import com.example.shopapp.data.dao.FirebaseOrderDao
 import com.example.shopapp.data.dao.FirebaseProductDao
+import com.example.shopapp.data.dao.FirebaseReviewDao
 import com.example.shopapp.data.dao.FirebaseUserDao
 import com.example.shopapp.data.model.OrderFirebase
 import com.example.shopapp.data.repository.CartRepository
@@ -48,6 +50,7 @@ import com.example.shopapp.data.repository.OrderRepositoryFirebase
 import com.example.shopapp.data.repository.PaymentRepository
 import com.example.shopapp.data.repository.ProductRepository
 import com.example.shopapp.data.repository.UserKRepository
+import com.example.shopapp.data.search.ProductSearchIndex
 import com.example.shopapp.ui.search.SearchScreen
 import com.example.shopapp.ui.user.AllReviewsScreen
 import com.example.shopapp.ui.user.ImageDetailScreen
@@ -127,7 +130,12 @@ fun UserNavigation(authViewModel: AuthViewModel, rootNavController: NavControlle
 
     val currentUserId = FirebaseAuth.getInstance().currentUser?.uid ?: ""
 
-    val productRepository = ProductRepository(FirebaseProductDao())
+    val productRepository = ProductRepository(
+        FirebaseProductDao(),
+        ProductSearchIndex.getInstance(LocalContext.current),
+        FirebaseReviewDao(),
+        ProductCatalogCache.getInstance(LocalContext.current)
+    )
     val database = CartDatabase.getDatabase(LocalContext.current)
     val cartRepository = CartRepository(database.cartDao())
     val orderRepository = OrderRepositoryFirebase(FirebaseOrderDao())
@@ -261,7 +269,7 @@ fun UserNavigation(authViewModel: AuthViewModel, rootNavController: NavControlle
             }
 
             composable(Screen.Carts.route) {
-                CartScreen(navController, cartViewModel)
+                CartScreen(navController, cartViewModel, productViewModel)
             }
 
             composable(Screen.Orders.route) {
@@ -8,17 +8,28 @@ import android.util.Log
 import com.cloudinary.android.MediaManager
 import com.cloudinary.android.callback.ErrorInfo
 import com.cloudinary.android.callback.UploadCallback
+import com.example.shopapp.data.model.UploadProgress
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
 import java.io.File
 import java.io.FileOutputStream
 import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
 
 class CloudinaryService(private val context: Context) {
 
-    // Process image before uploading
-    private suspend fun processImage(uri: Uri, maxWidth: Int = 1024, quality: Int = 80): File = withContext(Dispatchers.IO) {
+    // Process image before uploading. Decoding and JPEG compression are CPU-bound, so this runs on
+    // Dispatchers.Default and leaves the IO threads to the uploads. The scaled JPEG goes into target,
+    // which the caller creates and deletes, so no file outlives a failure or a cancellation.
+    private suspend fun processImage(uri: Uri, target: File, maxWidth: Int = 1024, quality: Int = 80): Unit = withContext(Dispatchers.Default) {
         try {
             // Get input stream from URI
             val inputStream = context.contentResolver.openInputStream(uri)
@@ -44,11 +55,8 @@ class CloudinaryService(private val context: Context) {
             val bitmap = BitmapFactory.decodeStream(newInputStream, null, scaledOptions)
             newInputStream?.close()
 
-            // Create temporary file for the processed image
-            val tempFile = File.createTempFile("optimized_", ".jpg", context.cacheDir)
-
             // Compress and save to the temporary file
-            FileOutputStream(tempFile).use { outputStream ->
+            FileOutputStream(target).use { outputStream ->
                 bitmap?.compress(Bitmap.CompressFormat.JPEG, quality, outputStream)
             }
 
@@ -56,9 +64,7 @@ class CloudinaryService(private val context: Context) {
 
             Log.d("CloudinaryService", "Image processed: Original size: ${options.outWidth}x${options.outHeight}, " +
                     "New size: ${bitmap?.width}x${bitmap?.height}, " +
-                    "File size: ${tempFile.length() / 1024}KB")
-
-            return@withContext tempFile
+                    "File size: ${target.length() / 1024}KB")
         } catch (e: Exception) {
             Log.e("CloudinaryService", "Error processing image: ${e.message}")
             throw e
@@ -67,51 +73,121 @@ class CloudinaryService(private val context: Context) {
 
     suspend fun uploadImage(uri: Uri): Result<String> {
         return try {
-            // First process the image
-            val processedFile = processImage(uri)
-
-            // Then upload using suspendCancellableCoroutine
-            suspendCancellableCoroutine { continuation ->
-                val requestId = MediaManager.get().upload(processedFile.path)
-                    .option("folder", "shopapp")
-                    .callback(object : UploadCallback {
-                        override fun onStart(requestId: String) {
-                            Log.d("CloudinaryService", "Upload started")
-                        }
+            val processedFile = createProcessedFile()
+            try {
+                // First process the image
+                processImage(uri, processedFile)
+                Result.success(uploadFile(processedFile) { _, _ -> })
+            } finally {
+                processedFile.delete()
+            }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Log.e("CloudinaryService", "Error during upload: ${e.message}")
+            Result.failure(e)
+        }
+    }
 
-                        override fun onProgress(requestId: String, bytes: Long, totalBytes: Long) {
-                            val progress = (bytes * 100) / totalBytes
-                            Log.d("CloudinaryService", "Upload progress: $progress%")
-                        }
+    // Images are processed at most MAX_CONCURRENT_DECODES at a time, since each decode holds a bitmap,
+    // and uploaded once processed, with at most maxConcurrentUploads uploads running. The first failure fails the batch and cancels the other
+    // uploads, and so does cancelling the collector.
+    fun uploadImages(uris: List<Uri>, maxConcurrentUploads: Int = MAX_CONCURRENT_UPLOADS): Flow<UploadProgress> = channelFlow {
+        val total = uris.size
+        if (total == 0) {
+            send(UploadProgress(0, 0, 1f, emptyList()))
+            return@channelFlow
+        }
 
-                        override fun onSuccess(requestId: String, resultData: Map<*, *>) {
-                            val url = resultData["secure_url"] as String
-                            // Delete the temporary file
-                            processedFile.delete()
-                            continuation.resume(Result.success(url))
-                        }
+        val lock = Any()
+        val fractions = FloatArray(total)
+        val urls = arrayOfNulls<String>(total)
+        var completed = 0
 
-                        override fun onError(requestId: String, error: ErrorInfo) {
-                            Log.e("CloudinaryService", "Upload error: ${error.description}")
-                            // Delete the temporary file
-                            processedFile.delete()
-                            continuation.resume(Result.failure(Exception(error.description)))
-                        }
+        // Processing counts for the first tenth of an image, the upload for the rest
+        fun report(index: Int, fraction: Float) {
+            val progress = synchronized(lock) {
+                fractions[index] = fraction
+                UploadProgress(completed, total, fractions.sum() / total)
+            }
+            trySend(progress)
+        }
 
-                        override fun onReschedule(requestId: String, error: ErrorInfo) {
-                            Log.e("CloudinaryService", "Upload rescheduled: ${error.description}")
+        val decodeSlots = Semaphore(MAX_CONCURRENT_DECODES)
+        val uploadSlots = Semaphore(maxConcurrentUploads)
+        coroutineScope {
+            uris.forEachIndexed { index, uri ->
+                launch {
+                    val processedFile = createProcessedFile()
+                    try {
+                        decodeSlots.withPermit { processImage(uri, processedFile) }
+                        report(index, PROCESSED_FRACTION)
+                        val url = uploadSlots.withPermit {
+                            uploadFile(processedFile) { bytes, totalBytes ->
+                                if (totalBytes > 0) {
+                                    report(index, PROCESSED_FRACTION + (1 - PROCESSED_FRACTION) * bytes / totalBytes)
+                                }
+                            }
                         }
-                    })
-                    .dispatch()
-
-                continuation.invokeOnCancellation {
-                    MediaManager.get().cancelRequest(requestId)
-                    processedFile.delete()
+                        val progress = synchronized(lock) {
+                            urls[index] = url
+                            fractions[index] = 1f
+                            completed++
+                            UploadProgress(completed, total, fractions.sum() / total)
+                        }
+                        send(progress)
+                    } finally {
+                        processedFile.delete()
+                    }
                 }
             }
-        } catch (e: Exception) {
-            Log.e("CloudinaryService", "Error during upload: ${e.message}")
-            Result.failure(e)
         }
+
+        Log.d("CloudinaryService", "Uploaded $total images")
+        send(UploadProgress(total, total, 1f, urls.map { it!! }))
+    }
+
+    private fun createProcessedFile(): File = File.createTempFile("optimized_", ".jpg", context.cacheDir)
+
+    // Throws when Cloudinary reports an error; cancelling the caller cancels the request
+    private suspend fun uploadFile(file: File, onProgress: (Long, Long) -> Unit): String {
+        return suspendCancellableCoroutine { continuation ->
+            val requestId = MediaManager.get().upload(file.path)
+                .option("folder", "shopapp")
+                .callback(object : UploadCallback {
+                    override fun onStart(requestId: String) {
+                        Log.d("CloudinaryService", "Upload started")
+                    }
+
+                    override fun onProgress(requestId: String, bytes: Long, totalBytes: Long) {
+                        onProgress(bytes, totalBytes)
+                    }
+
+                    override fun onSuccess(requestId: String, resultData: Map<*, *>) {
+                        val url = resultData["secure_url"] as String
+                        continuation.resume(url)
+                    }
+
+                    override fun onError(requestId: String, error: ErrorInfo) {
+                        Log.e("CloudinaryService", "Upload error: ${error.description}")
+                        continuation.resumeWithException(Exception(error.description))
+                    }
+
+                    override fun onReschedule(requestId: String, error: ErrorInfo) {
+                        Log.e("CloudinaryService", "Upload rescheduled: ${error.description}")
+                    }
+                })
+                .dispatch()
+
+            continuation.invokeOnCancellation {
+                MediaManager.get().cancelRequest(requestId)
+            }
+        }
+    }
+
+    companion object {
+        private const val MAX_CONCURRENT_UPLOADS = 4
+        private const val MAX_CONCURRENT_DECODES = 2
+        private const val PROCESSED_FRACTION = 0.1f
     }
-}
\ No newline at end of file
+}
@@ -2,10 +2,24 @@ package com.example.shopapp.services
 
 import android.content.Context
 import android.util.Log
+import com.example.shopapp.data.OutboxDatabase
+import com.example.shopapp.data.cache.CoalescingLruCache
+import com.example.shopapp.data.dao.FirebaseNotificationDao
 import com.example.shopapp.data.model.Order
+import com.example.shopapp.data.model.OrderStatusNotification
+import com.example.shopapp.data.model.OutboxEntry
 import com.google.auth.oauth2.GoogleCredentials
+import com.google.firebase.firestore.FieldPath
 import com.google.firebase.firestore.FirebaseFirestore
+import com.google.gson.Gson
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.tasks.await
 import kotlinx.coroutines.withContext
 import okhttp3.*
@@ -14,54 +28,113 @@ import okhttp3.RequestBody.Companion.toRequestBody
 import org.json.JSONObject
 import java.io.IOException
 import java.io.InputStream
+import java.util.concurrent.TimeUnit
 
 class NotificationService(
     private val firestore: FirebaseFirestore,
     private val context: Context
 ) {
-    private val client = OkHttpClient()
     private val fcmUrl = "https://fcm.googleapis.com/v1/projects/shopandroid-86863/messages:send"
-    private val scope = "https://www.googleapis.com/auth/firebase.messaging"
 
-    // Cache the access token
-    private var accessToken: String? = null
-    private var tokenExpiration: Long = 0
+    private val gson = Gson()
+    private val outboxDao by lazy { OutboxDatabase.getDatabase(context).outboxDao() }
 
+    // Recorded in the Room outbox and delivered by OutboxWorker, so the push and the inbox record
+    // survive the caller's scope, the process and network loss
     suspend fun sendOrderStatusNotification(order: Order, userId: String) {
-        try {
-            // Get the FCM token for the user
-            val userDoc = firestore.collection("users").document(userId)
-                .get().await()
-
-            val fcmToken = userDoc.getString("fcmToken") ?: return
+        sendOrderStatusNotifications(listOf(order.copy(userId = userId)))
+    }
 
-            // Build the notification payload
-            val title = "Order Status Updated"
-            val message = "Your order #${order.orderId} is currently shipping!"
+    suspend fun sendOrderStatusNotifications(orders: List<Order>) {
+        val now = System.currentTimeMillis()
+        val entries = orders.map { order ->
+            OutboxEntry(
+                idempotencyKey = "order_${order.orderId}_${order.status}_$now",
+                type = OutboxEntry.TYPE_ORDER_STATUS_NOTIFICATION,
+                payload = gson.toJson(OrderStatusNotification(order.userId, order.orderId, order.status)),
+                createdAt = now
+            )
+        }
+        outboxDao.insertAll(entries)
+        OutboxWorker.enqueue(context)
+        Log.d("NotificationService", "Queued ${entries.size} order status notifications")
+    }
 
-            sendNotification(fcmToken, title, message, mapOf(
-                "orderId" to order.orderId,
-                "orderStatus" to order.status,
-                "notificationType" to "ORDER_STATUS_UPDATE"
-            ))
+    // Called by OutboxWorker with entries oldest first. Returns the keys that are finished; the rest
+    // are retried later. One token lookup per batch and a bounded number of concurrent FCM calls.
+    suspend fun deliverOrderStatusNotifications(entries: List<OutboxEntry>): Set<String> {
+        val notifications = entries.map { it.idempotencyKey to gson.fromJson(it.payload, OrderStatusNotification::class.java) }
 
-            // Save the notification to Firestore for in-app display
-            saveNotification(userId, title, message, order.orderId)
+        // Several updates to the same order collapse into the latest; the older ones are finished as is
+        val latest = notifications.groupBy { (_, notification) -> notification.userId to notification.orderId }
+            .values
+            .map { it.last() }
+        val superseded = notifications.map { it.first }.toSet() - latest.map { it.first }.toSet()
 
-        } catch (e: Exception) {
-            Log.e("NotificationService", "Failed to send notification", e)
+        val tokens = getFcmTokens(latest.map { it.second.userId }.distinct())
+        val accessToken = getAccessToken(context)
+        val sendLimit = Semaphore(MAX_IN_FLIGHT)
+        val delivered = coroutineScope {
+            latest.map { (key, notification) ->
+                async {
+                    sendLimit.withPermit {
+                        if (deliver(key, notification, tokens[notification.userId], accessToken)) key else null
+                    }
+                }
+            }.awaitAll().filterNotNull()
         }
+
+        Log.d("NotificationService", "Delivered ${delivered.size} of ${latest.size} notifications")
+        return superseded + delivered
+    }
+
+    // Users without an FCM token get neither a push nor an inbox record, as before
+    private suspend fun deliver(
+        key: String,
+        notification: OrderStatusNotification,
+        fcmToken: String?,
+        accessToken: String
+    ): Boolean {
+        if (fcmToken == null) return true
+
+        val title = "Order Status Updated"
+        val message = "Your order #${notification.orderId} is currently shipping!"
+
+        // The inbox record goes first: it is keyed by the outbox entry, so a retry does not repeat it
+        if (!saveNotification(key, notification.userId, title, message, notification.orderId)) return false
+        return sendNotification(accessToken, key, notification.userId, fcmToken, title, message, mapOf(
+            "orderId" to notification.orderId,
+            "orderStatus" to notification.orderStatus,
+            "notificationType" to "ORDER_STATUS_UPDATE"
+        ))
+    }
+
+    // fcmToken of each user, read in whereIn chunks and kept for a few minutes. A failed read throws,
+    // so the worker retries the batch instead of treating everyone as having no token.
+    private suspend fun getFcmTokens(userIds: List<String>): Map<String, String> {
+        return fcmTokenCache.getAll(userIds) { missing ->
+            missing.chunked(WHERE_IN_LIMIT).flatMap { chunk ->
+                firestore.collection("users")
+                    .whereIn(FieldPath.documentId(), chunk)
+                    .get()
+                    .await()
+                    .documents
+                    .mapNotNull { doc -> doc.getString("fcmToken")?.let { FcmToken(doc.id, it) } }
+            }
+        }.associate { it.userId to it.token }
     }
 
+    // False when the send should be retried; a rejected device token counts as finished
     private suspend fun sendNotification(
+        accessToken: String,
+        key: String,
+        userId: String,
         token: String,
         title: String,
         message: String,
         data: Map<String, String> = emptyMap()
-    ) = withContext(Dispatchers.IO) {
+    ): Boolean = withContext(Dispatchers.IO) {
         try {
-            val accessToken = getAccessToken()
-
             // Build the FCM HTTP v1 API payload
             val json = JSONObject().apply {
                 put("message", JSONObject().apply {
@@ -77,6 +150,8 @@ class NotificationService(
                     put("android", JSONObject().apply {
                         put("priority", "high")
                         put("notification", JSONObject().apply {
+                            // A repeated delivery replaces the earlier one on the device
+                            put("tag", key)
                             put("sound", "default")
                             put("default_sound", true)
                             put("default_vibrate_timings", true)
@@ -87,8 +162,8 @@ class NotificationService(
                     // Data payload
                     if (data.isNotEmpty()) {
                         val dataJson = JSONObject()
-                        data.forEach { (key, value) ->
-                            dataJson.put(key, value)
+                        data.forEach { (name, value) ->
+                            dataJson.put(name, value)
                         }
                         put("data", dataJson)
                     }
@@ -108,53 +183,33 @@ class NotificationService(
             client.newCall(request).execute().use { response ->
                 if (!response.isSuccessful) {
                     val responseBody = response.body?.string() ?: "No response body"
+                    // The device token is gone or stale; read it again next time
+                    if (response.code == 404 || response.code == 400) {
+                        fcmTokenCache.invalidate(listOf(userId))
+                        Log.e("NotificationService", "FCM rejected the token of $userId: $responseBody")
+                        return@withContext true
+                    }
                     throw IOException("Unexpected code $response: $responseBody")
                 } else {
                     Log.d("NotificationService", "Notification sent successfully")
                 }
             }
+            true
         } catch (e: Exception) {
             Log.e("NotificationService", "Error sending FCM notification", e)
-        }
-    }
-
-    private suspend fun getAccessToken(): String = withContext(Dispatchers.IO) {
-        val currentTime = System.currentTimeMillis()
-
-        // Return cached token if it's still valid
-        if (accessToken != null && currentTime < tokenExpiration - 60000) {
-            return@withContext accessToken!!
-        }
-
-        try {
-            // Load the service account JSON file from assets
-            val serviceAccountStream: InputStream = context.assets.open("shopandroid-86863-firebase-adminsdk-fbsvc-74df904fd1.json")
-
-            // Get access token with FCM API scope
-            val credentials = GoogleCredentials
-                .fromStream(serviceAccountStream)
-                .createScoped(listOf(scope))
-
-            credentials.refresh()
-
-            accessToken = credentials.accessToken.tokenValue
-            tokenExpiration = credentials.accessToken.expirationTime.time
-
-            return@withContext accessToken!!
-        } catch (e: Exception) {
-            Log.e("NotificationService", "Error getting access token", e)
-            throw e
+            false
         }
     }
 
     private suspend fun saveNotification(
+        key: String,
         userId: String,
         title: String,
         message: String,
         orderId: String
-    ) = withContext(Dispatchers.IO) {
-        try {
-            val notification = hashMapOf(
+    ): Boolean {
+        return try {
+            val notification = hashMapOf<String, Any>(
                 "userId" to userId,
                 "title" to title,
                 "message" to message,
@@ -162,12 +217,69 @@ class NotificationService(
                 "timestamp" to System.currentTimeMillis(),
                 "isRead" to false
             )
-
-            firestore.collection("notifications")
-                .add(notification)
-                .await()
+            firestore.runTransaction { transaction ->
+                FirebaseNotificationDao.addUnreadOnce(firestore, transaction, key, notification, userId)
+            }.await()
+            true
         } catch (e: Exception) {
             Log.e("NotificationService", "Error saving notification", e)
+            false
+        }
+    }
+
+    private data class FcmToken(val userId: String, val token: String)
+
+    companion object {
+        private const val SCOPE = "https://www.googleapis.com/auth/firebase.messaging"
+        private const val MAX_IN_FLIGHT = 8
+        private const val WHERE_IN_LIMIT = 30
+
+        // One connection pool for every service instance, sized for MAX_IN_FLIGHT parallel calls to FCM
+        private val client = OkHttpClient.Builder()
+            .connectionPool(ConnectionPool(MAX_IN_FLIGHT, 5, TimeUnit.MINUTES))
+            .dispatcher(Dispatcher().apply { maxRequestsPerHost = MAX_IN_FLIGHT })
+            .build()
+
+        private val fcmTokenCache = CoalescingLruCache<FcmToken>("FcmTokenCache", 500, 10 * 60_000L) { it.userId }
+
+        // The OAuth token is process-wide; the credentials are loaded from assets once
+        private val tokenLock = Mutex()
+        private var credentials: GoogleCredentials? = null
+        private var accessToken: String? = null
+        private var tokenExpiration: Long = 0
+
+        private suspend fun getAccessToken(context: Context): String = withContext(Dispatchers.IO) {
+            tokenLock.withLock {
+                val currentTime = System.currentTimeMillis()
+
+                // Return cached token if it's still valid
+                accessToken?.let { token ->
+                    if (currentTime < tokenExpiration - 60000) return@withContext token
+                }
+
+                try {
+                    val scoped = credentials ?: run {
+                        // Load the service account JSON file from assets
+                        val serviceAccountStream: InputStream = context.applicationContext.assets
+                            .open("shopandroid-86863-firebase-adminsdk-fbsvc-74df904fd1.json")
+
+                        // Get access token with FCM API scope
+                        serviceAccountStream.use {
+                            GoogleCredentials.fromStream(it).createScoped(listOf(SCOPE))
+                        }.also { credentials = it }
+                    }
+
+                    scoped.refresh()
+
+                    val token = scoped.accessToken.tokenValue
+                    accessToken = token
+                    tokenExpiration = scoped.accessToken.expirationTime.time
+                    token
+                } catch (e: Exception) {
+                    Log.e("NotificationService", "Error getting access token", e)
+                    throw e
+                }
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+package com.example.shopapp.services
+
+import android.content.Context
+import android.util.Log
+import androidx.work.BackoffPolicy
+import androidx.work.Constraints
+import androidx.work.CoroutineWorker
+import androidx.work.ExistingWorkPolicy
+import androidx.work.NetworkType
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import com.example.shopapp.data.OutboxDatabase
+import com.example.shopapp.data.model.OutboxEntry
+import com.google.firebase.firestore.FirebaseFirestore
+import java.util.concurrent.TimeUnit
+
+// Drains the Room outbox in batches once the device is online. Finished entries are deleted; failed
+// ones count an attempt and the work is retried with exponential backoff.
+class OutboxWorker(
+    context: Context,
+    params: WorkerParameters
+) : CoroutineWorker(context, params) {
+
+    override suspend fun doWork(): Result {
+        val outboxDao = OutboxDatabase.getDatabase(applicationContext).outboxDao()
+        val notificationService = NotificationService(FirebaseFirestore.getInstance(), applicationContext)
+        var failed = false
+
+        while (true) {
+            val batch = outboxDao.pending(BATCH_SIZE, MAX_ATTEMPTS)
+            if (batch.isEmpty()) break
+
+            val finished = try {
+                val byType = batch.groupBy { it.type }
+                byType.flatMap { (type, entries) ->
+                    when (type) {
+                        OutboxEntry.TYPE_ORDER_STATUS_NOTIFICATION ->
+                            notificationService.deliverOrderStatusNotifications(entries)
+                        else -> {
+                            Log.e(TAG, "Dropping ${entries.size} outbox entries of unknown type $type")
+                            entries.map { it.idempotencyKey }
+                        }
+                    }
+                }.toSet()
+            } catch (e: Exception) {
+                Log.e(TAG, "Outbox batch failed: ${e.message}")
+                emptySet()
+            }
+
+            outboxDao.delete(finished.toList())
+            val remaining = batch.map { it.idempotencyKey }.filter { it !in finished }
+            if (remaining.isNotEmpty()) {
+                outboxDao.markFailed(remaining, "Delivery failed on attempt ${runAttemptCount + 1}")
+                failed = true
+                // Leave the rest for the retry rather than spinning on the same entries
+                break
+            }
+        }
+
+        Log.d(TAG, "Outbox drained, retry needed: $failed")
+        return if (failed) Result.retry() else Result.success()
+    }
+
+    companion object {
+        private const val TAG = "OutboxWorker"
+        private const val WORK_NAME = "outbox"
+        private const val BATCH_SIZE = 200
+        private const val MAX_ATTEMPTS = 10
+
+        // Appends to a running drain, so entries recorded while it works are picked up right after
+        fun enqueue(context: Context) {
+            val request = OneTimeWorkRequestBuilder<OutboxWorker>()
+                .setConstraints(
+                    Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build()
+                )
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .build()
+            WorkManager.getInstance(context.applicationContext)
+                .enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.APPEND_OR_REPLACE, request)
+        }
+    }
+}
@@ -23,6 +23,7 @@ import com.example.shopapp.data.model.User
 import com.example.shopapp.navigation.Screen
 import com.example.shopapp.viewmodel.OrderViewModel
 import com.example.shopapp.viewmodel.ProductViewModel
+import com.example.shopapp.viewmodel.StatsViewModel
 import com.example.shopapp.viewmodel.UserViewModel
 import java.text.NumberFormat
 import java.util.Locale
@@ -33,6 +34,7 @@ fun AdminHomeScreen(
     authViewModel: AuthViewModel?,
     rootNavController: NavController?,
     orderViewModel: OrderViewModel,
+    statsViewModel: StatsViewModel,
     productViewModel: ProductViewModel,
     userViewModel: UserViewModel
 ) {
@@ -41,67 +43,18 @@ fun AdminHomeScreen(
     var bestSellerProduct by remember { mutableStateOf<Product?>(null) }
     var bigSpender by remember { mutableStateOf<User?>(null) }
 
-    val deliveredOrders by remember {
-        orderViewModel.loadAllDeliveredOrders()
-        orderViewModel.deliveredOrders
-    }.collectAsState()
-
-    val pendingOrders by remember {
-        orderViewModel.loadAllPendingOrders()
-        orderViewModel.pendingOrders
-    }.collectAsState()
-
-    // Calculate income reports
-    val totalIncome = deliveredOrders.sumOf { it.totalPrice }
-
-    // Get current time to calculate periods
-    val currentTimeMillis = System.currentTimeMillis()
-    val dayInMillis = 24 * 60 * 60 * 1000
-
-    // Daily income (last 24 hours)
-    val dailyIncome = deliveredOrders
-        .filter { order ->
-            val orderTime = order.updatedAt?.toDate()?.time ?: 0L
-            (currentTimeMillis - orderTime) / dayInMillis <= 1
-        }
-        .sumOf { it.totalPrice }
-
-    // Weekly income (last 7 days)
-    val weeklyIncome = deliveredOrders
-        .filter { order ->
-            val orderTime = order.updatedAt?.toDate()?.time ?: 0L
-            (currentTimeMillis - orderTime) / dayInMillis <= 7
-        }
-        .sumOf { it.totalPrice }
-
-    // Monthly income (last 30 days)
-    val monthlyIncome = deliveredOrders
-        .filter { order ->
-            val orderTime = order.updatedAt?.toDate()?.time ?: 0L
-            (currentTimeMillis - orderTime) / dayInMillis <= 30
-        }
-        .sumOf { it.totalPrice }
-
-    // Find best seller product
-    val productSales = mutableMapOf<String, Int>()
-    deliveredOrders.forEach { order ->
-        order.orderDetail.forEach { item ->
-            productSales[item.productId] = (productSales[item.productId] ?: 0) + item.quantity
-        }
+    // Computed in StatsViewModel once per data change, not on every recomposition
+    val stats by statsViewModel.stats.collectAsState()
+    LaunchedEffect(Unit) {
+        statsViewModel.refresh()
     }
 
-    val bestSellerId = productSales.entries.maxByOrNull { it.value }?.key ?: ""
+    val bestSellerId = stats.bestSellerId
     LaunchedEffect(bestSellerId) {
         bestSellerProduct = productViewModel.getProductById(bestSellerId)
     }
 
-    // Find big spender
-    val userSpending = mutableMapOf<String, Double>()
-    deliveredOrders.forEach { order ->
-        userSpending[order.userId] = (userSpending[order.userId] ?: 0.0) + order.totalPrice
-    }
-
-    val bigSpenderId = userSpending.entries.maxByOrNull { it.value }?.key ?: ""
+    val bigSpenderId = stats.bigSpenderId
     LaunchedEffect(bigSpenderId) {
         bigSpender = userViewModel.getUserById(bigSpenderId)
     }
@@ -180,21 +133,21 @@ fun AdminHomeScreen(
                     ) {
                         IncomeReportItem(
                             title = "Daily",
-                            amount = dailyIncome,
+                            amount = stats.dailyIncome,
                             icon = Icons.Default.Today,
                             modifier = Modifier.weight(1f)
                         )
 
                         IncomeReportItem(
                             title = "Weekly",
-                            amount = weeklyIncome,
+                            amount = stats.weeklyIncome,
                             icon = Icons.Default.DateRange,
                             modifier = Modifier.weight(1f)
                         )
 
                         IncomeReportItem(
                             title = "Monthly",
-                            amount = monthlyIncome,
+                            amount = stats.monthlyIncome,
                             icon = Icons.Default.CalendarMonth,
                             modifier = Modifier.weight(1f)
                         )
@@ -213,7 +166,7 @@ fun AdminHomeScreen(
                         )
 
                         Text(
-                            text = formatCurrency(totalIncome),
+                            text = formatCurrency(stats.totalIncome),
                             fontWeight = FontWeight.Bold,
                             fontSize = 18.sp,
                             color = MaterialTheme.colorScheme.primary
@@ -252,7 +205,7 @@ fun AdminHomeScreen(
 
                         StatItem(
                             title = "Delivered",
-                            value = deliveredOrders.size.toString(),
+                            value = stats.deliveredCount.toString(),
                             icon = Icons.Default.CheckCircle,
                             color = Color.Green,
                             modifier = Modifier.weight(1f)
@@ -260,7 +213,7 @@ fun AdminHomeScreen(
 
                         StatItem(
                             title = "Pending",
-                            value = pendingOrders.size.toString(),
+                            value = stats.pendingCount.toString(),
                             icon = Icons.Default.Pending,
                             color = Color.Yellow,
                             modifier = Modifier.weight(1f)
@@ -301,7 +254,7 @@ fun AdminHomeScreen(
                                     )
 
                                     Text(
-                                        text = "${productSales[bestSellerId] ?: 0} units sold",
+                                        text = "${stats.bestSellerUnits} units sold",
                                         fontSize = 14.sp,
                                         color = MaterialTheme.colorScheme.onSurfaceVariant
                                     )
@@ -373,7 +326,7 @@ fun AdminHomeScreen(
                                     )
 
                                     Text(
-                                        text = "Total spent: ${formatCurrency(userSpending[bigSpenderId] ?: 0.0)}",
+                                        text = "Total spent: ${formatCurrency(stats.bigSpenderTotal)}",
                                         fontSize = 14.sp,
                                         fontWeight = FontWeight.Bold,
                                         color = MaterialTheme.colorScheme.primary
@@ -46,6 +46,7 @@ fun OrderManagementScreen(
     val totalCount by orderViewModel.totalCount.collectAsState()
     val pageSize by orderViewModel.pageSize.collectAsState()
     val currentStatusFilter by orderViewModel.currentStatusFilter.collectAsState()
+    val statusCounts by orderViewModel.statusCounts.collectAsState()
 
     var searchQuery by remember { mutableStateOf("") }
     var isSearching by remember { mutableStateOf(false) }
@@ -143,7 +144,7 @@ fun OrderManagementScreen(
                                     orderViewModel.filterOrdersByStatus(status)
                                 }
                             },
-                            label = { Text(status.capitalize()) },
+                            label = { Text("${status.capitalize()} (${statusCounts[status] ?: 0})") },
                             leadingIcon = if (selectedStatus == status) {
                                 { Icon(Icons.Default.Check, null, Modifier.size(18.dp)) }
                             } else null,
@@ -296,7 +297,7 @@ fun OrderManagementScreen(
             LazyColumn(
                 modifier = Modifier.weight(1f)
             ) {
-                items(orders) { order ->
+                items(orders, key = { it.orderId }) { order ->
                     OrderItem(order = order, onOrderClick = onOrderClick)
                 }
 
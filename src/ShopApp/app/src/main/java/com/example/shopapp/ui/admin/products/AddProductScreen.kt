@@ -31,6 +31,8 @@ import com.example.shopapp.data.model.Product
 import com.example.shopapp.services.CloudinaryService
 import com.example.shopapp.viewmodel.ProductViewModel
 import com.google.firebase.Timestamp
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.delay
 import java.util.UUID
@@ -44,6 +46,8 @@ fun AddProductScreen(navController: NavController, viewModel: ProductViewModel)
     val scrollState = rememberScrollState()
     var isUploading by remember { mutableStateOf(false) }
     var uploadError by remember { mutableStateOf<String?>(null) }
+    var uploadProgress by remember { mutableStateOf(0f) }
+    var uploadJob by remember { mutableStateOf<Job?>(null) }
     val cloudinaryService = remember { CloudinaryService(context) }
 
     var title by remember { mutableStateOf("") }
@@ -511,30 +515,25 @@ fun AddProductScreen(navController: NavController, viewModel: ProductViewModel)
                             // Existing save logic
                             showError = false
                             isUploading = true
-                            coroutineScope.launch {
+                            uploadProgress = 0f
+                            uploadJob = coroutineScope.launch {
                                 try {
-                                    // Upload main image first
-                                    val mainImageUrl = cloudinaryService.uploadImage(localMainImageUri!!)
-
-                                    // Upload additional images if present
-                                    val additionalImageUrls = mutableListOf<String>()
-                                    for (uri in localAdditionalImageUris) {
-                                        val result = cloudinaryService.uploadImage(uri)
-                                        val imgUrl = result.getOrNull()
-                                        if (imgUrl != null) {
-                                            additionalImageUrls.add(imgUrl)
-                                        } else {
-                                            uploadError = "Failed to upload additional image"
-                                            isUploading = false
-                                            return@launch
+                                    // Main image and gallery upload together, in one batch
+                                    val mainImageUri = localMainImageUri
+                                    var imageUrls = emptyList<String>()
+                                    cloudinaryService.uploadImages(listOfNotNull(mainImageUri) + localAdditionalImageUris)
+                                        .collect { progress ->
+                                            uploadProgress = progress.fraction
+                                            progress.urls?.let { imageUrls = it }
                                         }
-                                    }
+                                    val mainImageUrl = if (mainImageUri != null) imageUrls.first() else ""
+                                    val additionalImageUrls = if (mainImageUri != null) imageUrls.drop(1) else imageUrls
 
                                     // Create product with all images
                                     val product = Product(
                                         productId = UUID.randomUUID().toString(),
                                         title = title,
-                                        image = mainImageUrl.getOrNull() ?: "",  // Main image
+                                        image = mainImageUrl,  // Main image
                                         images = additionalImageUrls,  // Additional images list
                                         price = price.toDoubleOrNull() ?: 0.0,
                                         description = description,
@@ -557,6 +556,9 @@ fun AddProductScreen(navController: NavController, viewModel: ProductViewModel)
                                     isUploading = false
                                     Toast.makeText(context, "Product added successfully", Toast.LENGTH_SHORT).show()
                                     navController.popBackStack()
+                                } catch (e: CancellationException) {
+                                    isUploading = false
+                                    throw e
                                 } catch (e: Exception) {
                                     isUploading = false
                                     uploadError = "Failed to upload: ${e.message}"
@@ -579,21 +581,36 @@ fun AddProductScreen(navController: NavController, viewModel: ProductViewModel)
                     .background(Color.Black.copy(alpha = 0.5f)),
                 contentAlignment = Alignment.Center
             ) {
-                Card(
-                    modifier = Modifier
-                        .size(100.dp)
-                        .padding(16.dp),
-                    shape = RoundedCornerShape(8.dp),
-                    elevation = CardDefaults.cardElevation(defaultElevation = 8.dp)
-                ) {
-                    Box(
-                        modifier = Modifier.fillMaxSize(),
-                        contentAlignment = Alignment.Center
-                    ) {
-                        CircularProgressIndicator()
+                UploadProgressCard(
+                    progress = uploadProgress,
+                    onCancel = {
+                        uploadJob?.cancel()
+                        isUploading = false
                     }
-                }
+                )
+            }
+        }
+    }
+}
+
+// Shown over the product form while images upload; shared with EditProductScreen
+@Composable
+fun UploadProgressCard(progress: Float, onCancel: () -> Unit) {
+    Card(
+        modifier = Modifier.padding(16.dp),
+        shape = RoundedCornerShape(8.dp),
+        elevation = CardDefaults.cardElevation(defaultElevation = 8.dp)
+    ) {
+        Column(
+            modifier = Modifier.padding(24.dp),
+            horizontalAlignment = Alignment.CenterHorizontally
+        ) {
+            CircularProgressIndicator(progress = { progress })
+            Spacer(modifier = Modifier.height(12.dp))
+            Text("${(progress * 100).toInt()}%")
+            TextButton(onClick = onCancel) {
+                Text("Cancel upload")
             }
         }
     }
-}
\ No newline at end of file
+}
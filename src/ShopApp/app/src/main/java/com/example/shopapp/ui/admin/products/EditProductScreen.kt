@@ -18,6 +18,8 @@ import androidx.compose.ui.platform.LocalContext
 import androidx.navigation.NavController
 import com.example.shopapp.viewmodel.ProductViewModel
 import com.google.firebase.Timestamp
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.launch
 import android.net.Uri
 import androidx.activity.compose.rememberLauncherForActivityResult
@@ -49,6 +51,8 @@ fun EditProductScreen(
 
     var isUploading by remember { mutableStateOf(false) }
     var uploadError by remember { mutableStateOf<String?>(null) }
+    var uploadProgress by remember { mutableStateOf(0f) }
+    var uploadJob by remember { mutableStateOf<Job?>(null) }
     val cloudinaryService = remember { CloudinaryService(context) }
     val coroutineScope = rememberCoroutineScope()
     val scrollState = rememberScrollState()
@@ -561,30 +565,22 @@ fun EditProductScreen(
                         } else {
                             showError = false
                             isUploading = true
-                            coroutineScope.launch {
+                            uploadProgress = 0f
+                            uploadJob = coroutineScope.launch {
                                 try {
-                                    // Handle main image update if needed
-                                    val finalMainImageUrl = if (localMainImageUri != null) {
-                                        cloudinaryService.uploadImage(localMainImageUri!!).getOrNull() ?: mainImage
-                                    } else {
-                                        mainImage
-                                    }
+                                    // A new main image and any new additional images upload together, in one batch
+                                    val mainImageUri = localMainImageUri
+                                    var imageUrls = emptyList<String>()
+                                    cloudinaryService.uploadImages(listOfNotNull(mainImageUri) + localAdditionalImageUris)
+                                        .collect { progress ->
+                                            uploadProgress = progress.fraction
+                                            progress.urls?.let { imageUrls = it }
+                                        }
+                                    val finalMainImageUrl = if (mainImageUri != null) imageUrls.first() else mainImage
 
                                     // Handle additional images update
-                                    val finalAdditionalImages = additionalImages.toMutableList()
-
-                                    // Upload any new additional images
-                                    for (uri in localAdditionalImageUris) {
-                                        val result = cloudinaryService.uploadImage(uri)
-                                        val imgUrl = result.getOrNull()
-                                        if (imgUrl != null) {
-                                            finalAdditionalImages.add(imgUrl)
-                                        } else {
-                                            uploadError = "Failed to upload additional image"
-                                            isUploading = false
-                                            return@launch
-                                        }
-                                    }
+                                    val finalAdditionalImages = additionalImages +
+                                        if (mainImageUri != null) imageUrls.drop(1) else imageUrls
 
                                     // Update product
                                     val updatedProduct = product.copy(
@@ -612,6 +608,9 @@ fun EditProductScreen(
                                         Toast.LENGTH_SHORT
                                     ).show()
                                     navController.popBackStack()
+                                } catch (e: CancellationException) {
+                                    isUploading = false
+                                    throw e
                                 } catch (e: Exception) {
                                     isUploading = false
                                     uploadError = "Failed to update: ${e.message}"
@@ -634,20 +633,13 @@ fun EditProductScreen(
                     .background(Color.Black.copy(alpha = 0.5f)), // Semi-transparent dark background
                 contentAlignment = Alignment.Center
             ) {
-                Card(
-                    modifier = Modifier
-                        .size(100.dp)
-                        .padding(16.dp),
-                    shape = RoundedCornerShape(8.dp),
-                    elevation = CardDefaults.cardElevation(defaultElevation = 8.dp)
-                ) {
-                    Box(
-                        modifier = Modifier.fillMaxSize(),
-                        contentAlignment = Alignment.Center
-                    ) {
-                        CircularProgressIndicator()
+                UploadProgressCard(
+                    progress = uploadProgress,
+                    onCancel = {
+                        uploadJob?.cancel()
+                        isUploading = false
                     }
-                }
+                )
             }
         }
     }
@@ -45,6 +45,12 @@ fun ProductDetailScreen(
         return
     }
 
+    val reviews by productViewModel.reviews.collectAsState()
+    val hasMoreReviews by productViewModel.hasMoreReviews.collectAsState()
+    LaunchedEffect(product.productId) {
+        productViewModel.loadReviews(product.productId)
+    }
+
     // State for tracking selected image in the gallery
     var selectedImageIndex by remember { mutableStateOf(0) }
 
@@ -302,19 +308,24 @@ fun ProductDetailScreen(
                     verticalArrangement = Arrangement.spacedBy(8.dp)
                 ) {
                     Text(
-                        text = "Reviews (${product.review.size})",
+                        text = "Reviews (${product.ratingCount})",
                         style = MaterialTheme.typography.titleMedium
                     )
-                    if (product.review.isEmpty()) {
+                    if (reviews.isEmpty()) {
                         Text(
                             text = "No reviews yet",
                             style = MaterialTheme.typography.bodyMedium,
                             color = MaterialTheme.colorScheme.onSurfaceVariant
                         )
                     } else {
-                        product.review.forEach { review ->
+                        reviews.forEach { review ->
                             ReviewItem(review)
                         }
+                        if (hasMoreReviews) {
+                            TextButton(onClick = { productViewModel.loadMoreReviews() }) {
+                                Text("Load more reviews")
+                            }
+                        }
                     }
                 }
             }
@@ -104,10 +104,8 @@ fun ProductCard(
                         verticalAlignment = Alignment.CenterVertically,
                         horizontalArrangement = Arrangement.Center
                     ) {
-                        val avgRating = if (product.review.isEmpty()) 0.0
-                        else product.review.map { it.rating }.average()
                         Text(
-                            text = String.format("%.1f", avgRating),
+                            text = String.format("%.1f", product.averageRating),
                             color = Color.White,
                             fontSize = 12.sp,
                             fontWeight = FontWeight.Bold
@@ -27,21 +27,14 @@ import com.example.shopapp.navigation.Screen
 import com.example.shopapp.ui.components.ProductCard
 import com.example.shopapp.viewmodel.ProductViewModel
 import com.example.shopapp.viewmodel.SearchViewModel
-import kotlinx.coroutines.FlowPreview
-import kotlinx.coroutines.flow.MutableStateFlow
-import kotlinx.coroutines.flow.debounce
-import kotlinx.coroutines.flow.distinctUntilChanged
-import kotlinx.coroutines.flow.filter
-import kotlinx.coroutines.launch
 
-@OptIn(ExperimentalMaterial3Api::class, FlowPreview::class)
+@OptIn(ExperimentalMaterial3Api::class)
 @Composable
 fun SearchScreen(
     navController: NavController,
     productViewModel: ProductViewModel,
     searchViewModel: SearchViewModel
 ) {
-    val coroutineScope = rememberCoroutineScope()
     var searchQuery by remember { mutableStateOf("") }
     val focusRequester = remember { FocusRequester() }
     val focusManager = LocalFocusManager.current
@@ -59,28 +52,14 @@ fun SearchScreen(
     val priceRange by searchViewModel.priceRange.collectAsState(initial = 0f..10000f)
     val minRating by searchViewModel.minRating.collectAsState(initial = 0)
 
-    // Create a debounced search flow
-    val searchFlow = remember { MutableStateFlow("") }
-
     LaunchedEffect(Unit) {
         // Request focus on search field when entering screen
         focusRequester.requestFocus()
-
-        // Setup debounced search
-        searchFlow
-            .debounce(300) // Wait for 300ms of inactivity before searching
-            .filter { it.length >= 2 } // Only search for queries with at least 2 characters
-            .distinctUntilChanged()
-            .collect { query ->
-                if (query.isNotEmpty()) {
-                    searchViewModel.searchProducts(query)
-                }
-            }
     }
 
-    // Update search flow when query changes
+    // Debounce and cancellation of stale queries happen in the view model
     LaunchedEffect(searchQuery) {
-        searchFlow.value = searchQuery
+        searchViewModel.onQueryChanged(searchQuery)
     }
 
     Scaffold(
@@ -109,9 +88,7 @@ fun SearchScreen(
                             ),
                             keyboardActions = KeyboardActions(
                                 onSearch = {
-                                    coroutineScope.launch {
-                                        searchFlow.value = searchQuery
-                                    }
+                                    searchViewModel.onQueryChanged(searchQuery)
                                     focusManager.clearFocus()
                                 }
                             )
@@ -69,8 +69,12 @@ fun AllReviewsScreen(
     val context = LocalContext.current
     var quantity by remember { mutableStateOf(1) }
 
-    // Sắp xếp reviews theo thời gian
-    val allReviews = product?.review?.sortedByDescending { it.createdAt?.toDate() } ?: emptyList()
+    // Reviews đã được sắp xếp theo thời gian, tải thêm từng trang khi cần
+    val allReviews by productViewModel.reviews.collectAsState()
+    val hasMoreReviews by productViewModel.hasMoreReviews.collectAsState()
+    LaunchedEffect(productId) {
+        if (productViewModel.reviewsProductId != productId) productViewModel.loadReviews(productId)
+    }
     Log.d("AllReviewsScreen", "allReviews.size = ${allReviews.size}")
 
     val callbackManager = CallbackManager.Factory.create()
@@ -92,12 +96,11 @@ fun AllReviewsScreen(
     var reviewToDelete by remember { mutableStateOf<Review?>(null) }
 
     // username cho từng review
-    LaunchedEffect(product) {
-        product?.review?.forEach { review ->
-            if (!userNames.containsKey(review.userId)) {
-                val user = authRepository.getUserById(review.userId)
-                userNames[review.userId] = user?.username ?: "Unknown User"
-            }
+    LaunchedEffect(allReviews) {
+        val missing = allReviews.map { it.userId }.distinct().filter { !userNames.containsKey(it) }
+        if (missing.isNotEmpty()) {
+            val users = authRepository.getUsersByIds(missing).associateBy { it.userId }
+            missing.forEach { userId -> userNames[userId] = users[userId]?.username ?: "Unknown User" }
         }
     }
 
@@ -166,12 +169,12 @@ fun AllReviewsScreen(
                 verticalArrangement = Arrangement.spacedBy(12.dp)
             ) {
                 Text(
-                    text = "Reviews (${it.review.size})",
+                    text = "Reviews (${it.ratingCount})",
                     fontSize = 16.sp,
                     fontWeight = FontWeight.SemiBold,
                     modifier = Modifier.padding(16.dp)
                 )
-                if (it.review.isNotEmpty()) {
+                if (allReviews.isNotEmpty()) {
                     LazyColumn(
                         modifier = Modifier.fillMaxSize(),
                         verticalArrangement = Arrangement.spacedBy(8.dp)
@@ -187,6 +190,16 @@ fun AllReviewsScreen(
                                 }
                             )
                         }
+                        if (hasMoreReviews) {
+                            item {
+                                TextButton(
+                                    onClick = { productViewModel.loadMoreReviews() },
+                                    modifier = Modifier.fillMaxWidth()
+                                ) {
+                                    Text("Load more reviews")
+                                }
+                            }
+                        }
                     }
                 } else {
                     Text("No reviews yet.", color = Color.Gray)
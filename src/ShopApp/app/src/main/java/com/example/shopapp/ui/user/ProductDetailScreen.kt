@@ -58,7 +58,6 @@ import androidx.compose.material3.TopAppBar
 import androidx.compose.runtime.Composable
 import androidx.compose.runtime.LaunchedEffect
 import androidx.compose.runtime.collectAsState
-import androidx.compose.runtime.derivedStateOf
 import androidx.compose.runtime.getValue
 import androidx.compose.runtime.mutableStateMapOf
 import androidx.compose.runtime.mutableStateOf
@@ -77,9 +76,12 @@ import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
 import androidx.navigation.NavController
 import coil.compose.AsyncImage
-import com.example.shopapp.data.model.OrderFirebase
+import com.example.shopapp.data.ProductDatabase
+import com.example.shopapp.data.dao.FirebasePurchaseDao
+import com.example.shopapp.data.model.Product
 import com.example.shopapp.data.model.Review
 import com.example.shopapp.data.repository.AuthRepository
+import com.example.shopapp.data.repository.PurchaseRepository
 import com.example.shopapp.navigation.Screen
 import com.example.shopapp.ui.components.ProductCard
 import com.example.shopapp.viewmodel.CartViewModel
@@ -87,7 +89,6 @@ import com.example.shopapp.viewmodel.ProductViewModel
 import com.facebook.CallbackManager
 import com.google.firebase.auth.FirebaseAuth
 import com.google.firebase.firestore.FirebaseFirestore
-import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
 
 @OptIn(ExperimentalMaterial3Api::class)
@@ -100,59 +101,32 @@ fun ProductDetailScreen(
     cartViewModel: CartViewModel
 ) {
     val products by productViewModel.products.collectAsState()
-    val product = products.find { it.productId == productId }
+    val relatedProducts by productViewModel.relatedProducts.collectAsState()
+    // Products opened from the suggestions may not be on the loaded page, so they are kept here once
+    // resolved; the suggestion list is replaced as soon as this product's own suggestions load
+    var fetchedProduct by remember(productId) { mutableStateOf<Product?>(null) }
+    val product = products.find { it.productId == productId } ?: fetchedProduct
     val context = LocalContext.current
 
+    LaunchedEffect(productId) {
+        if (products.none { it.productId == productId }) {
+            // Show the suggestion right away, then the full document
+            fetchedProduct = (relatedProducts.sameBrand + relatedProducts.similar).find { it.productId == productId }
+            productViewModel.getProductById(productId)?.let { fetchedProduct = it }
+        }
+    }
+
     // State for quantity selector
     var quantity by remember { mutableStateOf(1) }
 
     // State for "Added to Cart" snackbar
     val snackbarHostState = remember { SnackbarHostState() }
 
-    val isLoading by productViewModel.isLoading.collectAsState()
-    val hasMoreData by productViewModel.hasMoreData.collectAsState()
-    val selectedCategory by productViewModel.selectedCategory.collectAsState()
-    var showEmptyState by remember { mutableStateOf(false) }
-
-    // For pagination
     val listState = rememberLazyListState()
-    val shouldLoadMore = remember {
-        derivedStateOf {
-            val lastVisibleItem = listState.layoutInfo.visibleItemsInfo.lastOrNull()
-
-            // Close to the end of the list and not currently loading
-            lastVisibleItem != null &&
-                    !isLoading &&
-                    hasMoreData &&
-                    lastVisibleItem.index >= listState.layoutInfo.totalItemsCount - 3
-        }
-    }
 
-    // Monitor for pagination using derivedStateOf
-    LaunchedEffect(shouldLoadMore.value) {
-        if (shouldLoadMore.value) {
-            Log.d("Pagination", "Loading next page, current page: ${productViewModel.currentPage.value}")
-            productViewModel.loadNextPage()
-        }
-    }
-
-    // Load related products when product category changes
-    LaunchedEffect(product?.category) {
-        product?.category?.let { category ->
-            if (selectedCategory != category) {
-                productViewModel.filterByCategory(category)
-            }
-        }
-    }
-
-    // Handle empty state display
-    LaunchedEffect(products, isLoading) {
-        if (products.isEmpty() && !isLoading) {
-            delay(700) // delay before showing empty state
-            showEmptyState = true
-        } else {
-            showEmptyState = false
-        }
+    // Related products come from their own query and cache, so the shared products list is left alone
+    LaunchedEffect(product?.productId) {
+        product?.let { productViewModel.loadRelatedProducts(it) }
     }
 
     // State for review
@@ -185,54 +159,39 @@ fun ProductDetailScreen(
     var showDeleteDialog by remember { mutableStateOf(false) }
     var reviewToDelete by remember { mutableStateOf<Review?>(null) }
 
+    // Only the first page of reviews is fetched here; the rest is paged on the All Reviews screen
+    val reviews by productViewModel.reviews.collectAsState()
+    LaunchedEffect(productId) {
+        productViewModel.loadReviews(productId)
+    }
+
     // Download username for each review
-    LaunchedEffect(product) {
-        product?.review?.forEach { review ->
-            if (!userNames.containsKey(review.userId)) {
-                val user = authRepository.getUserById(review.userId)
-                userNames[review.userId] = user?.username ?: "Unknown User"
-            }
+    LaunchedEffect(reviews) {
+        val missing = reviews.map { it.userId }.distinct().filter { !userNames.containsKey(it) }
+        if (missing.isNotEmpty()) {
+            val users = authRepository.getUsersByIds(missing).associateBy { it.userId }
+            missing.forEach { userId -> userNames[userId] = users[userId]?.username ?: "Unknown User" }
         }
     }
 
     // Check if the user has successfully purchased the product
+    val purchaseRepository = remember {
+        PurchaseRepository(
+            ProductDatabase.getDatabase(context).purchasedProductDao(),
+            FirebasePurchaseDao()
+        )
+    }
     LaunchedEffect(userId, productId) {
         Log.d("ProductDetailScreen", "LaunchedEffect running with userId: $userId, productId: $productId")
         if (userId.isNotEmpty() && productId.isNotEmpty()) {
             isCheckingPurchase = true // Bắt đầu kiểm tra
-            val db = FirebaseFirestore.getInstance()
-            db.collection("orders")
-                .whereEqualTo("userId", userId)
-                .whereEqualTo("status", "delivered")
-                .get()
-                .addOnSuccessListener { querySnapshot ->
-                    Log.d("ProductDetailScreen", "Query returned ${querySnapshot.size()} orders")
-                    var purchased = false
-                    for (document in querySnapshot.documents) {
-                        val order = document.toObject(OrderFirebase::class.java)
-                        Log.d("ProductDetailScreen", "Order: $order")
-                        if (order?.orderDetail?.isNotEmpty() == true) {
-                            order.orderDetail.forEach { item ->
-                                Log.d("ProductDetailScreen", "OrderDetail item: $item")
-                                if (item.productId == productId) {
-                                    purchased = true
-                                    Log.d("ProductDetailScreen", "Found matching productId: $productId")
-                                    return@forEach
-                                }
-                            }
-                        }
-                        if (purchased) break
-                    }
-                    Log.d("ProductDetailScreen", "hasPurchased set to: $purchased")
-                    hasPurchased = purchased
-                    isCheckingPurchase = false // Kết thúc kiểm tra
-                }
-                .addOnFailureListener { e ->
-                    Log.e("ProductDetailScreen", "Error checking purchase status: $e")
-                    hasPurchased = false
-                    isCheckingPurchase = false // Kết thúc kiểm tra
-                    Toast.makeText(context, "Unable to verify purchase status", Toast.LENGTH_SHORT).show()
-                }
+            val purchased = purchaseRepository.hasPurchased(userId, productId)
+            hasPurchased = purchased == true
+            Log.d("ProductDetailScreen", "hasPurchased set to: $hasPurchased")
+            isCheckingPurchase = false // Kết thúc kiểm tra
+            if (purchased == null) {
+                Toast.makeText(context, "Unable to verify purchase status", Toast.LENGTH_SHORT).show()
+            }
         } else {
             Log.d("ProductDetailScreen", "userId or productId is empty")
             isCheckingPurchase = false
@@ -483,13 +442,13 @@ fun ProductDetailScreen(
                         ReviewOverview(
                             averageRating = averageRating.toFloat(),
                             reviewCount = reviewCount,
-                            reviews = currentProduct.review
+                            ratingStars = currentProduct.ratingStars
                         )
                         Spacer(modifier = Modifier.height(16.dp))
 
                         // Review section
                         Text(
-                            "Reviews (${currentProduct.review.size})",
+                            "Reviews (${currentProduct.ratingCount})",
                             fontSize = 16.sp,
                             fontWeight = FontWeight.SemiBold,
                             modifier = Modifier.padding(horizontal = 16.dp)
@@ -573,8 +532,8 @@ fun ProductDetailScreen(
                         }
 
                         // Review list
-                        if (currentProduct.review.isNotEmpty()) {
-                            val latestReviews = currentProduct.review.sortedByDescending { review -> review.createdAt?.toDate() }.take(2)
+                        if (reviews.isNotEmpty()) {
+                            val latestReviews = reviews.take(2)
                             Column(
                                 verticalArrangement = Arrangement.spacedBy(8.dp)
                             ) {
@@ -590,7 +549,7 @@ fun ProductDetailScreen(
                                     )
                                 }
                             }
-                            if (currentProduct.review.size > 2) {
+                            if (currentProduct.ratingCount > 2) {
                                 Text(
                                     text = "View All >",
                                     color = MaterialTheme.colorScheme.primary,
@@ -661,39 +620,33 @@ fun ProductDetailScreen(
                     // First Horizontal Section: Same Category + Same Brand Products
                     item {
                         Spacer(modifier = Modifier.height(16.dp))
-                        if (products.size > 1) {
-                            val sameCategoryBrandProducts = products.filter { relatedProduct ->
-                                relatedProduct.productId != currentProduct.productId &&
-                                        relatedProduct.category == currentProduct.category &&
-                                        relatedProduct.brand == currentProduct.brand
+                        val sameCategoryBrandProducts = relatedProducts.sameBrand
+
+                        if (sameCategoryBrandProducts.isNotEmpty()) {
+                            Column(modifier = Modifier.padding(horizontal = 16.dp)) {
+                                Spacer(modifier = Modifier.height(16.dp))
+                                Text(
+                                    text = "More from ${currentProduct.brand} in ${currentProduct.category}",
+                                    fontWeight = FontWeight.ExtraBold,
+                                    fontSize = 18.sp
+                                )
+                                Spacer(modifier = Modifier.height(8.dp))
                             }
 
-                            if (sameCategoryBrandProducts.isNotEmpty()) {
-                                Column(modifier = Modifier.padding(horizontal = 16.dp)) {
-                                    Spacer(modifier = Modifier.height(16.dp))
-                                    Text(
-                                        text = "More from ${currentProduct.brand} in ${currentProduct.category}",
-                                        fontWeight = FontWeight.ExtraBold,
-                                        fontSize = 18.sp
+                            LazyRow(
+                                contentPadding = PaddingValues(horizontal = 16.dp),
+                                horizontalArrangement = Arrangement.spacedBy(12.dp)
+                            ) {
+                                items(sameCategoryBrandProducts.take(5)) { brandProduct ->
+                                    ProductCard(
+                                        product = brandProduct,
+                                        modifier = Modifier.width(160.dp),
+                                        onClick = {
+                                            navController.navigate(
+                                                Screen.ProductDetail.createRoute(brandProduct.productId)
+                                            )
+                                        }
                                     )
-                                    Spacer(modifier = Modifier.height(8.dp))
-                                }
-
-                                LazyRow(
-                                    contentPadding = PaddingValues(horizontal = 16.dp),
-                                    horizontalArrangement = Arrangement.spacedBy(12.dp)
-                                ) {
-                                    items(sameCategoryBrandProducts.take(5)) { brandProduct ->
-                                        ProductCard(
-                                            product = brandProduct,
-                                            modifier = Modifier.width(160.dp),
-                                            onClick = {
-                                                navController.navigate(
-                                                    Screen.ProductDetail.createRoute(brandProduct.productId)
-                                                )
-                                            }
-                                        )
-                                    }
                                 }
                             }
                         }
@@ -712,11 +665,7 @@ fun ProductDetailScreen(
                     }
 
                     // Display same category products in a grid (2 columns)
-                    val sameCategoryDifferentBrandProducts = products.filter { relatedProduct ->
-                        relatedProduct.productId != currentProduct.productId &&
-                                relatedProduct.category == currentProduct.category &&
-                                relatedProduct.brand != currentProduct.brand
-                    }
+                    val sameCategoryDifferentBrandProducts = relatedProducts.similar
 
                     if (sameCategoryDifferentBrandProducts.isNotEmpty()) {
                         items(sameCategoryDifferentBrandProducts.chunked(2)) { rowItems ->
@@ -762,40 +711,6 @@ fun ProductDetailScreen(
                             }
                         }
                     }
-
-                    // Loading Indicator at the bottom for pagination
-                    if (isLoading) {
-                        item {
-                            Box(
-                                modifier = Modifier
-                                    .fillMaxWidth()
-                                    .padding(16.dp),
-                                contentAlignment = Alignment.Center
-                            ) {
-                                CircularProgressIndicator(
-                                    modifier = Modifier.size(32.dp),
-                                    strokeWidth = 2.dp
-                                )
-                            }
-                        }
-                    }
-
-                    // End of list indicator
-                    if (!hasMoreData && products.isNotEmpty() && !isLoading) {
-                        item {
-                            Box(
-                                modifier = Modifier
-                                    .fillMaxWidth()
-                                    .padding(16.dp),
-                                contentAlignment = Alignment.Center
-                            ) {
-                                Text(
-                                    text = "No more products to display",
-                                    color = Color.Gray
-                                )
-                            }
-                        }
-                    }
                 }
             }
         } ?: Box(
@@ -205,17 +205,14 @@ fun ReviewItem(
 fun ReviewOverview(
     averageRating: Float,
     reviewCount: Int,
-    reviews: List<Review>
+    ratingStars: Map<String, Int>
 ) {
-    // Tính số lượng đánh giá cho từng mức sao (1 đến 5)
-    val ratingDistribution = IntArray(5) { 0 } // Mảng lưu số lượng đánh giá: [5 sao, 4 sao, 3 sao, 2 sao, 1 sao]
-    reviews.forEach { review ->
-        val rating = review.rating.toInt().coerceIn(1, 5) // Đảm bảo rating từ 1 đến 5
-        ratingDistribution[5 - rating]++ // 5 sao ở index 0, 1 sao ở index 4
-    }
+    // Số lượng đánh giá cho từng mức sao, lấy từ product.ratingStars (không cần tải review)
+    val ratingDistribution = IntArray(5) { 5 - it } // [5 sao, 4 sao, 3 sao, 2 sao, 1 sao]
+        .map { star -> ratingStars[star.toString()] ?: 0 }
 
     // Tính tỷ lệ phần trăm cho từng mức sao
-    val totalReviews = reviews.size
+    val totalReviews = ratingDistribution.sum()
     val ratingPercentages = if (totalReviews > 0) {
         ratingDistribution.map { (it.toFloat() / totalReviews) * 100f }.toFloatArray()
     } else {
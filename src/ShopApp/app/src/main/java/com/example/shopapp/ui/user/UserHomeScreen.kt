@@ -32,6 +32,8 @@ import androidx.compose.material.icons.filled.Search
 import androidx.compose.material.icons.filled.Smartphone
 import androidx.compose.material.icons.filled.TabletMac
 import androidx.compose.material.icons.filled.Tv
+import androidx.compose.material3.Badge
+import androidx.compose.material3.BadgedBox
 import androidx.compose.material3.Button
 import androidx.compose.material3.Card
 import androidx.compose.material3.CardDefaults
@@ -154,6 +156,13 @@ fun UserHomeScreen(
     }
 
     var showNotifications by remember { mutableStateOf(false) }
+    val unreadCount by notificationViewModel.unreadCount.collectAsState()
+    val currentUserId = authViewModel.getCurrentUser()?.uid ?: ""
+
+    // The bell badge listens to the user's unread counter, one document
+    LaunchedEffect(currentUserId) {
+        notificationViewModel.observeUnreadCount(currentUserId)
+    }
 
     val requestPermissionLauncher = rememberLauncherForActivityResult(
         ActivityResultContracts.RequestPermission()
@@ -189,7 +198,15 @@ fun UserHomeScreen(
                 },
                 actions = {
                     IconButton(onClick = { showNotifications = true }) {
-                        Icon(Icons.Default.Notifications, contentDescription = "Notifications")
+                        BadgedBox(
+                            badge = {
+                                if (unreadCount > 0) {
+                                    Badge { Text(if (unreadCount > 99) "99+" else unreadCount.toString()) }
+                                }
+                            }
+                        ) {
+                            Icon(Icons.Default.Notifications, contentDescription = "Notifications")
+                        }
                     }
 //                    IconButton(onClick = { isMenuOpen = !isMenuOpen }) {
 //                        Icon(Icons.Default.Menu, contentDescription = "Menu")
@@ -501,7 +518,7 @@ fun UserHomeScreen(
         NotificationDialog(
             onDismissRequest = { showNotifications = false },
             notificationViewModel = notificationViewModel,
-            currentUserId = authViewModel.getCurrentUser()?.uid ?: "",
+            currentUserId = currentUserId,
         )
     }
 }
@@ -514,6 +531,7 @@ fun NotificationDialog(
 ) {
     val notifications by notificationViewModel.notifications.collectAsState()
     val isLoading by notificationViewModel.isLoading.collectAsState()
+    val hasMoreNotifications by notificationViewModel.hasMoreNotifications.collectAsState()
 
     // Load notifications when dialog opens
     LaunchedEffect(key1 = currentUserId) {
@@ -526,7 +544,7 @@ fun NotificationDialog(
         text = {
             Box(modifier = Modifier.height(300.dp)) {
                 when {
-                    isLoading -> {
+                    isLoading && notifications.isEmpty() -> {
                         Box(
                             modifier = Modifier.fillMaxSize(),
                             contentAlignment = Alignment.Center
@@ -555,6 +573,22 @@ fun NotificationDialog(
                                     }
                                 )
                             }
+                            if (hasMoreNotifications) {
+                                item {
+                                    Box(
+                                        modifier = Modifier.fillMaxWidth(),
+                                        contentAlignment = Alignment.Center
+                                    ) {
+                                        if (isLoading) {
+                                            CircularProgressIndicator(modifier = Modifier.size(24.dp))
+                                        } else {
+                                            TextButton(onClick = { notificationViewModel.loadMoreNotifications() }) {
+                                                Text("Load more")
+                                            }
+                                        }
+                                    }
+                                }
+                            }
                         }
                     }
                 }
@@ -564,6 +598,21 @@ fun NotificationDialog(
             TextButton(onClick = onDismissRequest) {
                 Text("Close")
             }
+        },
+        dismissButton = {
+            if (notifications.isNotEmpty()) {
+                Row {
+                    TextButton(
+                        onClick = { notificationViewModel.markAllAsRead() },
+                        enabled = notifications.any { !it.isRead }
+                    ) {
+                        Text("Mark all read")
+                    }
+                    TextButton(onClick = { notificationViewModel.clearNotifications() }) {
+                        Text("Clear all")
+                    }
+                }
+            }
         }
     )
 }
@@ -36,6 +36,7 @@ import androidx.compose.material3.Surface
 import androidx.compose.material3.Text
 import androidx.compose.material3.TopAppBar
 import androidx.compose.runtime.Composable
+import androidx.compose.runtime.LaunchedEffect
 import androidx.compose.runtime.collectAsState
 import androidx.compose.runtime.getValue
 import androidx.compose.ui.Alignment
@@ -54,16 +55,26 @@ import com.example.shopapp.data.model.CartItem
 import com.example.shopapp.localization.LanguageManager
 import com.example.shopapp.navigation.Screen
 import com.example.shopapp.viewmodel.CartViewModel
+import com.example.shopapp.viewmodel.ProductViewModel
 
 @OptIn(ExperimentalMaterial3Api::class)
 @Composable
 fun CartScreen(
     navController: NavController,
-    cartViewModel: CartViewModel
+    cartViewModel: CartViewModel,
+    productViewModel: ProductViewModel
 ) {
     val cartItems by cartViewModel.cartItems.collectAsState(initial = emptyList())
     val cartTotal by cartViewModel.cartTotal.collectAsState(initial = 0.0)
 
+    // One batched lookup for the whole cart whenever its set of products changes
+    val cartProductIds = cartItems.map { it.productId }.sorted()
+    LaunchedEffect(cartProductIds) {
+        if (cartProductIds.isNotEmpty()) {
+            cartViewModel.refreshFromCatalog(productViewModel.getProductsByIds(cartProductIds))
+        }
+    }
+
     Scaffold(
         topBar = {
             TopAppBar(
@@ -44,6 +44,22 @@ class CartViewModel(private val repository: CartRepository) : ViewModel() {
         }
     }
 
+    // Cart rows keep the title, image and price from when they were added; bring them up to date
+    fun refreshFromCatalog(products: List<Product>) {
+        viewModelScope.launch {
+            products.forEach { product ->
+                // Re-read the row so a quantity changed meanwhile is kept
+                val item = repository.getCartItem(product.productId) ?: return@forEach
+                val refreshed = item.copy(
+                    productTitle = product.title,
+                    productImage = product.image,
+                    price = product.price.toDouble()
+                )
+                if (refreshed != item) repository.updateCartItem(refreshed)
+            }
+        }
+    }
+
     fun clearCart() {
         viewModelScope.launch {
             repository.clearCart()
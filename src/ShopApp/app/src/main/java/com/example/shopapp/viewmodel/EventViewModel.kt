@@ -38,6 +38,7 @@ class EventViewModel(private val repository: IRepository<Event>) : ViewModel() {
         }
 
     init {
+        (repository as? EventRepository)?.startSearchIndex(viewModelScope)
         loadInitialEvents()
     }
 
@@ -6,9 +6,12 @@ import androidx.lifecycle.ViewModelProvider
 import androidx.lifecycle.viewModelScope
 import com.example.shopapp.data.model.NotificationItem
 import com.example.shopapp.data.repository.NotificationRepository
+import com.google.firebase.firestore.DocumentSnapshot
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.launch
 
 class NotificationViewModel(
@@ -24,15 +27,33 @@ class NotificationViewModel(
     private val _isLoading = MutableStateFlow(false)
     val isLoading: StateFlow<Boolean> = _isLoading.asStateFlow()
 
+    private val _hasMoreNotifications = MutableStateFlow(false)
+    val hasMoreNotifications: StateFlow<Boolean> = _hasMoreNotifications.asStateFlow()
+
+    private val pageSize = 15
+
+    // Inbox paging: the cursor is the last document of the loaded pages
+    private var inboxUserId: String? = null
+    private var lastDocument: DocumentSnapshot? = null
+    private var pageJob: Job? = null
+
+    // Badge listener on the user's unread counter document
+    private var unreadUserId: String? = null
+    private var unreadJob: Job? = null
+
+    // First page of the inbox; older notifications come from loadMoreNotifications
     fun loadNotifications(userId: String) {
-        viewModelScope.launch {
+        pageJob?.cancel()
+        inboxUserId = userId
+        lastDocument = null
+        pageJob = viewModelScope.launch {
             _isLoading.value = true
 
             try {
-                notificationRepository.getUserNotifications(userId).collect { notificationsList ->
-                    _notifications.value = notificationsList
-                }
-                refreshUnreadCount(userId)
+                val page = notificationRepository.getUserNotificationsPage(userId, pageSize).first()
+                _notifications.value = page.notifications
+                lastDocument = page.lastDocument
+                _hasMoreNotifications.value = page.notifications.size >= pageSize
             } catch (e: Exception) {
                 Log.e("NotificationViewModel", "Failed to load notifications: ${e.message}")
             } finally {
@@ -41,16 +62,41 @@ class NotificationViewModel(
         }
     }
 
-    fun refreshUnreadCount(userId: String) {
-        viewModelScope.launch {
+    fun loadMoreNotifications() {
+        val userId = inboxUserId ?: return
+        val cursor = lastDocument ?: return
+        if (_isLoading.value || !_hasMoreNotifications.value) return
+
+        pageJob = viewModelScope.launch {
+            _isLoading.value = true
+
             try {
-                _unreadCount.value = notificationRepository.getUnreadNotificationsCount(userId)
+                val page = notificationRepository.getUserNotificationsPage(userId, pageSize, cursor).first()
+                val loadedIds = _notifications.value.mapTo(HashSet()) { it.id }
+                _notifications.value = _notifications.value + page.notifications.filter { it.id !in loadedIds }
+                page.lastDocument?.let { lastDocument = it }
+                _hasMoreNotifications.value = page.notifications.size >= pageSize
             } catch (e: Exception) {
-                Log.e("NotificationViewModel", "Failed to refresh unread count: ${e.message}")
+                Log.e("NotificationViewModel", "Failed to load more notifications: ${e.message}")
+            } finally {
+                _isLoading.value = false
+            }
+        }
+    }
+
+    // Keeps unreadCount in sync with the counter document until the user changes
+    fun observeUnreadCount(userId: String) {
+        if (userId.isBlank() || (unreadUserId == userId && unreadJob?.isActive == true)) return
+        unreadJob?.cancel()
+        unreadUserId = userId
+        unreadJob = viewModelScope.launch {
+            notificationRepository.observeUnreadCount(userId).collect { count ->
+                _unreadCount.value = count
             }
         }
     }
 
+    // The unread badge follows from the counter listener
     fun markAsRead(notification: NotificationItem) {
         if (notification.isRead) return
 
@@ -61,7 +107,6 @@ class NotificationViewModel(
                     _notifications.value = _notifications.value.map {
                         if (it.id == notification.id) it.copy(isRead = true) else it
                     }
-                    _unreadCount.value = _unreadCount.value - 1
                 }
             } catch (e: Exception) {
                 Log.e("NotificationViewModel", "Failed to mark notification as read: ${e.message}")
@@ -75,9 +120,6 @@ class NotificationViewModel(
                 val success = notificationRepository.deleteNotification(notification.id)
                 if (success) {
                     _notifications.value = _notifications.value.filter { it.id != notification.id }
-                    if (!notification.isRead) {
-                        _unreadCount.value = _unreadCount.value - 1
-                    }
                 }
             } catch (e: Exception) {
                 Log.e("NotificationViewModel", "Failed to delete notification: ${e.message}")
@@ -85,4 +127,34 @@ class NotificationViewModel(
         }
     }
 
-}
\ No newline at end of file
+    // Covers the whole inbox, not just the loaded pages
+    fun markAllAsRead() {
+        val userId = inboxUserId ?: return
+        viewModelScope.launch {
+            try {
+                val success = notificationRepository.markAllNotificationsAsRead(userId)
+                if (success) {
+                    _notifications.value = _notifications.value.map { it.copy(isRead = true) }
+                }
+            } catch (e: Exception) {
+                Log.e("NotificationViewModel", "Failed to mark all notifications as read: ${e.message}")
+            }
+        }
+    }
+
+    fun clearNotifications() {
+        val userId = inboxUserId ?: return
+        viewModelScope.launch {
+            try {
+                val success = notificationRepository.deleteAllNotifications(userId)
+                if (success) {
+                    _notifications.value = emptyList()
+                    lastDocument = null
+                    _hasMoreNotifications.value = false
+                }
+            } catch (e: Exception) {
+                Log.e("NotificationViewModel", "Failed to clear notifications: ${e.message}")
+            }
+        }
+    }
+}
@@ -4,12 +4,20 @@ import android.util.Log
 import androidx.compose.runtime.mutableStateOf
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
+import com.example.shopapp.data.dao.CountCache
 import com.example.shopapp.data.model.Order
+import com.example.shopapp.data.model.OrderChange
 import com.example.shopapp.data.repository.IRepository
 import com.example.shopapp.data.repository.OrderRepository
 import com.example.shopapp.data.repository.ProductRepository
+import com.google.firebase.firestore.DocumentChange
+import com.google.firebase.firestore.DocumentSnapshot
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.NonCancellable
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import kotlinx.coroutines.flow.StateFlow
 import com.example.shopapp.services.NotificationService
 
@@ -48,29 +56,32 @@ class OrderViewModel (
             _selectedOrder.value = value
         }
 
+    // Order count per status for the filter chips, read from the sharded status counters
+    private val _statusCounts = MutableStateFlow<Map<String, Int>>(emptyMap())
+    val statusCounts: StateFlow<Map<String, Int>> = _statusCounts
+
     private val _currentStatusFilter = MutableStateFlow<String?>(null)
     val currentStatusFilter: StateFlow<String?> = _currentStatusFilter
 
+    private var feedJob: Job? = null
+
+    // Username search pages through cursors: searchCursors[i] is the last document of page i - 1
+    private var usernameQuery: String? = null
+    private val searchCursors = mutableListOf<DocumentSnapshot?>(null)
+    private var searchJob: Job? = null
+
     init {
         loadInitialOrders()
     }
 
     fun loadInitialOrders() {
-        viewModelScope.launch {
-            _isLoading.value = true
-            _currentStatusFilter.value = null
-
-            if (repository is OrderRepository) {
-                val orderDao = (repository as? OrderRepository)?.getOrderDao()
-                _totalCount.value = orderDao?.getTotalOrdersCount() ?: 0
-
-                orderDao?.getOrdersPage(_pageSize.value, 0)?.collect { orderList ->
-                    _orders.value = orderList
-                    _currentPage.value = 0
-                    _hasMoreData.value = orderList.size >= _pageSize.value
-                    _isLoading.value = false
-                }
-            } else {
+        _currentStatusFilter.value = null
+        clearUsernameSearch()
+        if (repository is OrderRepository) {
+            startOrderFeed(null)
+        } else {
+            viewModelScope.launch {
+                _isLoading.value = true
                 repository.fetchAll().collect { orderList ->
                     _orders.value = orderList
                     _isLoading.value = false
@@ -80,8 +91,81 @@ class OrderViewModel (
         }
     }
 
+    // Page 0 follows a snapshot listener: the first emission fills the page, later ones are
+    // applied in place, so new or edited orders show up without reloading the page and count
+    private fun startOrderFeed(status: String?) {
+        feedJob?.cancel()
+        val orderDao = (repository as? OrderRepository)?.getOrderDao() ?: return
+        _isLoading.value = true
+
+        feedJob = viewModelScope.launch {
+            var initial = true
+            try {
+                _statusCounts.value = orderDao.getOrderStatusCounts()
+                _totalCount.value = if (status == null) {
+                    orderDao.getTotalOrdersCount()
+                } else {
+                    _statusCounts.value[status] ?: 0
+                }
+
+                orderDao.observeOrders(_pageSize.value, status).collect { changes ->
+                    if (initial) {
+                        _orders.value = changes.sortedBy { it.newIndex }.map { it.order }
+                        _currentPage.value = 0
+                        _hasMoreData.value = changes.size >= _pageSize.value
+                        _isLoading.value = false
+                        initial = false
+                        Log.d("OrderViewModel", "Order feed started with ${changes.size} orders")
+                    } else {
+                        _orders.value = OrderChange.applyAll(_orders.value, changes)
+                        if (changes.any { it.type != DocumentChange.Type.MODIFIED }) {
+                            CountCache.invalidate("orders")
+                            _statusCounts.value = orderDao.getOrderStatusCounts()
+                            _totalCount.value = if (status == null) {
+                                orderDao.getTotalOrdersCount()
+                            } else {
+                                _statusCounts.value[status] ?: 0
+                            }
+                        }
+                        Log.d("OrderViewModel", "Applied ${changes.size} order changes")
+                    }
+                }
+            } finally {
+                // Ended before the first page arrived; a newer feed has its own loading state
+                if (initial && feedJob === coroutineContext[Job]) _isLoading.value = false
+            }
+        }
+    }
+
+    // A feed stopped during its initial load must not leave the loading flag set, or every
+    // later loadNextPage returns early
+    private fun stopOrderFeed() {
+        val job = feedJob ?: return
+        feedJob = null
+        if (job.isActive) {
+            job.cancel()
+            _isLoading.value = false
+        }
+    }
+
+    // Local patch after a write on a page that is not followed by the feed
+    private fun replaceOrder(order: Order) {
+        if (feedJob?.isActive == true) return
+        val filter = _currentStatusFilter.value
+        _orders.value = if (filter != null && order.status != filter) {
+            _orders.value.filter { it.orderId != order.orderId }
+        } else {
+            _orders.value.map { if (it.orderId == order.orderId) order else it }
+        }
+    }
+
     fun loadNextPage() {
         if (_isLoading.value || !_hasMoreData.value) return
+        if (usernameQuery != null) {
+            showSearchPage(_currentPage.value + 1)
+            return
+        }
+        stopOrderFeed()
 
         viewModelScope.launch {
             _isLoading.value = true
@@ -120,6 +204,15 @@ class OrderViewModel (
 
     fun previousPage() {
         if (_currentPage.value <= 0) return
+        if (usernameQuery != null) {
+            showSearchPage(_currentPage.value - 1)
+            return
+        }
+        if (_currentPage.value == 1 && repository is OrderRepository) {
+            startOrderFeed(_currentStatusFilter.value)
+            return
+        }
+        stopOrderFeed()
 
         viewModelScope.launch {
             _isLoading.value = true
@@ -154,6 +247,15 @@ class OrderViewModel (
 
     fun goToPage(page: Int) {
         if (page == _currentPage.value || page < 0) return
+        if (usernameQuery != null) {
+            showSearchPage(page)
+            return
+        }
+        if (page == 0 && repository is OrderRepository) {
+            startOrderFeed(_currentStatusFilter.value)
+            return
+        }
+        stopOrderFeed()
 
         viewModelScope.launch {
             _isLoading.value = true
@@ -203,7 +305,7 @@ class OrderViewModel (
     fun updateOrder(order: Order) {
         viewModelScope.launch {
             if(repository.modify(order)){
-                loadInitialOrders()
+                replaceOrder(order)
             }
         }
     }
@@ -223,6 +325,8 @@ class OrderViewModel (
     }
 
     fun searchOrdersByUserId(userId: String) {
+        stopOrderFeed()
+        clearUsernameSearch()
         viewModelScope.launch {
             if (repository is OrderRepository) {
                 repository.searchOrdersByUserId(userId).collect { results ->
@@ -234,16 +338,63 @@ class OrderViewModel (
         }
     }
 
+    // One page of matches plus an aggregate count; paging goes through loadNextPage/previousPage/goToPage
     fun searchOrdersByUsername(username: String) {
-        viewModelScope.launch {
-            if (repository is OrderRepository) {
-                repository.searchOrdersByUsername(username).collect { results ->
-                    _orders.value = results
-                }
-            } else {
-                Log.d("OrderViewModel", "Repository does not support search")
+        if (repository !is OrderRepository) {
+            Log.d("OrderViewModel", "Repository does not support search")
+            return
+        }
+        stopOrderFeed()
+        searchJob?.cancel()
+        _currentStatusFilter.value = null
+        usernameQuery = username
+        searchCursors.clear()
+        searchCursors.add(null)
+
+        searchJob = viewModelScope.launch {
+            _isLoading.value = true
+            _totalCount.value = repository.getTotalOrdersCountByUsername(username)
+            loadSearchPage(repository, username, 0)
+        }
+    }
+
+    private fun showSearchPage(page: Int) {
+        val query = usernameQuery ?: return
+        if (page < 0 || repository !is OrderRepository) return
+        searchJob?.cancel()
+        searchJob = viewModelScope.launch {
+            _isLoading.value = true
+            loadSearchPage(repository, query, page)
+        }
+    }
+
+    private suspend fun loadSearchPage(repository: OrderRepository, query: String, page: Int) {
+        // Jumping past the furthest visited page: walk forward once and remember the cursors on the way
+        while (searchCursors.size <= page) {
+            val skipped = repository.searchOrdersByUsername(query, _pageSize.value, searchCursors.last()).first()
+            val cursor = skipped.lastDocument
+            if (cursor == null || skipped.orders.size < _pageSize.value) {
+                _isLoading.value = false
+                _hasMoreData.value = false
+                return
             }
+            searchCursors.add(cursor)
         }
+
+        val result = repository.searchOrdersByUsername(query, _pageSize.value, searchCursors[page]).first()
+        result.lastDocument?.let { cursor ->
+            if (searchCursors.size == page + 1) searchCursors.add(cursor) else searchCursors[page + 1] = cursor
+        }
+        _orders.value = result.orders
+        _currentPage.value = page
+        _hasMoreData.value = result.orders.size >= _pageSize.value
+        _isLoading.value = false
+        Log.d("OrderViewModel", "Loaded username search page $page with ${result.orders.size} orders")
+    }
+
+    private fun clearUsernameSearch() {
+        searchJob?.cancel()
+        usernameQuery = null
     }
 
     fun selectOrder(order: Order) {
@@ -255,61 +406,55 @@ class OrderViewModel (
             try {
                 val previousStatus = order.status
                 val updatedOrder = order.copy(status = newStatus)
-                repository.modify(updatedOrder)
-
-                // Update product stock and sales when status changes from pending to shipping
-                if (previousStatus == "pending" && newStatus == "shipping" && productRepository != null) {
-                    for (cartItem in order.orderDetail) {
-                        val product = productRepository.fetchById(cartItem.productId)
-                        product?.let {
-                            // Decrease stock and increase sales
-                            val updatedProduct = it.copy(
-                                stock = it.stock - cartItem.quantity,
-                                sales = it.sales + cartItem.quantity
-                            )
-                            productRepository.modify(updatedProduct)
-                            Log.d("OrderViewModel", "Updated product ${it.title}: stock=${updatedProduct.stock}, sales=${updatedProduct.sales}")
-                        }
-                    }
+
+                // Update product stock and sales when status changes from pending to shipping.
+                // Status, stock and sales go out in one transaction, using increments so concurrent admins don't clobber each other.
+                val adjustInventory = previousStatus == "pending" && newStatus == "shipping" && productRepository != null
+                val success = if (repository is OrderRepository) {
+                    repository.updateOrderStatus(order, newStatus, adjustInventory)
+                } else {
+                    repository.modify(updatedOrder)
+                }
+                if (!success) {
+                    Log.e("OrderViewModel", "Order ${order.orderId} status was not updated")
+                    loadInitialOrders()
+                    return@launch
                 }
 
-                // Send notification when status changes from "pending" to "shipping"
+                // Send notification when status changes from "pending" to "shipping". The status is already
+                // committed, so the outbox record must not be lost if the screen closes right now.
                 if (previousStatus == "pending" && newStatus == "shipping") {
-                    notificationService.sendOrderStatusNotification(updatedOrder, order.userId)
+                    withContext(NonCancellable) {
+                        notificationService.sendOrderStatusNotification(updatedOrder, order.userId)
+                    }
                 }
 
-                // Refresh orders
-                loadInitialOrders()
+                // The live first page already has the change; other pages are patched in place
+                replaceOrder(updatedOrder)
+                refreshStatusCounts()
             } catch (e: Exception) {
                 Log.e("OrderViewModel", "Error updating order status", e)
             }
         }
     }
 
-    fun filterOrdersByStatus(status: String) {
-        viewModelScope.launch {
-            _isLoading.value = true
-            _currentStatusFilter.value = status
-            _orders.value = emptyList()
-            _currentPage.value = -1
-            _hasMoreData.value = true
-
-            if (repository is OrderRepository) {
-                val orderDao = repository.getOrderDao()
-                _totalCount.value = orderDao.getTotalOrdersCountByStatus(status)
+    private suspend fun refreshStatusCounts() {
+        val orderDao = (repository as? OrderRepository)?.getOrderDao() ?: return
+        _statusCounts.value = orderDao.getOrderStatusCounts()
+    }
 
-                orderDao.getOrdersPageByStatus(status, _pageSize.value, 0).collect { results ->
-                    _orders.value = results
-                    _currentPage.value = 0
-                    _hasMoreData.value = results.size >= _pageSize.value
-                    _isLoading.value = false
+    fun filterOrdersByStatus(status: String) {
+        clearUsernameSearch()
+        _currentStatusFilter.value = status
+        _orders.value = emptyList()
+        _currentPage.value = -1
+        _hasMoreData.value = true
 
-                    Log.d("OrderViewModel", "Filtered ${results.size} orders with status '$status'")
-                }
-            } else {
-                _isLoading.value = false
-                Log.d("OrderViewModel", "Repository does not support filtering")
-            }
+        if (repository is OrderRepository) {
+            startOrderFeed(status)
+        } else {
+            _isLoading.value = false
+            Log.d("OrderViewModel", "Repository does not support filtering")
         }
     }
 
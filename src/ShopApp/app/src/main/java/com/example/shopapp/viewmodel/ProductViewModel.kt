@@ -5,12 +5,17 @@ import androidx.compose.runtime.mutableStateOf
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
 import com.example.shopapp.data.model.Product
+import com.example.shopapp.data.model.ProductPage
+import com.example.shopapp.data.model.RelatedProducts
 import com.example.shopapp.data.model.Review
 import com.example.shopapp.data.repository.IRepository
 import com.example.shopapp.data.repository.ProductRepository
 import com.google.firebase.Timestamp
+import com.google.firebase.firestore.DocumentSnapshot
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.launch
 import java.util.UUID
 
@@ -56,6 +61,24 @@ class ProductViewModel(
     private val _reviewCount = MutableStateFlow(0)
     val reviewCount: StateFlow<Int> = _reviewCount
 
+    // Reviews of one product, paged from the reviews subcollection
+    private val _reviews = MutableStateFlow<List<Review>>(emptyList())
+    val reviews: StateFlow<List<Review>> = _reviews
+
+    private val _hasMoreReviews = MutableStateFlow(false)
+    val hasMoreReviews: StateFlow<Boolean> = _hasMoreReviews
+
+    // Suggestions for the open product page, kept apart from the paged products list
+    private val _relatedProducts = MutableStateFlow(RelatedProducts())
+    val relatedProducts: StateFlow<RelatedProducts> = _relatedProducts
+    private var relatedProductId: String? = null
+
+    // Product whose reviews are in `reviews`
+    var reviewsProductId: String? = null
+        private set
+    private var reviewCursor: DocumentSnapshot? = null
+    private val reviewPageSize = 10
+
     var selectedProduct: Product?
         get() = _selectedProduct.value
         set(value) {
@@ -63,6 +86,11 @@ class ProductViewModel(
             value?.let { updateRatingAndCount(it) }
         }
 
+    // pageCursors[i] is the last document of page i - 1; page 0 starts from the beginning (null)
+    private val pageCursors = mutableListOf<DocumentSnapshot?>(null)
+    private var titleQuery: String? = null
+    private var searchJob: Job? = null
+
     init {
         //loadProducts()
         loadInitialProducts()
@@ -71,19 +99,25 @@ class ProductViewModel(
     {
         viewModelScope.launch {
             _isLoading.value= true
+            _selectedCategory.value = null
+            titleQuery = null
+            resetCursors()
 
             if(repository is ProductRepository){
-                _totalCount.value= repository.getTotalCount()
+                // Render the cached catalog first; the network page below replaces it in place.
+                // isLoading stays set so the list does not page past the cached rows meanwhile.
+                val cached = repository.getCachedPage(_pageSize.value)
+                if (cached.isNotEmpty()) _products.value = cached
 
-                repository.fetchPage(_pageSize.value, 0).collect { productList ->
-                    _products.value = productList
-                    _currentPage.value = 0
-                    _hasMoreData.value = productList.size >= _pageSize.value
-                    _isLoading.value = false
+                _totalCount.value= repository.getTotalCount()
 
-                    Log.d("ProductViewModel", "Loaded initial page with ${productList.size} products")
-                }
+                val productList = fetchPage(repository, 0)
+                _products.value = productList
+                _currentPage.value = 0
+                _hasMoreData.value = productList.size >= _pageSize.value
+                _isLoading.value = false
 
+                Log.d("ProductViewModel", "Loaded initial page with ${productList.size} products")
             }
             else{
                 // non product repository implement
@@ -97,6 +131,39 @@ class ProductViewModel(
             }
         }
     }
+
+    private fun resetCursors() {
+        pageCursors.clear()
+        pageCursors.add(null)
+    }
+
+    // Fetches one page through the stored cursors, so a page costs pageSize reads instead of offset + pageSize
+    private suspend fun fetchPage(repository: ProductRepository, page: Int): List<Product> {
+        // Jumping past the furthest visited page: walk forward once and remember the cursors on the way
+        while (pageCursors.size <= page) {
+            val skipped = fetchPageAfter(repository, pageCursors.last())
+            val cursor = skipped.lastDocument
+            if (cursor == null || skipped.products.size < _pageSize.value) return emptyList()
+            pageCursors.add(cursor)
+        }
+
+        val result = fetchPageAfter(repository, pageCursors[page])
+        result.lastDocument?.let { cursor ->
+            if (pageCursors.size == page + 1) pageCursors.add(cursor) else pageCursors[page + 1] = cursor
+        }
+        return result.products
+    }
+
+    private suspend fun fetchPageAfter(repository: ProductRepository, cursor: DocumentSnapshot?): ProductPage {
+        val query = titleQuery
+        val category = _selectedCategory.value
+        return when {
+            query != null -> repository.searchProductsByTitle(query, _pageSize.value, cursor)
+            category != null -> repository.fetchPageByCategory(category, _pageSize.value, cursor)
+            else -> repository.fetchPage(_pageSize.value, cursor)
+        }.first()
+    }
+
     fun loadNextPage() {
         if (_isLoading.value || !_hasMoreData.value) {
             Log.d("ProductViewModel", "Skipping loadNextPage: isLoading=${_isLoading.value}, hasMoreData=${_hasMoreData.value}")
@@ -106,25 +173,11 @@ class ProductViewModel(
         viewModelScope.launch {
             _isLoading.value = true
             val nextPage = _currentPage.value + 1
-            val offset = nextPage * _pageSize.value
 
-            Log.d("ProductViewModel", "Loading page $nextPage with offset $offset")
+            Log.d("ProductViewModel", "Loading page $nextPage")
 
             if (repository is ProductRepository) {
-                if (_selectedCategory.value != null) {
-                    repository.fetchPageByCategory(
-                        _selectedCategory.value!!,
-                        _pageSize.value,
-                        offset
-                    ).collect { results ->
-                        handlePageResults(results, nextPage)
-                    }
-                } else {
-                    repository.fetchPage(_pageSize.value, offset)
-                        .collect { results ->
-                            handlePageResults(results, nextPage)
-                        }
-                }
+                handlePageResults(fetchPage(repository, nextPage), nextPage)
             } else {
                 _hasMoreData.value = false
                 _isLoading.value = false
@@ -165,15 +218,18 @@ class ProductViewModel(
         _products.value = emptyList()
         _currentPage.value = -1
         _hasMoreData.value = true
+        resetCursors()
         loadNextPage()
     }
 
+    // Only the latest query may publish results; starting a new search cancels the previous one
     fun searchProducts(query: String) {
-        viewModelScope.launch {
+        searchJob?.cancel()
+        searchJob = viewModelScope.launch {
             _isSearching.value = true
 
             if (repository is ProductRepository) {
-                repository.search(query).collect { results ->
+                repository.searchProgressive(query).collect { results ->
                     _searchResults.value = results
                     _isSearching.value = false
                     Log.d("ProductViewModel", "Search found ${results.size} products for '$query'")
@@ -196,24 +252,28 @@ class ProductViewModel(
         Log.d("pr", "filterByCategory called with categoryId: $categoryId")
         viewModelScope.launch {
             _selectedCategory.value = categoryId
+            titleQuery = null
+            resetCursors()
             _products.value = emptyList()
             _currentPage.value = -1
             _hasMoreData.value = true
             _isLoading.value = true
 
             if (repository is ProductRepository && categoryId != null) {
+                val cached = repository.getCachedPage(_pageSize.value, categoryId)
+                if (cached.isNotEmpty()) _products.value = cached
+
                 // Get count of products in category first
                 _totalCount.value = repository.getCategoryTotalCount(categoryId)
 
                 // Load first page of category products
-                repository.fetchPageByCategory(categoryId, _pageSize.value, 0).collect { results ->
-                    _products.value = results
-                    _currentPage.value = 0
-                    _hasMoreData.value = results.size >= _pageSize.value
-                    _isLoading.value = false
+                val results = fetchPage(repository, 0)
+                _products.value = results
+                _currentPage.value = 0
+                _hasMoreData.value = results.size >= _pageSize.value
+                _isLoading.value = false
 
-                    Log.d("ProductViewModel", "Category filter found ${results.size} products for '$categoryId'")
-                }
+                Log.d("ProductViewModel", "Category filter found ${results.size} products for '$categoryId'")
             } else if (categoryId == null) {
                 // Reset to show all products
                 loadInitialProducts()
@@ -226,6 +286,8 @@ class ProductViewModel(
         _currentPage.value = -1
         _hasMoreData.value = true
         _selectedCategory.value = null
+        titleQuery = null
+        resetCursors()
         loadNextPage()
     }
 
@@ -269,98 +331,28 @@ class ProductViewModel(
 
     fun nextPage(){
         if (_hasMoreData.value) {
-            viewModelScope.launch {
-                _isLoading.value = true
-                val nextPage = _currentPage.value + 1
-                val offset = nextPage * _pageSize.value
-
-                if (repository is ProductRepository) {
-                    if (_selectedCategory.value != null) {
-                        repository.fetchPageByCategory(
-                            _selectedCategory.value!!,
-                            _pageSize.value,
-                            offset
-                        ).collect { results ->
-                            _products.value = results
-                            _currentPage.value = nextPage
-                            _hasMoreData.value = results.size >= _pageSize.value
-                            _isLoading.value = false
-                        }
-                    } else {
-                        repository.fetchPage(_pageSize.value, offset)
-                            .collect { results ->
-                                _products.value = results
-                                _currentPage.value = nextPage
-                                _hasMoreData.value = results.size >= _pageSize.value
-                                _isLoading.value = false
-                            }
-                    }
-                }
-            }
+            goToPage(_currentPage.value + 1)
         }
     }
 
     fun previousPage() {
         if (currentPage.value > 0) {
-            viewModelScope.launch {
-                _isLoading.value = true
-                val prevPage = _currentPage.value - 1
-                val offset = prevPage * _pageSize.value
-
-                if (repository is ProductRepository) {
-                    if (_selectedCategory.value != null) {
-                        repository.fetchPageByCategory(
-                            _selectedCategory.value!!,
-                            _pageSize.value,
-                            offset
-                        ).collect { results ->
-                            _products.value = results
-                            _currentPage.value = prevPage
-                            _hasMoreData.value = true
-                            _isLoading.value = false
-                        }
-                    } else {
-                        repository.fetchPage(_pageSize.value, offset)
-                            .collect { results ->
-                                _products.value = results
-                                _currentPage.value = prevPage
-                                _hasMoreData.value = true
-                                _isLoading.value = false
-                            }
-                    }
-                }
-            }
+            goToPage(_currentPage.value - 1)
         }
     }
 
     fun goToPage(page: Int) {
-        if (page != _currentPage.value) {
+        if (page != _currentPage.value && page >= 0) {
             viewModelScope.launch {
                 _isLoading.value = true
-                val offset = page * _pageSize.value
 
                 if (repository is ProductRepository) {
-                    if (_selectedCategory.value != null) {
-                        repository.fetchPageByCategory(
-                            _selectedCategory.value!!,
-                            _pageSize.value,
-                            offset
-                        ).collect { results ->
-                            _products.value = results
-                            _currentPage.value = page
-                            _hasMoreData.value = results.size >= _pageSize.value
-                            _isLoading.value = false
-                        }
-                    } else {
-                        repository.fetchPage(_pageSize.value, offset)
-                            .collect { results ->
-                                _products.value = results
-                                _currentPage.value = page
-                                _hasMoreData.value = results.size >= _pageSize.value
-                                _isLoading.value = false
-                            }
-                    }
+                    val results = fetchPage(repository, page)
+                    _products.value = results
+                    _currentPage.value = page
+                    _hasMoreData.value = results.size >= _pageSize.value
                 }
+                _isLoading.value = false
             }
         }
     }
@@ -370,15 +362,17 @@ class ProductViewModel(
             _isLoading.value = true
 
             if (repository is ProductRepository) {
+                titleQuery = query
+                _selectedCategory.value = null
+                resetCursors()
                 _totalCount.value = repository.getTotalProductsCountByTitle(query)
 
-                repository.searchProductsByTitle(query, _pageSize.value, 0).collect { results ->
-                    _products.value = results
-                    _isLoading.value = false
-                    _currentPage.value = 0
-                    _hasMoreData.value = results.size >= _pageSize.value
-                    Log.d("ProductViewModel", "Search found ${results.size} products for '$query'")
-                }
+                val results = fetchPage(repository, 0)
+                _products.value = results
+                _isLoading.value = false
+                _currentPage.value = 0
+                _hasMoreData.value = results.size >= _pageSize.value
+                Log.d("ProductViewModel", "Search found ${results.size} products for '$query'")
             } else {
                 loadInitialProducts()
             }
@@ -401,6 +395,16 @@ class ProductViewModel(
         Log.d("ProductViewModel", "Filters and search reset")
     }
 
+    // Current versions of several products in one go; cached ones cost no read
+    suspend fun getProductsByIds(productIds: List<String>): List<Product> {
+        return try {
+            if (repository is ProductRepository) repository.getProductsByIds(productIds) else emptyList()
+        } catch (e: Exception) {
+            Log.e(TAG, "Error fetching products by ids: ${e.message}")
+            emptyList()
+        }
+    }
+
     suspend fun getProductById(productId: String): Product? {
         _isLoading.value = true
 
@@ -419,7 +423,72 @@ class ProductViewModel(
         }
     }
 
+    fun loadRelatedProducts(product: Product) {
+        if (relatedProductId == product.productId) return
+        relatedProductId = product.productId
+        if (repository !is ProductRepository) {
+            _relatedProducts.value = RelatedProducts()
+            return
+        }
+
+        // The previous suggestions stay until these arrive; the screen may still be showing one of them
+        viewModelScope.launch {
+            val related = repository.getRelatedProducts(product, sameBrandLimit = 5, similarLimit = 10)
+            if (relatedProductId == product.productId) {
+                _relatedProducts.value = related
+            }
+        }
+    }
+
     // Hàm cho review
+    fun loadReviews(productId: String) {
+        reviewsProductId = productId
+        reviewCursor = null
+        _reviews.value = emptyList()
+        _hasMoreReviews.value = false
+        loadMoreReviews()
+    }
+
+    fun migrateEmbeddedReviews() {
+        if (repository !is ProductRepository) return
+        viewModelScope.launch {
+            val migrated = repository.migrateEmbeddedReviews()
+            if (migrated > 0) Log.d(TAG, "Migrated embedded reviews of $migrated products")
+        }
+    }
+
+    fun loadMoreReviews() {
+        val productId = reviewsProductId ?: return
+        if (repository !is ProductRepository) return
+
+        viewModelScope.launch {
+            try {
+                val page = repository.fetchReviewsPage(productId, reviewPageSize, reviewCursor).first()
+                if (productId != reviewsProductId) return@launch
+                val knownIds = _reviews.value.mapTo(HashSet()) { it.reviewId }
+                _reviews.value = _reviews.value + page.reviews.filter { it.reviewId !in knownIds }
+                reviewCursor = page.lastDocument
+                _hasMoreReviews.value = page.lastDocument != null && page.reviews.size == reviewPageSize
+            } catch (e: Exception) {
+                Log.e(TAG, "Error loading reviews: ${e.message}")
+            }
+        }
+    }
+
+    // Replaces a product after a review write; the totals come back from Firestore, the
+    // review list is patched locally instead of reloading every page
+    private fun onReviewsChanged(product: Product) {
+        val currentList = _products.value.toMutableList()
+        val index = currentList.indexOfFirst { it.productId == product.productId }
+        if (index != -1) {
+            currentList[index] = product.copy(review = emptyList())
+            _products.value = currentList
+        }
+        if (selectedProduct?.productId == product.productId) {
+            selectedProduct = product
+        }
+    }
+
     fun addReview(productId: String, rating: Double, comment: String) { // Thêm userId sau
         viewModelScope.launch {
             val newReview = Review(
@@ -434,19 +503,11 @@ class ProductViewModel(
             if (repository is ProductRepository) {
                 val success = repository.addReview(productId, newReview)
                 if (success) {
-                    // Cập nhật danh sách sản phẩm hoặc sản phẩm đã chọn
-                    val updatedProduct = repository.fetchById(productId)
-                    updatedProduct?.let { product ->
-                        val currentList = _products.value.toMutableList()
-                        val index = currentList.indexOfFirst { it.productId == productId }
-                        if (index != -1) {
-                            currentList[index] = product
-                            _products.value = currentList
-                        }
-                        if (selectedProduct?.productId == productId) {
-                            selectedProduct = product
-                        }
+                    if (reviewsProductId == productId) {
+                        _reviews.value = listOf(newReview) + _reviews.value
                     }
+                    // Cập nhật danh sách sản phẩm hoặc sản phẩm đã chọn
+                    repository.fetchById(productId)?.let { onReviewsChanged(it) }
                     Log.d("ProductViewModel", "Review added to product $productId")
                 }
             }
@@ -458,18 +519,10 @@ class ProductViewModel(
             if (repository is ProductRepository) {
                 val success = repository.removeReview(productId, review)
                 if (success) {
-                    val updatedProduct = repository.fetchById(productId)
-                    updatedProduct?.let { product ->
-                        val currentList = _products.value.toMutableList()
-                        val index = currentList.indexOfFirst { it.productId == productId }
-                        if (index != -1) {
-                            currentList[index] = product
-                            _products.value = currentList
-                        }
-                        if (selectedProduct?.productId == productId) {
-                            selectedProduct = product
-                        }
+                    if (reviewsProductId == productId) {
+                        _reviews.value = _reviews.value.filter { it.reviewId != review.reviewId }
                     }
+                    repository.fetchById(productId)?.let { onReviewsChanged(it) }
                     Log.d("ProductViewModel", "Review removed from product $productId")
                 }
             }
@@ -477,11 +530,7 @@ class ProductViewModel(
     }
 
     private fun updateRatingAndCount(product: Product) {
-        _averageRating.value = if (product.review.isNotEmpty()) {
-            String.format("%.1f", product.review.map { it.rating }.average())
-        } else {
-            "0.0"
-        }
-        _reviewCount.value = product.review.size
+        _averageRating.value = String.format("%.1f", product.averageRating)
+        _reviewCount.value = product.ratingCount
     }
 }
\ No newline at end of file
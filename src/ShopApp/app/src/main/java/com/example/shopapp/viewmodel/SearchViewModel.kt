@@ -5,15 +5,30 @@ import androidx.lifecycle.viewModelScope
 import com.example.shopapp.data.model.Product
 import com.example.shopapp.data.repository.IRepository
 import com.example.shopapp.data.repository.ProductRepository
+import com.example.shopapp.data.search.ProductFilterEngine
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.FlowPreview
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.emptyFlow
+import kotlinx.coroutines.flow.filter
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.onCompletion
+import kotlinx.coroutines.flow.onStart
 import kotlinx.coroutines.launch
 
+@OptIn(FlowPreview::class, ExperimentalCoroutinesApi::class)
 class SearchViewModel(
     private val productRepository: IRepository<Product>
 ) : ViewModel() {
 
     // Search related state
+    private val _query = MutableStateFlow("")
+    val query: StateFlow<String> = _query
+
     private val _searchResults = MutableStateFlow<List<Product>>(emptyList())
     val searchResults: StateFlow<List<Product>> = _searchResults
 
@@ -34,12 +49,42 @@ class SearchViewModel(
     private val _categories = MutableStateFlow<List<String>>(emptyList())
     val categories: StateFlow<List<String>> = _categories
 
+    // Sorted price/rating indexes over the current results, rebuilt only when the results change
+    private var filterEngine = ProductFilterEngine(emptyList())
+
     // Filtered results
     private val _filteredResults = MutableStateFlow<List<Product>>(emptyList())
     val filteredResults: StateFlow<List<Product>> = _filteredResults
 
     init {
         loadCategories()
+        observeQuery()
+    }
+
+    // Debounced query pipeline: a newer query cancels the one still running, so stale results never land
+    private fun observeQuery() {
+        viewModelScope.launch {
+            _query
+                .debounce(300) // Wait for 300ms of inactivity before searching
+                .map { it.trim() }
+                .filter { it.length >= 2 } // Only search for queries with at least 2 characters
+                .distinctUntilChanged()
+                .flatMapLatest { query ->
+                    if (productRepository is ProductRepository) {
+                        productRepository.searchProgressive(query)
+                            .onStart { _isSearching.value = true }
+                            .onCompletion { _isSearching.value = false }
+                    } else {
+                        emptyFlow()
+                    }
+                }
+                .collect { results ->
+                    _searchResults.value = results
+                    filterEngine = ProductFilterEngine(results)
+                    applyFilters()
+                    if (results.isNotEmpty()) _isSearching.value = false
+                }
+        }
     }
 
     private fun loadCategories() {
@@ -56,18 +101,8 @@ class SearchViewModel(
         }
     }
 
-    fun searchProducts(query: String) {
-        viewModelScope.launch {
-            _isSearching.value = true
-            if (productRepository is ProductRepository)
-            {
-                productRepository.search(query).collect { results ->
-                    _searchResults.value = results
-                    applyFilters()
-                    _isSearching.value = false
-                }
-            }
-        }
+    fun onQueryChanged(query: String) {
+        _query.value = query
     }
 
     // Filter functions
@@ -94,22 +129,11 @@ class SearchViewModel(
     }
 
     private fun applyFilters() {
-        val filteredList = _searchResults.value.filter { product ->
-            // Apply category filter
-            val categoryMatch = _selectedCategory.value == null ||
-                    product.category == _selectedCategory.value
-
-            // Apply price filter
-            val priceMatch = product.price in _priceRange.value.start.toDouble().._priceRange.value.endInclusive.toDouble()
-
-            // Apply rating filter
-            val avgRating = if (product.review.isEmpty()) 0.0
-            else product.review.map { it.rating }.average()
-            val ratingMatch = avgRating >= _minRating.value
-
-            categoryMatch && priceMatch && ratingMatch
-        }
-
-        _filteredResults.value = filteredList
+        _filteredResults.value = filterEngine.filter(
+            category = _selectedCategory.value,
+            minPrice = _priceRange.value.start.toDouble(),
+            maxPrice = _priceRange.value.endInclusive.toDouble(),
+            minRating = _minRating.value.toDouble()
+        )
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+package com.example.shopapp.viewmodel
+
+import android.util.Log
+import androidx.lifecycle.ViewModel
+import androidx.lifecycle.viewModelScope
+import com.example.shopapp.data.model.DashboardStats
+import com.example.shopapp.data.model.Order
+import com.example.shopapp.data.repository.IRepository
+import com.example.shopapp.data.repository.OrderRepository
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+
+class StatsViewModel(
+    private val repository: IRepository<Order>
+) : ViewModel() {
+    private val TAG = "StatsViewModel"
+
+    private val _stats = MutableStateFlow(DashboardStats())
+    val stats: StateFlow<DashboardStats> = _stats
+
+    private val _isLoading = MutableStateFlow(false)
+    val isLoading: StateFlow<Boolean> = _isLoading
+
+    // Called by the dashboard each time it opens. Uses the stats rollup when there is one;
+    // otherwise the delivered orders are folded in one pass off the main thread
+    fun refresh() {
+        viewModelScope.launch {
+            _isLoading.value = true
+            try {
+                _stats.value = if (repository is OrderRepository) {
+                    val pendingCount = repository.getOrderDao().getTotalOrdersCountByStatus("pending")
+                    val salesStats = repository.getSalesStats()
+                    if (salesStats != null) {
+                        DashboardStats.fromSalesStats(salesStats, pendingCount)
+                    } else {
+                        val delivered = repository.getAllOrderByStatus("delivered").first()
+                        withContext(Dispatchers.Default) { DashboardStats.compute(delivered, pendingCount) }
+                    }
+                } else {
+                    val orders = repository.fetchAll().first()
+                    withContext(Dispatchers.Default) {
+                        DashboardStats.compute(
+                            orders.filter { it.status == "delivered" },
+                            orders.count { it.status == "pending" }
+                        )
+                    }
+                }
+                Log.d(TAG, "Dashboard stats: ${_stats.value.deliveredCount} delivered, ${_stats.value.pendingCount} pending")
+            } catch (e: Exception) {
+                Log.e(TAG, "Error loading dashboard stats: ${e.message}")
+            } finally {
+                _isLoading.value = false
+            }
+        }
+    }
+}
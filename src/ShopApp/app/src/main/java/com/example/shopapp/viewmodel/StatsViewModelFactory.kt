@@ -0,0 +1,18 @@
+package com.example.shopapp.viewmodel
+
+import androidx.lifecycle.ViewModel
+import androidx.lifecycle.ViewModelProvider
+import com.example.shopapp.data.model.Order
+import com.example.shopapp.data.repository.IRepository
+
+class StatsViewModelFactory(
+    private val repository: IRepository<Order>
+) : ViewModelProvider.Factory {
+    override fun <T : ViewModel> create(modelClass: Class<T>): T {
+        if (modelClass.isAssignableFrom(StatsViewModel::class.java)) {
+            @Suppress("UNCHECKED_CAST")
+            return StatsViewModel(repository) as T
+        }
+        throw IllegalArgumentException("Unknown ViewModel class")
+    }
+}
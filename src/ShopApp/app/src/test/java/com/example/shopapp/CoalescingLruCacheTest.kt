@@ -0,0 +1,147 @@
+package com.example.shopapp
+
+import com.example.shopapp.data.cache.CoalescingLruCache
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.async
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import java.util.concurrent.atomic.AtomicInteger
+
+class CoalescingLruCacheTest {
+    private data class Doc(val id: String, val version: Int = 1)
+
+    private fun cache(maxEntries: Int = 10, ttlMs: Long = 60_000L) =
+        CoalescingLruCache<Doc>("CacheTest", maxEntries, ttlMs) { it.id }
+
+    @Test
+    fun get_servesRepeatReadsFromCache() = runBlocking {
+        val cache = cache()
+        val loads = AtomicInteger()
+        val loader: suspend (String) -> Doc? = { loads.incrementAndGet(); Doc(it) }
+
+        assertEquals(Doc("a"), cache.get("a", loader))
+        assertEquals(Doc("a"), cache.get("a", loader))
+        assertEquals(1, loads.get())
+    }
+
+    @Test
+    fun get_doesNotCacheMissingDocuments() = runBlocking {
+        val cache = cache()
+        val loads = AtomicInteger()
+
+        assertNull(cache.get("a") { loads.incrementAndGet(); null })
+        assertNull(cache.get("a") { loads.incrementAndGet(); null })
+        assertEquals(2, loads.get())
+    }
+
+    @Test
+    fun get_coalescesConcurrentMisses() = runBlocking {
+        val cache = cache()
+        val loads = AtomicInteger()
+        val gate = CompletableDeferred<Unit>()
+        val loader: suspend (String) -> Doc? = { loads.incrementAndGet(); gate.await(); Doc(it) }
+
+        val first = async(start = CoroutineStart.UNDISPATCHED) { cache.get("a", loader) }
+        val second = async(start = CoroutineStart.UNDISPATCHED) { cache.get("a", loader) }
+        gate.complete(Unit)
+
+        assertEquals(Doc("a"), first.await())
+        assertEquals(Doc("a"), second.await())
+        assertEquals(1, loads.get())
+    }
+
+    @Test
+    fun invalidate_discardsReadStartedBeforeIt() = runBlocking {
+        val cache = cache()
+        val loads = AtomicInteger()
+        val gate = CompletableDeferred<Unit>()
+
+        val stale = async(start = CoroutineStart.UNDISPATCHED) {
+            cache.get("a") { loads.incrementAndGet(); gate.await(); Doc(it, version = 1) }
+        }
+        cache.invalidate(listOf("a"))
+        gate.complete(Unit)
+        assertEquals(Doc("a", version = 1), stale.await())
+
+        // The stale value was not stored, so the next read goes back to the loader
+        assertEquals(Doc("a", version = 2), cache.get("a") { loads.incrementAndGet(); Doc(it, version = 2) })
+        assertEquals(2, loads.get())
+    }
+
+    @Test
+    fun invalidate_andClearDropCachedEntries() = runBlocking {
+        val cache = cache()
+        cache.put(Doc("a"))
+        cache.put(Doc("b"))
+
+        cache.invalidate(listOf("a"))
+        assertEquals(Doc("a", version = 2), cache.get("a") { Doc(it, version = 2) })
+        assertEquals(Doc("b"), cache.get("b") { Doc(it, version = 2) })
+
+        cache.clear()
+        assertEquals(Doc("b", version = 3), cache.get("b") { Doc(it, version = 3) })
+    }
+
+    @Test
+    fun maxEntries_evictsLeastRecentlyUsed() = runBlocking {
+        val cache = cache(maxEntries = 2)
+        cache.put(Doc("a"))
+        cache.put(Doc("b"))
+        // Reading a makes b the eldest
+        cache.get("a") { Doc(it, version = 2) }
+        cache.put(Doc("c"))
+
+        assertEquals(Doc("a"), cache.get("a") { Doc(it, version = 2) })
+        assertEquals(Doc("b", version = 2), cache.get("b") { Doc(it, version = 2) })
+    }
+
+    @Test
+    fun ttl_expiresEntries() = runBlocking {
+        val expired = cache(ttlMs = 0L)
+        expired.put(Doc("a"))
+        assertEquals(Doc("a", version = 2), expired.get("a") { Doc(it, version = 2) })
+
+        val live = cache(ttlMs = 60_000L)
+        live.put(Doc("a"))
+        assertEquals(Doc("a"), live.get("a") { Doc(it, version = 2) })
+    }
+
+    @Test
+    fun getAll_loadsOnlyMissingIds() = runBlocking {
+        val cache = cache()
+        cache.put(Doc("a"))
+        val batches = mutableListOf<List<String>>()
+        val loader: suspend (List<String>) -> List<Doc> = { ids -> batches += ids; ids.map { Doc(it) } }
+
+        val first = cache.getAll(listOf("a", "b", "", "c", "b"), loader)
+        val second = cache.getAll(listOf("c", "a", "b"), loader)
+
+        assertEquals(listOf(Doc("a"), Doc("b"), Doc("c")), first)
+        assertEquals(listOf(Doc("c"), Doc("a"), Doc("b")), second)
+        assertEquals(listOf(listOf("b", "c")), batches)
+    }
+
+    @Test
+    fun getAll_joinsReadsAlreadyInFlight() = runBlocking {
+        val cache = cache()
+        val gate = CompletableDeferred<Unit>()
+        val singleLoads = AtomicInteger()
+        val batches = mutableListOf<List<String>>()
+
+        val single = async(start = CoroutineStart.UNDISPATCHED) {
+            cache.get("b") { singleLoads.incrementAndGet(); gate.await(); Doc(it) }
+        }
+        val batch = async(start = CoroutineStart.UNDISPATCHED) {
+            cache.getAll(listOf("a", "b")) { ids -> batches += ids; ids.map { Doc(it) } }
+        }
+        gate.complete(Unit)
+
+        assertEquals(Doc("b"), single.await())
+        assertEquals(listOf(Doc("a"), Doc("b")), batch.await())
+        assertEquals(1, singleLoads.get())
+        assertEquals(listOf(listOf("a")), batches)
+    }
+}
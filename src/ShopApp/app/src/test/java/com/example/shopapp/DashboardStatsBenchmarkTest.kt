@@ -0,0 +1,96 @@
+package com.example.shopapp
+
+import com.example.shopapp.data.model.CartItem
+import com.example.shopapp.data.model.DashboardStats
+import com.example.shopapp.data.model.Order
+import com.google.firebase.Timestamp
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Calendar
+import java.util.Date
+import kotlin.random.Random
+
+class DashboardStatsBenchmarkTest {
+    private val dayMillis = 24 * 60 * 60 * 1000L
+
+    private fun now(): Calendar = Calendar.getInstance().apply {
+        set(2025, Calendar.JUNE, 15, 12, 0, 0)
+        set(Calendar.MILLISECOND, 0)
+    }
+
+    private fun order(id: Int, userId: String, total: Double, deliveredAt: Long, items: List<CartItem>) = Order(
+        orderId = "order$id",
+        userId = userId,
+        username = userId,
+        phone = "",
+        address = "",
+        orderDetail = items,
+        totalPrice = total,
+        status = "delivered",
+        createdAt = null,
+        updatedAt = Timestamp(Date(deliveredAt))
+    )
+
+    private fun item(productId: String, quantity: Int) = CartItem(productId, productId, "", 10.0, quantity, 0L)
+
+    private fun syntheticOrders(count: Int, now: Long): List<Order> {
+        val random = Random(42)
+        return List(count) { i ->
+            order(
+                id = i,
+                userId = "user${random.nextInt(5_000)}",
+                total = random.nextInt(1, 1_000).toDouble(),
+                deliveredAt = now - random.nextLong(365 * dayMillis),
+                items = List(random.nextInt(1, 5)) { item("product${random.nextInt(2_000)}", random.nextInt(1, 4)) }
+            )
+        }
+    }
+
+    @Test
+    fun compute_matchesPerMetricPasses() {
+        val now = now()
+        val orders = syntheticOrders(5_000, now.timeInMillis)
+
+        val stats = DashboardStats.compute(orders, pendingCount = 3, now = now)
+
+        val startOfToday = (now.clone() as Calendar).apply {
+            set(Calendar.HOUR_OF_DAY, 0)
+            set(Calendar.MINUTE, 0)
+            set(Calendar.SECOND, 0)
+        }.timeInMillis
+        fun incomeSince(start: Long) = orders.filter { it.updatedAt!!.toDate().time >= start }.sumOf { it.totalPrice }
+        val units = orders.flatMap { it.orderDetail }.groupBy { it.productId }.mapValues { e -> e.value.sumOf { it.quantity } }
+        val spend = orders.groupBy { it.userId }.mapValues { e -> e.value.sumOf { it.totalPrice } }
+
+        assertEquals(orders.sumOf { it.totalPrice }, stats.totalIncome, 1e-6)
+        assertEquals(incomeSince(startOfToday), stats.dailyIncome, 1e-6)
+        assertEquals(incomeSince(startOfToday - 6 * dayMillis), stats.weeklyIncome, 1e-6)
+        assertEquals(incomeSince(startOfToday - 29 * dayMillis), stats.monthlyIncome, 1e-6)
+        assertEquals(orders.size, stats.deliveredCount)
+        assertEquals(3, stats.pendingCount)
+        assertEquals(units.values.max(), stats.bestSellerUnits)
+        assertEquals(units[stats.bestSellerId], stats.bestSellerUnits)
+        assertEquals(spend.values.max(), stats.bigSpenderTotal, 1e-6)
+    }
+
+    @Test
+    fun compute_100kOrders() {
+        val now = now()
+        val orders = syntheticOrders(100_000, now.timeInMillis)
+
+        repeat(5) { DashboardStats.compute(orders, 0, now) }
+
+        val runs = 10
+        val timings = LongArray(runs) {
+            val start = System.nanoTime()
+            DashboardStats.compute(orders, 0, now)
+            System.nanoTime() - start
+        }
+        timings.sort()
+        val medianMs = timings[runs / 2] / 1_000_000.0
+
+        // Loose bound so a slow CI machine does not fail; the point is one linear pass, not a tight budget
+        assertTrue("compute took $medianMs ms", medianMs < 1_000)
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.shopapp
+
+import com.example.shopapp.data.dao.FieldDiffTracker
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class FieldDiffTrackerTest {
+    private data class Item(
+        val id: String,
+        val name: String,
+        val stock: Int,
+        val tags: List<String> = emptyList(),
+        val updatedAt: Long = 0L
+    )
+
+    private fun tracker(maxEntries: Int = 500) =
+        FieldDiffTracker<Item>(idOf = { it.id }, ignoredFields = setOf("updatedAt"), maxEntries = maxEntries)
+
+    @Test
+    fun changes_nullUntilRemembered() {
+        val tracker = tracker()
+        val item = Item("a", "Phone", 3)
+
+        assertNull(tracker.changes(item))
+        tracker.remember(item)
+        assertNotNull(tracker.changes(item))
+    }
+
+    @Test
+    fun changes_listOnlyModifiedFields() {
+        val tracker = tracker()
+        val item = tracker.remember(Item("a", "Phone", 3, tags = listOf("new")))
+
+        assertTrue(tracker.changes(item.copy())!!.isEmpty())
+        assertEquals(mapOf("stock" to 2), tracker.changes(item.copy(stock = 2)))
+        assertEquals(
+            mapOf("name" to "Tablet", "tags" to listOf("new", "sale")),
+            tracker.changes(item.copy(name = "Tablet", tags = listOf("new", "sale")))
+        )
+    }
+
+    @Test
+    fun changes_skipIgnoredFields() {
+        val tracker = tracker()
+        val item = tracker.remember(Item("a", "Phone", 3, updatedAt = 1L))
+
+        assertTrue(tracker.changes(item.copy(updatedAt = 2L))!!.isEmpty())
+    }
+
+    @Test
+    fun remember_replacesTheBaseline() {
+        val tracker = tracker()
+        val item = tracker.remember(Item("a", "Phone", 3))
+        tracker.remember(item.copy(stock = 2))
+
+        assertTrue(tracker.changes(item.copy(stock = 2))!!.isEmpty())
+        assertEquals(mapOf("stock" to 3), tracker.changes(item))
+    }
+
+    @Test
+    fun remember_ignoresBlankIds() {
+        val tracker = tracker()
+        tracker.remember(Item("", "Draft", 1))
+
+        assertNull(tracker.changes(Item("", "Draft", 1)))
+    }
+
+    @Test
+    fun forget_dropsTheBaseline() {
+        val tracker = tracker()
+        val item = tracker.remember(Item("a", "Phone", 3))
+        tracker.forget("a")
+
+        assertNull(tracker.changes(item))
+    }
+
+    @Test
+    fun maxEntries_evictsLeastRecentlyUsed() {
+        val tracker = tracker(maxEntries = 2)
+        val a = tracker.remember(Item("a", "Phone", 3))
+        val b = tracker.remember(Item("b", "Tablet", 1))
+        // Reading a makes b the eldest
+        tracker.changes(a)
+        val c = tracker.remember(Item("c", "Watch", 5))
+
+        assertNull(tracker.changes(b))
+        assertNotNull(tracker.changes(a))
+        assertNotNull(tracker.changes(c))
+    }
+}
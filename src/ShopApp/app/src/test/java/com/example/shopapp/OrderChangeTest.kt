@@ -0,0 +1,100 @@
+package com.example.shopapp
+
+import com.example.shopapp.data.model.Order
+import com.example.shopapp.data.model.OrderChange
+import com.google.firebase.firestore.DocumentChange
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class OrderChangeTest {
+    private fun order(id: String, status: String = "pending") = Order(
+        orderId = id,
+        userId = "user",
+        username = "user",
+        phone = "",
+        address = "",
+        orderDetail = emptyList(),
+        totalPrice = 10.0,
+        status = status,
+        createdAt = null,
+        updatedAt = null
+    )
+
+    private fun ids(orders: List<Order>) = orders.map { it.orderId }
+
+    private val a = order("a")
+    private val b = order("b")
+    private val c = order("c")
+
+    @Test
+    fun applyAll_insertsAddedOrdersAtTheirIndex() {
+        val result = OrderChange.applyAll(
+            listOf(a, b),
+            listOf(OrderChange(DocumentChange.Type.ADDED, c, 0))
+        )
+
+        assertEquals(listOf("c", "a", "b"), ids(result))
+    }
+
+    @Test
+    fun applyAll_replacesModifiedOrdersInPlace() {
+        val delivered = b.copy(status = "delivered")
+        val current = listOf(a, b, c)
+
+        val result = OrderChange.applyAll(current, listOf(OrderChange(DocumentChange.Type.MODIFIED, delivered, 1)))
+
+        assertEquals(listOf("a", "b", "c"), ids(result))
+        assertEquals("delivered", result[1].status)
+        // Untouched rows keep their identity
+        assertSame(current[0], result[0])
+        assertSame(current[2], result[2])
+    }
+
+    @Test
+    fun applyAll_movesReorderedOrders() {
+        val result = OrderChange.applyAll(
+            listOf(a, b, c),
+            listOf(OrderChange(DocumentChange.Type.MODIFIED, c.copy(status = "shipping"), 0))
+        )
+
+        assertEquals(listOf("c", "a", "b"), ids(result))
+    }
+
+    @Test
+    fun applyAll_dropsRemovedOrders() {
+        val result = OrderChange.applyAll(
+            listOf(a, b, c),
+            listOf(OrderChange(DocumentChange.Type.REMOVED, b, -1))
+        )
+
+        assertEquals(listOf("a", "c"), ids(result))
+    }
+
+    @Test
+    fun applyAll_neverDuplicatesAnOrder() {
+        // An ADDED for an order already shown (e.g. it re-entered the window) replaces it
+        val result = OrderChange.applyAll(
+            listOf(a, b),
+            listOf(
+                OrderChange(DocumentChange.Type.ADDED, a, 1),
+                OrderChange(DocumentChange.Type.ADDED, c, 0)
+            )
+        )
+
+        assertEquals(listOf("c", "b", "a"), ids(result))
+    }
+
+    @Test
+    fun applyAll_clampsOutOfRangeIndexes() {
+        val result = OrderChange.applyAll(
+            listOf(a),
+            listOf(
+                OrderChange(DocumentChange.Type.ADDED, b, 5),
+                OrderChange(DocumentChange.Type.REMOVED, order("missing"), -1)
+            )
+        )
+
+        assertEquals(listOf("a", "b"), ids(result))
+    }
+}
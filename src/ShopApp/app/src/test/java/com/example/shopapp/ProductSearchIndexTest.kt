@@ -0,0 +1,147 @@
+package com.example.shopapp
+
+import com.example.shopapp.data.dao.ProductSearchDao
+import com.example.shopapp.data.model.Product
+import com.example.shopapp.data.model.ProductChange
+import com.example.shopapp.data.model.ProductSearchDoc
+import com.example.shopapp.data.model.ProductSearchToken
+import com.example.shopapp.data.search.ProductSearchIndex
+import com.google.firebase.firestore.DocumentChange
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ProductSearchIndexTest {
+    // Room stand-in that keeps the persisted rows in memory
+    private class FakeSearchDao : ProductSearchDao {
+        val tokens = mutableListOf<ProductSearchToken>()
+        val docs = LinkedHashMap<String, ProductSearchDoc>()
+
+        override suspend fun getAllTokens() = tokens.toList()
+        override suspend fun getAllDocs() = docs.values.toList()
+        override suspend fun insertTokens(tokens: List<ProductSearchToken>) {
+            this.tokens.removeAll { old -> tokens.any { it.token == old.token && it.productId == old.productId } }
+            this.tokens.addAll(tokens)
+        }
+        override suspend fun insertDocs(docs: List<ProductSearchDoc>) {
+            docs.forEach { this.docs[it.productId] = it }
+        }
+        override suspend fun deleteTokens(productIds: List<String>) {
+            tokens.removeAll { it.productId in productIds }
+        }
+        override suspend fun deleteDocs(productIds: List<String>) {
+            productIds.forEach { docs.remove(it) }
+        }
+    }
+
+    private fun product(
+        id: String,
+        title: String,
+        brand: String = "",
+        category: String = "",
+        description: String = "",
+        sales: Int = 0
+    ) = Product(
+        productId = id,
+        title = title,
+        image = "",
+        price = 10.0,
+        description = description,
+        brand = brand,
+        model = "",
+        color = "",
+        category = category,
+        popular = false,
+        discount = 0.0,
+        stock = 1,
+        sales = sales,
+        status = "active",
+        review = emptyList(),
+        createdAt = null,
+        updatedAt = null
+    )
+
+    private fun added(vararg products: Product) = products.map { ProductChange(DocumentChange.Type.ADDED, it) }
+
+    private val galaxy = product("p1", "Samsung Galaxy S24", brand = "Samsung", category = "phone", sales = 10)
+    private val buds = product("p2", "Galaxy Buds", brand = "Samsung", category = "audio", sales = 50)
+    private val case = product("p3", "Phone case", category = "accessory", description = "fits samsung galaxy")
+
+    private fun ids(results: List<Product>) = results.map { it.productId }
+
+    @Test
+    fun search_lastTokenMatchesAsPrefix() = runBlocking {
+        val index = ProductSearchIndex(FakeSearchDao())
+        index.applyChanges(added(galaxy, buds, case))
+
+        assertEquals(listOf("p2", "p1", "p3"), ids(index.search("galax")))
+        assertTrue(index.search("gal samsung").isEmpty())
+    }
+
+    @Test
+    fun search_requiresEveryToken() = runBlocking {
+        val index = ProductSearchIndex(FakeSearchDao())
+        index.applyChanges(added(galaxy, buds, case))
+
+        assertEquals(listOf("p2"), ids(index.search("galaxy bu")))
+        assertTrue(index.search("galaxy pixel").isEmpty())
+        assertTrue(index.search("  ").isEmpty())
+    }
+
+    @Test
+    fun search_ranksTitleAboveDescriptionThenBySales() = runBlocking {
+        val index = ProductSearchIndex(FakeSearchDao())
+        index.applyChanges(added(galaxy, buds, case))
+
+        // "samsung" in the title outweighs it in the brand; the description hit comes last
+        assertEquals(listOf("p1", "p2", "p3"), ids(index.search("Samsung GALAXY")))
+        assertEquals(listOf("p1"), ids(index.search("samsung galaxy", limit = 1)))
+        // Equal title hits fall back to sales
+        assertEquals(listOf("p2", "p1"), ids(index.search("galaxy", limit = 2)))
+    }
+
+    @Test
+    fun search_ignoresAccents() = runBlocking {
+        val index = ProductSearchIndex(FakeSearchDao())
+        index.applyChanges(added(product("p9", "Điện thoại Xiaomi")))
+
+        assertEquals(listOf("p9"), ids(index.search("dien tho")))
+    }
+
+    @Test
+    fun applyChanges_replacesModifiedAndDropsRemovedPostings() = runBlocking {
+        val dao = FakeSearchDao()
+        val index = ProductSearchIndex(dao)
+        index.applyChanges(added(galaxy, buds))
+
+        index.applyChanges(
+            listOf(
+                ProductChange(DocumentChange.Type.MODIFIED, buds.copy(title = "Pixel Buds", brand = "Google")),
+                ProductChange(DocumentChange.Type.REMOVED, galaxy)
+            )
+        )
+
+        assertTrue(index.search("galaxy").isEmpty())
+        assertEquals(listOf("p2"), ids(index.search("pix")))
+        assertTrue(dao.tokens.none { it.productId == "p1" || it.token == "galaxy" })
+        assertEquals(setOf("p2"), dao.docs.keys)
+    }
+
+    @Test
+    fun fullSnapshot_dropsProductsDeletedWhileOffline() = runBlocking {
+        val dao = FakeSearchDao()
+        ProductSearchIndex(dao).applyChanges(added(galaxy, buds))
+
+        val restored = ProductSearchIndex(dao)
+        restored.loadFromDisk()
+        assertTrue(restored.isReady)
+        assertEquals(listOf("p2", "p1"), ids(restored.search("galaxy")))
+
+        restored.applyChanges(added(buds), fullSnapshot = true)
+
+        assertEquals(listOf("p2"), ids(restored.search("galaxy")))
+        assertTrue(dao.tokens.none { it.productId == "p1" })
+        assertEquals(setOf("p2"), dao.docs.keys)
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.shopapp
+
+import com.example.shopapp.data.search.SearchTokenizer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SearchTokenizerTest {
+    @Test
+    fun normalize_stripsAccentsAndCase() {
+        assertEquals("dien thoai", SearchTokenizer.normalize("Điện Thoại"))
+        assertEquals("ca phe", SearchTokenizer.normalize("Cà Phê"))
+    }
+
+    @Test
+    fun tokenize_splitsOnPunctuationAndSpaces() {
+        assertEquals(listOf("iphone", "15", "pro", "max"), SearchTokenizer.tokenize("iPhone 15 Pro-Max!"))
+        assertEquals(listOf("usb", "c"), SearchTokenizer.tokenize("  usb/c  "))
+        assertTrue(SearchTokenizer.tokenize("   ").isEmpty())
+        assertTrue(SearchTokenizer.tokenize("--").isEmpty())
+    }
+
+    @Test
+    fun prefixTokens_coverWholeTextAndEachWord() {
+        val tokens = SearchTokenizer.prefixTokens("John Doe")
+
+        assertTrue(tokens.containsAll(listOf("j", "jo", "john", "john ", "john d", "john doe")))
+        assertTrue(tokens.containsAll(listOf("d", "do", "doe")))
+        assertFalse(tokens.contains("oe"))
+        assertEquals(tokens.size, tokens.toSet().size)
+    }
+
+    @Test
+    fun prefixTokens_areCappedAtTwentyCharacters() {
+        val tokens = SearchTokenizer.prefixTokens("abcdefghijklmnopqrstuvwxyz")
+
+        assertEquals(20, tokens.maxOf { it.length })
+        assertEquals(20, tokens.size)
+    }
+
+    @Test
+    fun prefixQuery_matchesTheStoredPrefix() {
+        assertEquals("nguyen", SearchTokenizer.prefixQuery("  Nguyễn "))
+        val longInput = "abcdefghijklmnopqrstuvwxyz"
+        assertTrue(SearchTokenizer.prefixTokens(longInput).contains(SearchTokenizer.prefixQuery(longInput)))
+    }
+}